@@ -2,17 +2,17 @@
 
 layout (location=0) in vec3 position;
 layout (location=1) in vec2 texCoord;
+layout (location=2) in vec3 color;
 
 uniform mat4 mProjection;
-uniform mat4 mModel;
-uniform vec3 color;
 
 out vec2 outTexCoord;
 out vec3 outColor;
 
+// Positions arrive already transformed, so a whole batch of sprites shares one draw call
 void main()
 {
-    gl_Position = mProjection * mModel * vec4(position, 1.0);
+    gl_Position = mProjection * vec4(position, 1.0);
     outTexCoord = texCoord;
     outColor = color;
-}
\ No newline at end of file
+}
@@ -0,0 +1,64 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Turns one type of saved data into bytes and back.  Every encoding starts with the type's magic
+ * number and the schema version it was written with, so a codec can still read the data its older
+ * versions wrote, and data of the wrong type is turned away instead of misread.
+ *
+ * Layout (big-endian): int magic, short version, then whatever write() puts down
+ */
+public abstract class BinaryCodec<T> {
+    private final int magic;
+    private final short version;
+
+    protected BinaryCodec(int magic, int version) {
+        this.magic = magic;
+        this.version = (short) version;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public byte[] encode(T value) {
+        ByteBuffer buffer = ByteBuffer.allocate(6 + size(value));
+        buffer.putInt(magic);
+        buffer.putShort(version);
+        write(value, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * @return The value, or null if the data isn't this type, is from a newer version, or is cut short
+     */
+    public T decode(ByteBuffer buffer) {
+        if (buffer.remaining() < 6 || buffer.getInt() != magic) {
+            return null;
+        }
+        int dataVersion = buffer.getShort();
+        if (dataVersion < 1 || dataVersion > version) {
+            return null;
+        }
+        try {
+            return read(buffer, dataVersion);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException and friends, from data that was truncated or corrupted
+            return null;
+        }
+    }
+
+    /**
+     * Number of bytes write() puts down for the value
+     */
+    protected abstract int size(T value);
+
+    /**
+     * Writes the value in the current version's layout
+     */
+    protected abstract void write(T value, ByteBuffer buffer);
+
+    /**
+     * Reads a value written by the given version, which is never newer than this codec's
+     */
+    protected abstract T read(ByteBuffer buffer, int version);
+}
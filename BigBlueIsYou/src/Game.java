@@ -1,12 +1,20 @@
 import ecs.Components.AnimatedSprite;
 import ecs.Components.Appearance;
+import ecs.Components.KeyboardControlled;
+import ecs.Components.Movable;
 import ecs.Entities.*;
 import ecs.Systems.*;
 import ecs.Systems.KeyboardInput;
 import ecs.Systems.System;
 import edu.usu.graphics.Graphics2D;
-import edu.usu.graphics.Texture;
+import edu.usu.graphics.TextureAtlas;
+import edu.usu.graphics.TextureRegion;
+import Particle.ParticleEffectsManager;
 import java.util.*;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.lwjgl.glfw.GLFW.*;
 
 public class Game {
     private final List<Entity> removeThese = new ArrayList<>();
@@ -15,7 +23,25 @@ public class Game {
 
     private Graphics2D graphics;
     private LevelParser levelParser;
+    private final LevelPrefetcher levelPrefetcher = LevelPrefetcher.getInstance();
+    // Turns on printing the level cache statistics on shutdown
+    private static final boolean DEBUG = false;
+    // Bytes of loaded levels kept in memory, can be changed with -Dbbiy.levelCacheBytes=<bytes>
+    private static final long LEVEL_CACHE_BUDGET_BYTES = Long.getLong("bbiy.levelCacheBytes", LevelCache.DEFAULT_BUDGET_BYTES);
     private String currentLevel;
+    private boolean nextLevelPrefetched;
+    // Time spent in the current level, for the best times in the progress store
+    private double levelTime;
+
+    // Levels edited on disk while the game runs, swapped in at the start of the next update
+    private final Queue<LevelLayout> reloadedLevels = new ConcurrentLinkedQueue<>();
+    private LevelWatcher levelWatcher;
+
+    // Every move, undo and reset is journaled so the level survives a crash
+    private static final int COMPACT_EVERY = 256;
+    private final SessionJournal journal = new SessionJournal();
+    private int journaledSinceSnapshot;
+    private boolean replaying;
     private final float TILE_SIZE = 32.0f; // Default tile size in pixels
 
     private String[][] grid; // Store the current grid
@@ -27,12 +53,48 @@ public class Game {
     private Movement movementSystem;
     private KeyboardInput keyboardSystem;
     private Rule ruleSystem;
+    private Interaction interactionSystem;
+
+    // Movement keys handed to whatever becomes YOU, until the saved bindings are known
+    private ecs.Systems.KeyboardState keyBindings = new ecs.Systems.KeyboardState(
+            GLFW_KEY_W, GLFW_KEY_S, GLFW_KEY_A, GLFW_KEY_D);
 
     // Entity registry
     private Map<Long, Entity> entities = new HashMap<>();
 
-    // Texture cache
-    private Map<String, Texture> textureCache = new HashMap<>();
+    // Texture file for each tile, shared with anything else that draws levels
+    static final Map<String, String> TEXTURE_FILES = new LinkedHashMap<>();
+    static {
+        // Textures for different game objects
+        TEXTURE_FILES.put("wall", "resources/textures/wall.png");
+        TEXTURE_FILES.put("rock", "resources/textures/rock.png");
+        TEXTURE_FILES.put("flag", "resources/textures/flag.png");
+        TEXTURE_FILES.put("BigBlue", "resources/textures/BigBlue.png");
+        TEXTURE_FILES.put("water", "resources/textures/water.png");
+        TEXTURE_FILES.put("lava", "resources/textures/lava.png");
+        TEXTURE_FILES.put("floor", "resources/textures/floor.png");
+        TEXTURE_FILES.put("grass", "resources/textures/grass.png");
+        TEXTURE_FILES.put("hedge", "resources/textures/hedge.png");
+
+        // Textures for text objects (nouns and verbs)
+        TEXTURE_FILES.put("is", "resources/textures/word-is.png");
+        TEXTURE_FILES.put("stop", "resources/textures/word-stop.png");
+        TEXTURE_FILES.put("push", "resources/textures/word-push.png");
+        TEXTURE_FILES.put("you", "resources/textures/word-you.png");
+        TEXTURE_FILES.put("win", "resources/textures/word-win.png");
+        TEXTURE_FILES.put("sink", "resources/textures/word-sink.png");
+        TEXTURE_FILES.put("kill", "resources/textures/word-kill.png");
+        TEXTURE_FILES.put("baba", "resources/textures/word-baba.png");
+        TEXTURE_FILES.put("flagname", "resources/textures/word-flag.png");
+        TEXTURE_FILES.put("lavaname", "resources/textures/word-lava.png");
+        TEXTURE_FILES.put("rockname", "resources/textures/word-rock.png");
+        TEXTURE_FILES.put("wallname", "resources/textures/word-wall.png");
+        TEXTURE_FILES.put("watername", "resources/textures/word-water.png");
+    }
+
+    // Every tile and particle image packed into one atlas, and each tile's region of it
+    private TextureAtlas atlas;
+    private Map<String, TextureRegion> textureCache = new HashMap<>();
 
     private Map<Long, AnimatedSprite> animatedEntities = new HashMap<>();
 
@@ -42,27 +104,46 @@ public class Game {
         this.renderSystem = new TileRender(graphics);
         this.movementSystem = new Movement();
         this.keyboardSystem = new KeyboardInput(graphics.getWindow());
+        this.interactionSystem = new Interaction(new Occupancy());
 
         this.initialGrid = createDeepCopy();
         gameStates = new Stack<>();
         gameStates.add(createDeepCopy());
 
+        levelPrefetcher.setCacheBudget(LEVEL_CACHE_BUDGET_BYTES);
+
         // Preload textures
         loadTextures();
+
+        Path levelPack = levelParser.getPackPath();
+        levelWatcher = new LevelWatcher((pack, template) -> {
+            if (pack.equals(levelPack)) {
+                // Laid out here on the watcher thread, so swapping it in doesn't have to
+                LevelLayout layout = LevelLayout.of(template);
+                levelPrefetcher.replace(template.getName(), layout);
+                reloadedLevels.add(layout);
+            }
+        });
+        levelWatcher.start();
     }
 
     public void initialize() {
         this.levelParser = new LevelParser();
+        // Each level gets a new renderer, so let go of the old one's background layers
+        renderSystem.cleanup();
         this.renderSystem = new TileRender(graphics);
         this.movementSystem = new Movement();
         this.keyboardSystem = new KeyboardInput(graphics.getWindow());
+        this.interactionSystem = new Interaction(new Occupancy());
 
         this.initialGrid = createDeepCopy();
         gameStates = new Stack<>();
         gameStates.add(createDeepCopy());
 
-        // Preload textures
-        loadTextures();
+        // Textures are loaded once in the constructor, only reload them after a shutdown
+        if (textureCache.isEmpty()) {
+            loadTextures();
+        }
     }
 
     private void addEntity(Entity entity) {
@@ -70,6 +151,7 @@ public class Game {
         movementSystem.add(entity);
         keyboardSystem.add(entity);
         ruleSystem.add(entity);
+        interactionSystem.add(entity);
         entities.put(entity.getId(), entity);
     }
 
@@ -78,6 +160,7 @@ public class Game {
         movementSystem.remove(entity.getId());
         keyboardSystem.remove(entity.getId());
         ruleSystem.remove(entity.getId());
+        interactionSystem.remove(entity.getId());
         entities.remove(entity.getId());
     }
 
@@ -86,82 +169,237 @@ public class Game {
         movementSystem.updatedEntity(entity);
         keyboardSystem.updatedEntity(entity);
         ruleSystem.updatedEntity(entity);
+        interactionSystem.updatedEntity(entity);
 
         entities.remove(entity.getId());
         entities.put(entity.getId(), entity);
     }
 
     private void loadTextures() {
-        // Load textures for different game objects
-        loadTexture("wall", "resources/textures/wall.png");
-        loadTexture("rock", "resources/textures/rock.png");
-        loadTexture("flag", "resources/textures/flag.png");
-        loadTexture("BigBlue", "resources/textures/BigBlue.png");
-        loadTexture("water", "resources/textures/water.png");
-        loadTexture("lava", "resources/textures/lava.png");
-        loadTexture("floor", "resources/textures/floor.png");
-        loadTexture("grass", "resources/textures/grass.png");
-        loadTexture("hedge", "resources/textures/hedge.png");
-
-        // Load textures for text objects (nouns and verbs)
-        loadTexture("is", "resources/textures/word-is.png");
-        loadTexture("stop", "resources/textures/word-stop.png");
-        loadTexture("push", "resources/textures/word-push.png");
-        loadTexture("you", "resources/textures/word-you.png");
-        loadTexture("win", "resources/textures/word-win.png");
-        loadTexture("sink", "resources/textures/word-sink.png");
-        loadTexture("kill", "resources/textures/word-kill.png");
-        loadTexture("baba", "resources/textures/word-baba.png");
-        loadTexture("flagname", "resources/textures/word-flag.png");
-        loadTexture("lavaname", "resources/textures/word-lava.png");
-        loadTexture("rockname", "resources/textures/word-rock.png");
-        loadTexture("wallname", "resources/textures/word-wall.png");
-        loadTexture("watername", "resources/textures/word-water.png");
-    }
-    private void loadTexture(String name, String path) {
-        try {
-            textureCache.put(name, new Texture(path));
-        } catch (Exception e) {
-            e.printStackTrace();
-            // Create a fallback texture
-            textureCache.put(name, createFallbackTexture());
-        }
-    }
-    private Texture createFallbackTexture() {
-        // Create a simple colored square as fallback
-        try {
-            // Create a 32x32 white square as fallback
-            return new Texture("resources/textures/floor.png"); // Using floor as fallback for now
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+        Map<String, String> files = new LinkedHashMap<>(TEXTURE_FILES);
+        files.putAll(ParticleEffectsManager.TEXTURE_FILES);
+        atlas = new TextureAtlas(files);
+
+        for (String name : TEXTURE_FILES.keySet()) {
+            TextureRegion region = atlas.get(name);
+            textureCache.put(name, region != null ? region : createFallbackTexture());
         }
     }
+    private TextureRegion createFallbackTexture() {
+        // Using floor as fallback for now
+        return atlas.get("floor");
+    }
+
+    /**
+     * The atlas holding the tile and particle images, rebuilt if the game is initialized again after a shutdown
+     */
+    public TextureAtlas getAtlas() {
+        return atlas;
+    }
+
+    public String getCurrentLevel() {
+        return currentLevel;
+    }
 
     public void loadLevel(String levelName) {
         currentLevel = levelName;
         initialize();
-        grid = levelParser.parseLevel(levelName);
 
-        if (grid == null) {
+        nextLevelPrefetched = false;
+
+        // Prefer the compiled level, which is usually already prefetched from the level select menu
+        LevelLayout layout = levelPrefetcher.take(levelName);
+        if (layout == null) {
+            String[][] parsed = levelParser.parseLevel(levelName);
+            layout = parsed != null ? LevelLayout.of(LevelTemplate.fromGrid(levelName, parsed)) : null;
+        }
+
+        startLevel(layout);
+        beginJournal();
+
+        ProgressStore progress = ProgressStore.getInstance();
+        if (progress != null) {
+            progress.levelStarted(findLevel());
+        }
+    }
+
+    private LevelCatalog.Entry findLevel() {
+        LevelCatalog catalog = levelParser.getCatalog();
+        return catalog != null ? catalog.find(currentLevel) : null;
+    }
+
+    /**
+     * Restarts the current level from a version of it that was edited on disk
+     */
+    private void reloadLevel(LevelLayout layout) {
+        initialize();
+        startLevel(layout);
+        beginJournal();
+    }
+
+    /**
+     * Captures the level in progress so it can be resumed later
+     * @return The snapshot, or null if no level is loaded
+     */
+    public SaveGame saveGame() {
+        if (grid == null || currentLevel == null) {
+            return null;
+        }
+        return SaveGame.capture(currentLevel, grid, initialGrid, gameStates, ruleSystem.getActiveRules());
+    }
+
+    /**
+     * Puts the world back the way it was when the save was made, undo history included
+     */
+    public void resumeGame(SaveGame save) {
+        restore(save);
+        beginJournal();
+    }
+
+    /**
+     * Rebuilds a level that was interrupted by a crash: its last snapshot, then the moves made since
+     * @return True if there was a level to recover
+     */
+    public boolean recoverSession() {
+        SessionJournal.Recovery recovery = journal.recover();
+        if (recovery == null) {
+            return false;
+        }
+        recover(recovery);
+        return true;
+    }
+
+    private void recover(SessionJournal.Recovery recovery) {
+        restore(recovery.snapshot());
+
+        replaying = true;
+        for (byte entry : recovery.records()) {
+            replay(entry);
+        }
+        replaying = false;
+
+        // Compact straight away, so the next crash doesn't replay this tail again
+        beginJournal();
+    }
+
+    private void replay(byte entry) {
+        switch (entry) {
+            case SessionJournal.MOVE_UP -> replayMove(Movable.MoveTo.Up);
+            case SessionJournal.MOVE_DOWN -> replayMove(Movable.MoveTo.Down);
+            case SessionJournal.MOVE_LEFT -> replayMove(Movable.MoveTo.Left);
+            case SessionJournal.MOVE_RIGHT -> replayMove(Movable.MoveTo.Right);
+            case SessionJournal.UNDO -> undoMove();
+            case SessionJournal.RESET -> resetLevel();
+        }
+    }
+
+    /**
+     * Makes the same move a key press would, without reading the keyboard
+     */
+    private void replayMove(Movable.MoveTo direction) {
+        for (var entity : entities.values()) {
+            if (entity.contains(Movable.class) && entity.contains(KeyboardControlled.class)) {
+                entity.get(Movable.class).moveTo = direction;
+            }
+        }
+        step(0.0);
+    }
+
+    /**
+     * The level was left normally, so it no longer needs recovering
+     */
+    public void endSession() {
+        journal.end();
+    }
+
+    private void beginJournal() {
+        SaveGame snapshot = saveGame();
+        if (snapshot != null) {
+            journal.begin(snapshot);
+            journaledSinceSnapshot = 0;
+        }
+    }
+
+    /**
+     * Call once the change has been made, so a snapshot taken here already includes it
+     */
+    private void journal(byte entry) {
+        if (replaying) {
             return;
         }
+        journal.record(entry);
+        if (++journaledSinceSnapshot >= COMPACT_EVERY) {
+            beginJournal();
+        }
+    }
+
+    private static byte journalEntry(Movable.MoveTo direction) {
+        return switch (direction) {
+            case Up -> SessionJournal.MOVE_UP;
+            case Down -> SessionJournal.MOVE_DOWN;
+            case Left -> SessionJournal.MOVE_LEFT;
+            case Right -> SessionJournal.MOVE_RIGHT;
+            case Stopped -> 0;
+        };
+    }
+
+    private void restore(SaveGame save) {
+        currentLevel = save.getLevelName();
+        initialize();
+
+        nextLevelPrefetched = false;
+        // The saved rules are the ones the level was using, so there is no need to look for them again
+        startLevel(LevelLayout.of(LevelTemplate.fromGrid(currentLevel, save.getGrid()), save.getRules()));
+
+        // startLevel treats the grid as the start of the level, so put back the real start and the history
+        initialGrid = save.getInitialGrid();
+        gameStates.clear();
+        gameStates.addAll(save.getHistory());
+    }
+
+    /**
+     * Uses the movement keys chosen in the controls menu, including for the level already being played
+     */
+    public void setKeyBindings(KeyboardState bindings) {
+        keyBindings = new ecs.Systems.KeyboardState(
+                bindings.moveUpKey, bindings.moveDownKey, bindings.moveLeftKey, bindings.moveRightKey);
+        if (ruleSystem != null) {
+            for (var update : ruleSystem.setKeyboardState(keyBindings)) {
+                keyboardSystem.updatedEntity(update.entity);
+            }
+        }
+    }
+
+    /**
+     * Builds the entities for the level and applies the rules it starts with
+     */
+    private void startLevel(LevelLayout layout) {
+        if (layout == null) {
+            grid = null;
+            return;
+        }
+        grid = layout.getTemplate().toGrid();
+        levelTime = 0;
 
         // Initialize or reinitialize the rule system with the new grid
         if (ruleSystem == null) {
-            ruleSystem = new Rule(this.grid, this.textureCache);
+            ruleSystem = new Rule(this.grid, this.textureCache, keyBindings);
         } else {
             ruleSystem.setGrid(this.grid);
         }
+        ruleSystem.setOccupancy(interactionSystem.getOccupancy());
 
         // Clear existing entities
         clearEntities();
 
-        // Create entities based on the grid
-        createEntitiesFromGrid(grid);
+        // Create entities from the layout, which has already sorted out what goes where
+        interactionSystem.setGrid(grid);
+        for (int i = 0; i < layout.size(); i++) {
+            createEntity(layout.getTile(i), layout.getKind(i), layout.getRow(i), layout.getCol(i));
+        }
 
-        // Load initial rules
-        Set<System.EntityUpdate> changed = ruleSystem.update(0.0);
+        // Apply the initial rules, which were found along with the layout
+        Set<System.EntityUpdate> changed = ruleSystem.update(layout.getRules());
         for (var entity : changed) {
             updateThese.add(entity.entity);
         }
@@ -190,6 +428,7 @@ public class Game {
             movementSystem.remove(id);
             keyboardSystem.remove(id);
             ruleSystem.remove(id);
+            interactionSystem.remove(id);
         }
 
         // Clear entity registry
@@ -198,22 +437,24 @@ public class Game {
     }
 
     private void createEntitiesFromGrid(String[][] grid) {
+        interactionSystem.setGrid(grid);
         for (int i = 0; i < grid.length; i++) {
             for (int j = 0; j < grid[i].length; j++) {
                 String objectType = grid[i][j];
-                if (objectType != null && !objectType.isEmpty()) {
-                    createEntity(objectType, i, j);
+                LevelLayout.Kind kind = objectType != null ? LevelLayout.kindOf(objectType) : null;
+                if (kind != null) {
+                    createEntity(objectType, kind, i, j);
                 }
             }
         }
     }
 
-    private void createEntity(String objectType, int row, int col) {
+    private void createEntity(String objectType, LevelLayout.Kind kind, int row, int col) {
         int x = col;
         int y = row;
 
         /** Creating entities using the maps */
-        Texture tex = textureCache.get(objectType);
+        TextureRegion tex = textureCache.get(objectType);
         if (tex == null) {
             tex = createFallbackTexture();
         }
@@ -228,31 +469,13 @@ public class Game {
             appearance = new Appearance(tex, TILE_SIZE);
         }
 
-        Entity entity = null;
-        if (levelParser.bgObjects.containsValue(objectType)) {
-            entity = Bg.create(x, y, objectType, appearance);
-            addEntity(entity);
-        }
-        else if (levelParser.nouns.containsValue(objectType)) {
-            // For nouns, we need to create both the noun entity and the corresponding object entity
-            String baseName = objectType.replace("name", "");
-            entity = NounEnt.create(x, y, objectType, appearance);
-            addEntity(entity);
-
-            // Also create the corresponding object entity if it doesn't exist
-//            if (!levelParser.objects.containsValue(baseName)) {
-//                Entity objEntity = ObjectEnt.create(x, y, baseName, appearance);
-//                addEntity(objEntity);
-//            }
-        }
-        else if (levelParser.objects.containsValue(objectType)) {
-            entity = ObjectEnt.create(x, y, objectType, appearance);
-            addEntity(entity);
-        }
-        else if (objectType.equalsIgnoreCase("is")) {
-            entity = VerbEnt.create(x, y, objectType, appearance);
-            addEntity(entity);
-        }
+        Entity entity = switch (kind) {
+            case BACKGROUND -> Bg.create(x, y, objectType, appearance);
+            case NOUN -> NounEnt.create(x, y, objectType, appearance);
+            case OBJECT -> ObjectEnt.create(x, y, objectType, appearance);
+            case VERB -> VerbEnt.create(x, y, objectType, appearance);
+        };
+        addEntity(entity);
 
         if (shouldBeAnimated(objectType) && entity != null) {
             // Create and store animated sprites
@@ -353,8 +576,41 @@ public class Game {
     }
     
     public void update(double elapsedTime) {
-        keyboardSystem.update(elapsedTime);
+        // Swap in the current level if it was edited, between ticks so no system sees half of it
+        LevelLayout reloaded;
+        while ((reloaded = reloadedLevels.poll()) != null) {
+            if (reloaded.getName().equals(currentLevel)) {
+                reloadLevel(reloaded);
+            }
+        }
 
+        levelTime += elapsedTime;
+        Set<System.EntityUpdate> pressed = keyboardSystem.update(elapsedTime);
+        // Every controlled entity is given the same direction, so any one of them says which way the move went
+        Movable.MoveTo direction = Movable.MoveTo.Stopped;
+        for (var entity : pressed) {
+            direction = entity.entity.get(Movable.class).moveTo;
+            break;
+        }
+
+        if (step(elapsedTime) && direction != Movable.MoveTo.Stopped) {
+            journal(journalEntry(direction));
+        }
+
+        // Update animations
+        for (AnimatedSprite animatedSprite : animatedEntities.values()) {
+            animatedSprite.update(elapsedTime);
+        }
+        renderSystem.setNums(this.grid);
+        renderSystem.update(0.0);
+    }
+
+    /**
+     * Moves whatever is controlled the way it was told to, then applies the rules and interactions
+     * that follow.  Shared by live play and journal replay.
+     * @return True if anything moved
+     */
+    private boolean step(double elapsedTime) {
         // Save the current grid state before any movement
         String[][] previousGrid = createDeepCopy(this.grid);
 
@@ -367,6 +623,11 @@ public class Game {
             // Save the state before applying the move
             gameStates.add(previousGrid);
 
+            // Only the cells that entities moved out of or into need to be checked for interactions
+            for (var entity : moved) {
+                interactionSystem.moved(entity.entity);
+            }
+
             // Now apply the move
             this.grid = newGrid;
             ruleSystem.setGrid(this.grid);
@@ -391,12 +652,22 @@ public class Game {
         }
         updateThese.clear();
 
-        // Update animations
-        for (AnimatedSprite animatedSprite : animatedEntities.values()) {
-            animatedSprite.update(elapsedTime);
+        // Resolve win/defeat/sink for the cells that changed this tick
+        interactionSystem.update(elapsedTime);
+
+        // Start loading the next level as soon as this one is won
+        if (interactionSystem.hasWon() && !nextLevelPrefetched) {
+            levelPrefetcher.prefetchNext(currentLevel);
+            nextLevelPrefetched = true;
+
+            ProgressStore progress = ProgressStore.getInstance();
+            if (progress != null && !replaying) {
+                // Each undo state is one move; undone moves don't count
+                progress.levelWon(findLevel(), gameStates.size() - 1, (int) (levelTime * 1000));
+            }
         }
-        renderSystem.setNums(this.grid);
-        renderSystem.update(0.0);
+
+        return !moved.isEmpty();
     }
 
     // Automatically assumes creating deep copy of this.grid
@@ -418,8 +689,21 @@ public class Game {
     }
 
     public void shutdown() {
+        if (DEBUG) {
+            java.lang.System.out.println("Level cache: " + levelPrefetcher.getCache().getStatistics());
+        }
         // Clean up resources
+        levelWatcher.shutdown();
+        // Closing the game is a normal exit, so there is nothing to recover next time
+        journal.end();
+        journal.shutdown();
+        ProgressStore progress = ProgressStore.getInstance();
+        if (progress != null) {
+            progress.flush();
+        }
         textureCache.clear();
+        atlas.cleanup();
+        renderSystem.cleanup();
         clearEntities();
     }
 
@@ -445,6 +729,8 @@ public class Game {
                 removeThese.add(entity.entity);
                 addThese.add(entity.entity);
             }
+
+            journal(SessionJournal.RESET);
         }
     }
 
@@ -491,7 +777,10 @@ public class Game {
                 movementSystem.updatedEntity(entity);
                 keyboardSystem.updatedEntity(entity);
                 ruleSystem.updatedEntity(entity);
+                interactionSystem.updatedEntity(entity);
             }
+
+            journal(SessionJournal.UNDO);
         }
     }
 
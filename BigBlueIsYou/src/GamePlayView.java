@@ -3,6 +3,8 @@ import edu.usu.graphics.Color;
 import edu.usu.graphics.Font;
 import edu.usu.graphics.Graphics2D;
 import org.joml.Vector2f;
+
+import java.util.concurrent.CompletableFuture;
 import static org.lwjgl.glfw.GLFW.*;
 
 public class GamePlayView extends GameStateView {
@@ -13,6 +15,13 @@ public class GamePlayView extends GameStateView {
     private Game game;
     private Manager manager;
     private String selectedLevel;
+    private Serializer serializer;
+    // A save being read in the background, resumed on the next update once it arrives
+    private CompletableFuture<SaveGame> pendingResume;
+    // The key bindings saved from the controls menu, handed to the game once they've been read
+    private CompletableFuture<KeyboardState> pendingBindings;
+    // Set when a level interrupted by a crash was rebuilt, so the next session carries on with it
+    private boolean recovered;
 
     // Particle system manager
     private ParticleEffectsManager particleManager;
@@ -22,6 +31,7 @@ public class GamePlayView extends GameStateView {
         super.initialize(graphics);
         game = new Game(graphics);
         game.initialize();
+        serializer = new Serializer();
 
         font = new Font("resources/fonts/Roboto-Regular.ttf", 48, false);
 
@@ -40,25 +50,70 @@ public class GamePlayView extends GameStateView {
             game.undoMove();
         });
 
+        // Quick save and quick load of the level in progress
+        inputKeyboard.registerCommand(GLFW_KEY_F5, true, (double elapsedTime) -> {
+            saveGame();
+        });
+
+        inputKeyboard.registerCommand(GLFW_KEY_F9, true, (double elapsedTime) -> {
+            loadGame();
+        });
+
         // Initialize particle manager
         particleManager = ParticleEffectsManager.getInstance();
-        particleManager.initialize();
+        particleManager.initialize(game.getAtlas());
         
         // Start background music
         particleManager.playBackgroundMusic();
+
+        // Pick up a level that was interrupted by a crash, once effects and sounds are ready
+        if (game.recoverSession()) {
+            selectedLevel = game.getCurrentLevel();
+            recovered = true;
+        }
     }
 
     public void shutdown() {
         game.shutdown();
+        // Finishes any save still being written
+        serializer.shutdown();
+    }
+
+    /**
+     * Snapshots and encodes the level here, then leaves writing the bytes to the serializer thread
+     */
+    private void saveGame() {
+        SaveGame save = game.saveGame();
+        if (save == null) {
+            return;
+        }
+        String file = SaveGame.fileFor(save.getLevelName());
+        serializer.save(file, save, SaveGameCodec.INSTANCE).whenComplete((result, ex) -> {
+            if (ex != null) {
+                System.out.println("Unable to save the game: " + ex.getMessage());
+            }
+        });
+    }
+
+    private void loadGame() {
+        if (game.getCurrentLevel() == null) {
+            return;
+        }
+        pendingResume = serializer.load(SaveGame.fileFor(game.getCurrentLevel()), SaveGameCodec.INSTANCE);
     }
 
     @Override
     public void initializeSession() {
         nextGameState = GameStateEnum.GamePlay;
+        pendingResume = null;
+        // The controls may have been changed since the last session
+        pendingBindings = serializer.loadGameState(new KeyboardState());
         // Clear any existing particle effects
         particleManager.clearAllEffects();
         // Load the selected level when the session is initialized
-        if (selectedLevel != null) {
+        if (recovered) {
+            recovered = false;
+        } else if (selectedLevel != null) {
             game.loadLevel(selectedLevel);
         } else {
             // Default to Level-1 if no level is selected
@@ -66,6 +121,13 @@ public class GamePlayView extends GameStateView {
         }
     }
 
+    /**
+     * True if a level interrupted by a crash is waiting to be carried on with
+     */
+    public boolean hasRecoveredLevel() {
+        return recovered;
+    }
+
     public void setSelectedLevel(String level) {
         this.selectedLevel = level;
     }
@@ -77,11 +139,12 @@ public class GamePlayView extends GameStateView {
         
         // If we're transitioning away from gameplay, clear particle effects and stop sounds
         if (nextGameState != GameStateEnum.GamePlay) {
+            game.endSession();
             particleManager.clearAllEffects();
             // Stop all sounds except background music
             particleManager.cleanup();
             // Restart background music
-            particleManager.initialize();
+            particleManager.initialize(game.getAtlas());
             particleManager.playBackgroundMusic();
         }
         
@@ -90,10 +153,35 @@ public class GamePlayView extends GameStateView {
 
     @Override
     public void update(double elapsedTime) {
+        if (pendingResume != null && pendingResume.isDone()) {
+            resume(pendingResume);
+            pendingResume = null;
+        }
+        if (pendingBindings != null && pendingBindings.isDone()) {
+            // Without saved bindings the game keeps its defaults
+            if (!pendingBindings.isCompletedExceptionally()) {
+                game.setKeyBindings(pendingBindings.join());
+            }
+            pendingBindings = null;
+        }
         game.update(elapsedTime);
         particleManager.update(elapsedTime);
     }
 
+    private void resume(CompletableFuture<SaveGame> loaded) {
+        try {
+            SaveGame save = loaded.join();
+            if (save != null) {
+                particleManager.clearAllEffects();
+                game.resumeGame(save);
+            } else {
+                System.out.println("The saved game is from a different version");
+            }
+        } catch (Exception ex) {
+            System.out.println("Unable to load the saved game: " + ex.getMessage());
+        }
+    }
+
     @Override
     public void render(double elapsedTime) {
         
@@ -0,0 +1,42 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Binary form of the key bindings: six GLFW key codes, each as a short.
+ *
+ * Version 1: move up, move down, move left, move right, undo, reset level
+ */
+public class KeyboardStateCodec extends BinaryCodec<KeyboardState> {
+    private static final int MAGIC = 0x42424B53; // "BBKS"
+
+    public static final KeyboardStateCodec INSTANCE = new KeyboardStateCodec();
+
+    private KeyboardStateCodec() {
+        super(MAGIC, 1);
+    }
+
+    @Override
+    protected int size(KeyboardState value) {
+        return 6 * 2;
+    }
+
+    @Override
+    protected void write(KeyboardState value, ByteBuffer buffer) {
+        buffer.putShort((short) value.moveUpKey);
+        buffer.putShort((short) value.moveDownKey);
+        buffer.putShort((short) value.moveLeftKey);
+        buffer.putShort((short) value.moveRightKey);
+        buffer.putShort((short) value.undo);
+        buffer.putShort((short) value.resetLevel);
+    }
+
+    @Override
+    protected KeyboardState read(ByteBuffer buffer, int version) {
+        int moveUpKey = buffer.getShort();
+        int moveDownKey = buffer.getShort();
+        int moveLeftKey = buffer.getShort();
+        int moveRightKey = buffer.getShort();
+        int undo = buffer.getShort();
+        int resetLevel = buffer.getShort();
+        return new KeyboardState(moveUpKey, moveDownKey, moveLeftKey, moveRightKey, undo, resetLevel);
+    }
+}
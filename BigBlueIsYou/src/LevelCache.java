@@ -0,0 +1,151 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory cache of loaded levels, so restarting or going back to a recently played level
+ * skips reading, parsing and laying it out again.  The least recently used levels are evicted once
+ * the layouts held add up to more than the byte budget.
+ * Layouts are immutable, so the same instance can be handed out any number of times.
+ */
+public class LevelCache {
+    // Enough for several hundred typical 20 x 20 levels
+    public static final long DEFAULT_BUDGET_BYTES = 1L << 20;
+
+    private long budgetBytes;
+    private long usedBytes;
+    private final LinkedHashMap<String, LevelLayout> levels = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LevelCache(long budgetBytes) {
+        checkBudget(budgetBytes);
+        this.budgetBytes = budgetBytes;
+    }
+
+    public LevelCache() {
+        this(DEFAULT_BUDGET_BYTES);
+    }
+
+    /**
+     * @return The cached level, or null on a miss
+     */
+    public synchronized LevelLayout get(String levelName) {
+        LevelLayout layout = levels.get(levelName);
+        if (layout != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return layout;
+    }
+
+    /**
+     * Checks for a level without counting a hit or miss, or changing its place in the eviction order
+     */
+    public synchronized boolean contains(String levelName) {
+        return levels.containsKey(levelName);
+    }
+
+    /**
+     * Adds or replaces a level, then evicts the least recently used levels until the cache is within budget.
+     * A level larger than the whole budget is not cached.
+     */
+    public synchronized void put(String levelName, LevelLayout layout) {
+        if (layout == null) {
+            return;
+        }
+        remove(levelName);
+        if (layout.sizeInBytes() > budgetBytes) {
+            return;
+        }
+
+        levels.put(levelName, layout);
+        usedBytes += layout.sizeInBytes();
+        evictToBudget();
+    }
+
+    /**
+     * Changes the budget, evicting the least recently used levels if the cache no longer fits
+     */
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        checkBudget(budgetBytes);
+        this.budgetBytes = budgetBytes;
+        evictToBudget();
+    }
+
+    private static void checkBudget(long budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("budget must be positive");
+        }
+    }
+
+    private void evictToBudget() {
+        Iterator<Map.Entry<String, LevelLayout>> eldest = levels.entrySet().iterator();
+        while (usedBytes > budgetBytes && eldest.hasNext()) {
+            var entry = eldest.next();
+            usedBytes -= entry.getValue().sizeInBytes();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void remove(String levelName) {
+        LevelLayout removed = levels.remove(levelName);
+        if (removed != null) {
+            usedBytes -= removed.sizeInBytes();
+        }
+    }
+
+    public synchronized void clear() {
+        levels.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int size() {
+        return levels.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Returns statistics about how well the cache is doing
+     */
+    public synchronized Map<String, Long> getStatistics() {
+        Map<String, Long> stats = new HashMap<>();
+        stats.put("levels", (long) levels.size());
+        stats.put("usedBytes", usedBytes);
+        stats.put("budgetBytes", budgetBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("LevelCache: %d levels, %d/%d bytes, %d hits, %d misses, %d evictions",
+                levels.size(), usedBytes, budgetBytes, hits, misses, evictions);
+    }
+}
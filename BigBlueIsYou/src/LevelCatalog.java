@@ -0,0 +1,316 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the levels in a .bbiy level pack.
+ * The pack is read into memory once and scanned once for level headers, after which finding a level
+ * is a map lookup and parsing it only touches that level's bytes.  The bytes are a heap copy rather than
+ * a mapping, so a catalog that is still held after the pack is rewritten keeps working and doesn't lock the file.
+ *
+ * A level in the pack looks like:
+ *   Level name
+ *   rows x cols
+ *   rows lines of the first object box
+ *   rows lines of the second object box
+ */
+public class LevelCatalog {
+
+    /**
+     * Where a level lives in the pack
+     * @param name Level name, exactly as written on its header line
+     * @param index Position of the level in the pack, starting at 0
+     * @param offset Byte offset of the first row of the first object box
+     * @param end Byte offset just past the last row of the second object box
+     */
+    public record Entry(String name, int index, int offset, int end, int rows, int cols) {
+    }
+
+    // Catalogs are shared by every parser reading the same pack
+    private static final Map<Path, LevelCatalog> catalogs = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final ByteBuffer bytes;
+    private final Map<String, Entry> levels = new HashMap<>();
+    private final List<Entry> order = new ArrayList<>();
+    // SHA-256 of each level's text, worked out the first time it is asked for
+    private final Map<String, String> digests = new ConcurrentHashMap<>();
+    // The hashes of the levels that have been loaded, see getKnownHashes
+    private final Map<String, String> hashes = new ConcurrentHashMap<>();
+
+    private LevelCatalog(Path path) throws IOException {
+        this.path = path;
+        this.bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        index();
+    }
+
+    /**
+     * Returns the catalog for the pack, reading and indexing it the first time it is asked for
+     * @return The catalog, or null if the pack couldn't be read
+     */
+    public static LevelCatalog open(String levelsFilePath) {
+        Path path = Path.of(levelsFilePath).toAbsolutePath().normalize();
+        try {
+            return catalogs.computeIfAbsent(path, p -> {
+                try {
+                    return new LevelCatalog(p);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            System.out.println("Something went wrong while reading the level pack...");
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * The catalog for the pack if it has already been opened, without opening it
+     */
+    public static LevelCatalog opened(Path path) {
+        return catalogs.get(path.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Reads and indexes the pack again after it changed on disk.  Later calls to open get the new catalog.
+     * @return The new catalog, or null if the pack couldn't be read, in which case the old one is kept
+     */
+    public static LevelCatalog reload(Path path) {
+        Path normalized = path.toAbsolutePath().normalize();
+        try {
+            LevelCatalog catalog = new LevelCatalog(normalized);
+            catalogs.put(normalized, catalog);
+            return catalog;
+        } catch (IOException e) {
+            System.out.println("Something went wrong while reloading the level pack...");
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public Entry find(String levelName) {
+        return levels.get(levelName);
+    }
+
+    /**
+     * Every level in the pack, in the order they appear in the file
+     */
+    public List<Entry> getLevels() {
+        return Collections.unmodifiableList(order);
+    }
+
+    public int size() {
+        return order.size();
+    }
+
+    /**
+     * The level at the given position in the pack
+     */
+    public Entry get(int index) {
+        return order.get(index);
+    }
+
+    /**
+     * Parses a level straight out of the pack's bytes.  Each character of each box is looked up in tiles,
+     * a character indexed table of grid strings; characters with no entry leave the cell alone, so
+     * a tile in the second box replaces the one from the first box.
+     * @return The grid, with "" for empty cells
+     */
+    public String[][] parse(Entry entry, String[] tiles) {
+        String[][] grid = new String[entry.rows()][entry.cols()];
+        for (var row : grid) {
+            Arrays.fill(row, "");
+        }
+
+        int position = entry.offset();
+        for (int box = 0; box < 2; box++) {
+            for (int i = 0; i < entry.rows(); i++) {
+                int lineEnd = lineEnd(position, entry.end());
+                int length = Math.min(lineEnd - position, entry.cols());
+                for (int j = 0; j < length; j++) {
+                    int item = bytes.get(position + j) & 0xff;
+                    if (item < tiles.length && tiles[item] != null) {
+                        grid[i][j] = tiles[item];
+                    }
+                }
+                position = nextLine(lineEnd, entry.end());
+            }
+        }
+
+        return grid;
+    }
+
+    /**
+     * Copies the raw text of a level, header included, out of the pack
+     */
+    public byte[] read(Entry entry) {
+        int start = headerStart(entry);
+        byte[] text = new byte[entry.end() - start];
+        bytes.get(start, text);
+        return text;
+    }
+
+    /**
+     * SHA-256 of the level's text, in hex.  The level counts as loaded from now on, see getKnownHashes.
+     */
+    public String hash(Entry entry) {
+        return hashes.computeIfAbsent(entry.name(), name -> contentHash(entry));
+    }
+
+    /**
+     * SHA-256 of the level's text, in hex, without counting the level as loaded, e.g. to look up
+     * its thumbnail
+     */
+    public String contentHash(Entry entry) {
+        return digests.computeIfAbsent(entry.name(), name -> digest(entry));
+    }
+
+    /**
+     * The hash of every level in the pack.  This reads the whole pack the first time, so it belongs
+     * on a background thread.  Like contentHash, it doesn't count the levels as loaded.
+     */
+    public Set<String> getAllHashes() {
+        Set<String> all = new HashSet<>();
+        for (var entry : order) {
+            all.add(contentHash(entry));
+        }
+        return all;
+    }
+
+    private String digest(Entry entry) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(read(entry)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The hashes worked out so far, by level name.  These are the levels that have been loaded
+     * from this catalog, so the only ones worth comparing when the pack changes.
+     */
+    public Map<String, String> getKnownHashes() {
+        return Map.copyOf(hashes);
+    }
+
+    /**
+     * Walks the pack once, recording each header line that is followed by a dimensions line,
+     * then skipping over the level's two boxes
+     */
+    private void index() {
+        int limit = bytes.limit();
+        int position = 0;
+
+        while (position < limit) {
+            int nameEnd = lineEnd(position, limit);
+            int dimensionsStart = nextLine(nameEnd, limit);
+            int dimensionsEnd = lineEnd(dimensionsStart, limit);
+            int[] dimensions = parseDimensions(dimensionsStart, dimensionsEnd);
+
+            if (dimensions == null) {
+                position = dimensionsStart;
+                continue;
+            }
+
+            String name = text(position, nameEnd).strip();
+            int offset = nextLine(dimensionsEnd, limit);
+            int end = offset;
+            int boxLines = dimensions[0] * 2;
+            for (int i = 0; i < boxLines && end < limit; i++) {
+                end = nextLine(lineEnd(end, limit), limit);
+            }
+
+            // The first level with a given name wins, the same as the old line scan
+            Entry entry = new Entry(name, order.size(), offset, end, dimensions[0], dimensions[1]);
+            if (levels.putIfAbsent(name, entry) == null) {
+                order.add(entry);
+            }
+            position = end;
+        }
+    }
+
+    /**
+     * Reads a "rows x cols" line
+     * @return {rows, cols}, or null if the line isn't a dimensions line
+     */
+    private int[] parseDimensions(int start, int end) {
+        String line = text(start, end);
+        int x = line.indexOf('x');
+        if (x == -1) {
+            return null;
+        }
+        try {
+            int rows = Integer.parseInt(line.substring(0, x).strip());
+            int cols = Integer.parseInt(line.substring(x + 1).strip());
+            return rows > 0 && cols > 0 ? new int[] {rows, cols} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private int headerStart(Entry entry) {
+        // Back up over the dimensions line and the name line
+        int position = entry.offset();
+        for (int lines = 0; lines < 2 && position > 0; lines++) {
+            position--;
+            while (position > 0 && bytes.get(position - 1) != '\n') {
+                position--;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Offset of the end of the line starting at position, not counting any \r\n
+     */
+    private int lineEnd(int position, int limit) {
+        int end = position;
+        while (end < limit && bytes.get(end) != '\n') {
+            end++;
+        }
+        if (end > position && bytes.get(end - 1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Offset of the start of the line after the one ending at lineEnd
+     */
+    private int nextLine(int lineEnd, int limit) {
+        int position = lineEnd;
+        if (position < limit && bytes.get(position) == '\r') {
+            position++;
+        }
+        if (position < limit && bytes.get(position) == '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    private String text(int start, int end) {
+        byte[] text = new byte[end - start];
+        bytes.get(start, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+}
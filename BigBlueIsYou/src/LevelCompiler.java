@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Compiles text levels into a compact binary form and keeps them in a cache directory.
+ * A compiled level is named after the SHA-256 of the level's source text, so editing a level
+ * simply misses the cache and old entries are never read again.
+ *
+ * Compiled file layout (big-endian):
+ *   int    MAGIC
+ *   byte   VERSION
+ *   short  name length, then the name in UTF-8
+ *   int    rows
+ *   int    cols
+ *   byte[] rows * cols tile IDs, see LevelTemplate.TILE_NAMES
+ *
+ * Run main to compile every level in a pack ahead of time.
+ */
+public class LevelCompiler {
+    private static final int MAGIC = 0x42424C56; // "BBLV"
+    private static final byte VERSION = 1;
+    static final String EXTENSION = ".bblv";
+
+    private final LevelParser levelParser;
+    private final Path cacheDirectory;
+
+    public LevelCompiler(LevelParser levelParser, String cacheDirectory) {
+        this.levelParser = levelParser;
+        this.cacheDirectory = Path.of(cacheDirectory);
+    }
+
+    /**
+     * Creates a compiler for the default level pack and cache directory
+     */
+    public LevelCompiler() {
+        this(new LevelParser(), "src/LevelInfo/compiled");
+    }
+
+    /**
+     * Loads the compiled form of the level, compiling and caching it first if needed
+     * @return The level, or null if it couldn't be found or parsed
+     */
+    public LevelTemplate load(String levelName) {
+        LevelCatalog catalog = levelParser.getCatalog();
+        LevelCatalog.Entry entry = catalog != null ? catalog.find(levelName) : null;
+        if (entry == null) {
+            return null;
+        }
+
+        Path compiled = cacheDirectory.resolve(catalog.hash(entry) + EXTENSION);
+        if (Files.exists(compiled)) {
+            try {
+                LevelTemplate template = decode(ByteBuffer.wrap(Files.readAllBytes(compiled)));
+                if (template != null) {
+                    return template;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return compile(levelName, compiled);
+    }
+
+    /**
+     * Parses the level and writes its compiled form into the cache
+     */
+    private LevelTemplate compile(String levelName, Path compiled) {
+        String[][] grid = levelParser.parseLevel(levelName);
+        if (grid == null) {
+            return null;
+        }
+
+        LevelTemplate template = LevelTemplate.fromGrid(levelName, grid);
+        Path temporary = null;
+        try {
+            Files.createDirectories(cacheDirectory);
+            // Write to a temporary file first so a half written file is never picked up
+            temporary = Files.createTempFile(cacheDirectory, "level", ".tmp");
+            Files.write(temporary, encode(template));
+            Files.move(temporary, compiled, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The level still loads, it just won't be cached
+            System.out.println("Unable to cache compiled level " + levelName);
+            e.printStackTrace();
+            deleteQuietly(temporary);
+        }
+        return template;
+    }
+
+    /**
+     * Removes a temporary file left behind by a failed write, if there is one
+     */
+    private static void deleteQuietly(Path temporary) {
+        if (temporary == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(temporary);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static byte[] encode(LevelTemplate template) {
+        byte[] name = template.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] tiles = template.getTiles();
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 1 + 2 + name.length + 4 + 4 + tiles.length);
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+        buffer.putInt(template.getRows());
+        buffer.putInt(template.getCols());
+        buffer.put(tiles);
+        return buffer.array();
+    }
+
+    /**
+     * @return The level, or null if the data isn't a compiled level of this version or holds unknown tiles
+     */
+    public static LevelTemplate decode(ByteBuffer buffer) {
+        if (buffer.remaining() < 7 || buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+            return null;
+        }
+
+        int nameLength = buffer.getShort() & 0xffff;
+        if (buffer.remaining() < nameLength + 8) {
+            return null;
+        }
+        byte[] name = new byte[nameLength];
+        buffer.get(name);
+
+        int rows = buffer.getInt();
+        int cols = buffer.getInt();
+        if (rows < 0 || cols < 0 || buffer.remaining() != (long) rows * cols) {
+            return null;
+        }
+        byte[] tiles = new byte[rows * cols];
+        buffer.get(tiles);
+        if (!LevelTemplate.isValid(tiles)) {
+            return null;
+        }
+
+        return new LevelTemplate(new String(name, StandardCharsets.UTF_8), rows, cols, tiles);
+    }
+
+    /**
+     * Compiles every level in a pack
+     * Usage: LevelCompiler [levels file] [cache directory]
+     */
+    public static void main(String[] args) {
+        LevelParser parser = args.length > 0 ? new LevelParser(args[0]) : new LevelParser();
+        LevelCompiler compiler = new LevelCompiler(parser, args.length > 1 ? args[1] : "src/LevelInfo/compiled");
+
+        LevelCatalog catalog = parser.getCatalog();
+        if (catalog == null) {
+            System.exit(1);
+        }
+
+        int failed = 0;
+        for (var entry : catalog.getLevels()) {
+            LevelTemplate template = compiler.load(entry.name());
+            if (template == null) {
+                System.out.printf("%s: failed%n", entry.name());
+                failed++;
+            } else {
+                System.out.printf("%s: %d x %d%n", entry.name(), template.getRows(), template.getCols());
+            }
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,141 @@
+import ecs.Systems.Rule;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A level's starting position, worked out as far as it can be without creating any entities:
+ * which kind of entity goes in each occupied cell, and the rules the level's text spells out.
+ * Layouts are built on the level prefetch thread and are immutable, so the same instance can be handed
+ * out any number of times; starting the level only has to create the entities and apply the rules.
+ */
+public final class LevelLayout {
+
+    /**
+     * The kind of entity a tile becomes, see Game.createEntity
+     */
+    public enum Kind {
+        BACKGROUND, NOUN, OBJECT, VERB
+    }
+
+    // Kind for each tile ID, null for tiles that don't become an entity
+    private static final Kind[] KINDS = buildKinds();
+
+    private final LevelTemplate template;
+    // Row-major cell of each entity to create, in grid order
+    private final int[] cells;
+    private final List<String[]> rules;
+
+    private LevelLayout(LevelTemplate template, int[] cells, List<String[]> rules) {
+        this.template = template;
+        this.cells = cells;
+        this.rules = rules;
+    }
+
+    /**
+     * Lays out the level, finding its rules along the way
+     */
+    public static LevelLayout of(LevelTemplate template) {
+        return of(template, Rule.findRules(template.toGrid()));
+    }
+
+    /**
+     * Lays out the level with rules that are already known, e.g. the ones a saved game was using
+     * @param rules Each rule as the noun and what it is
+     */
+    public static LevelLayout of(LevelTemplate template, List<String[]> rules) {
+        int count = 0;
+        for (int i = 0; i < template.getRows(); i++) {
+            for (int j = 0; j < template.getCols(); j++) {
+                if (KINDS[template.getTile(i, j)] != null) {
+                    count++;
+                }
+            }
+        }
+
+        int[] cells = new int[count];
+        int next = 0;
+        for (int i = 0; i < template.getRows(); i++) {
+            for (int j = 0; j < template.getCols(); j++) {
+                if (KINDS[template.getTile(i, j)] != null) {
+                    cells[next++] = i * template.getCols() + j;
+                }
+            }
+        }
+
+        return new LevelLayout(template, cells, Collections.unmodifiableList(rules));
+    }
+
+    /**
+     * @return The kind of entity for a grid string, or null if it doesn't become one
+     */
+    public static Kind kindOf(String tile) {
+        return KINDS[LevelTemplate.tileId(tile)];
+    }
+
+    public LevelTemplate getTemplate() {
+        return template;
+    }
+
+    public String getName() {
+        return template.getName();
+    }
+
+    /**
+     * Number of entities the level starts with
+     */
+    public int size() {
+        return cells.length;
+    }
+
+    public int getRow(int entity) {
+        return cells[entity] / template.getCols();
+    }
+
+    public int getCol(int entity) {
+        return cells[entity] % template.getCols();
+    }
+
+    /**
+     * The grid string of the entity's tile
+     */
+    public String getTile(int entity) {
+        return LevelTemplate.TILE_NAMES[template.getTile(getRow(entity), getCol(entity))];
+    }
+
+    public Kind getKind(int entity) {
+        return KINDS[template.getTile(getRow(entity), getCol(entity))];
+    }
+
+    /**
+     * The rules in effect when the level starts, each as the noun and what it is
+     */
+    public List<String[]> getRules() {
+        return rules;
+    }
+
+    /**
+     * Rough number of bytes the layout holds on to, for budgeting caches
+     */
+    public int sizeInBytes() {
+        return template.sizeInBytes() + 64 + cells.length * 4 + rules.size() * 32;
+    }
+
+    private static Kind[] buildKinds() {
+        LevelParser parser = new LevelParser();
+        Kind[] kinds = new Kind[LevelTemplate.TILE_NAMES.length];
+        for (int id = 1; id < kinds.length; id++) {
+            String tile = LevelTemplate.TILE_NAMES[id];
+            // Checked in the same order Game used to check the parser's maps
+            if (parser.bgObjects.containsValue(tile)) {
+                kinds[id] = Kind.BACKGROUND;
+            } else if (parser.nouns.containsValue(tile)) {
+                kinds[id] = Kind.NOUN;
+            } else if (parser.objects.containsValue(tile)) {
+                kinds[id] = Kind.OBJECT;
+            } else if (tile.equalsIgnoreCase("is")) {
+                kinds[id] = Kind.VERB;
+            }
+        }
+        return kinds;
+    }
+}
@@ -0,0 +1,263 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Reads a level pack one level at a time from any stream, e.g. a huge generated pack or stdin.
+ * Only the level being read is held in memory, and nothing is indexed ahead of time,
+ * so a pack of any size can be checked or compiled in a single pass.
+ *
+ * Each level's SHA-256 is taken over the same bytes LevelCatalog.read returns, so levels exported
+ * here land under the same names LevelCompiler uses.
+ */
+public class LevelPackReader implements AutoCloseable {
+
+    /**
+     * A level as it streams by
+     * @param template The level's tiles
+     * @param hash SHA-256 of the level's source text, in hex
+     * @param line Line number of the level's header in the pack
+     * @param problems Anything wrong with the level; empty if it is fine
+     */
+    public record Level(LevelTemplate template, String hash, long line, List<String> problems) {
+        public boolean isValid() {
+            return problems.isEmpty();
+        }
+    }
+
+    // Header lines longer than this are cut short, so a pack with no line breaks can't use unbounded memory
+    private static final int MAX_LINE = 64 * 1024;
+
+    private final InputStream input;
+    private final byte[] tileIds = new byte[128];
+    private final MessageDigest digest;
+
+    private byte[] line = new byte[256];
+    private int lineLength;     // Bytes in line, without the line ending
+    private int lineRawLength;  // Bytes in line, with the line ending
+    private boolean lineTruncated;
+    private long lineNumber;
+
+    // Previous line, which is the level name if the current line turns out to be its dimensions
+    private byte[] previous = new byte[256];
+    private int previousLength;
+    private int previousRawLength;
+
+    public LevelPackReader(InputStream input) {
+        this.input = input instanceof BufferedInputStream ? input : new BufferedInputStream(input, 64 * 1024);
+
+        String[] tiles = new LevelParser().getTiles();
+        for (int c = 0; c < tiles.length && c < tileIds.length; c++) {
+            tileIds[c] = (byte) LevelTemplate.tileId(tiles[c]);
+        }
+
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static LevelPackReader open(Path path) throws IOException {
+        return new LevelPackReader(Files.newInputStream(path));
+    }
+
+    /**
+     * Reads up to and including the next level
+     * @return The level, or null once the end of the pack is reached
+     */
+    public Level next() throws IOException {
+        previousLength = -1;
+
+        while (readLine()) {
+            int[] dimensions = previousLength >= 0 ? parseDimensions() : null;
+            if (dimensions == null) {
+                keepAsPrevious();
+                continue;
+            }
+            return readLevel(dimensions[0], dimensions[1]);
+        }
+        return null;
+    }
+
+    /**
+     * Reads the two object boxes following a dimensions line
+     */
+    private Level readLevel(int rows, int cols) throws IOException {
+        String name = new String(previous, 0, previousLength, StandardCharsets.UTF_8).strip();
+        long headerLine = lineNumber - 1;
+        List<String> problems = new ArrayList<>();
+
+        digest.reset();
+        digest.update(previous, 0, previousRawLength);
+        digest.update(line, 0, lineRawLength);
+
+        byte[] tiles = new byte[rows * cols];
+        for (int box = 0; box < 2; box++) {
+            for (int i = 0; i < rows; i++) {
+                if (!readLine()) {
+                    problems.add(String.format("pack ends %d rows early", (2 - box) * rows - i));
+                    return finish(name, rows, cols, tiles, headerLine, problems);
+                }
+                digest.update(line, 0, lineRawLength);
+
+                if (lineLength > cols || lineTruncated) {
+                    problems.add(String.format("line %d is longer than %d columns", lineNumber, cols));
+                }
+                for (int j = 0; j < Math.min(lineLength, cols); j++) {
+                    int item = line[j] & 0xff;
+                    int id = item < tileIds.length ? tileIds[item] : 0;
+                    if (id != 0) {
+                        // The second box is laid over the first
+                        tiles[i * cols + j] = (byte) id;
+                    } else if (item != ' ') {
+                        problems.add(String.format("line %d column %d: unknown tile '%c'", lineNumber, j + 1, (char) item));
+                    }
+                }
+            }
+        }
+
+        return finish(name, rows, cols, tiles, headerLine, problems);
+    }
+
+    private Level finish(String name, int rows, int cols, byte[] tiles, long headerLine, List<String> problems) {
+        String hash = HexFormat.of().formatHex(digest.digest());
+        return new Level(new LevelTemplate(name, rows, cols, tiles), hash, headerLine, problems);
+    }
+
+    /**
+     * Reads the next line into line, growing the buffer up to MAX_LINE
+     * @return False at the end of the stream
+     */
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        lineRawLength = 0;
+        lineTruncated = false;
+
+        int b = input.read();
+        if (b == -1) {
+            return false;
+        }
+        lineNumber++;
+
+        while (b != -1) {
+            if (lineRawLength == line.length) {
+                if (line.length >= MAX_LINE) {
+                    // Hash and check what we have, skip the rest of the line
+                    lineTruncated = true;
+                    while (b != -1 && b != '\n') {
+                        b = input.read();
+                    }
+                    break;
+                }
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineRawLength++] = (byte) b;
+            if (b == '\n') {
+                break;
+            }
+            b = input.read();
+        }
+
+        lineLength = lineRawLength;
+        if (lineLength > 0 && line[lineLength - 1] == '\n') {
+            lineLength--;
+        }
+        if (lineLength > 0 && line[lineLength - 1] == '\r') {
+            lineLength--;
+        }
+        return true;
+    }
+
+    private void keepAsPrevious() {
+        byte[] swap = previous;
+        previous = line;
+        line = swap;
+        previousLength = lineLength;
+        previousRawLength = lineRawLength;
+    }
+
+    /**
+     * Reads the current line as "rows x cols"
+     * @return {rows, cols}, or null if it isn't a dimensions line
+     */
+    private int[] parseDimensions() {
+        if (lineLength > 32) {
+            return null;
+        }
+        String text = new String(line, 0, lineLength, StandardCharsets.US_ASCII);
+        int x = text.indexOf('x');
+        if (x == -1) {
+            return null;
+        }
+        try {
+            int rows = Integer.parseInt(text.substring(0, x).strip());
+            int cols = Integer.parseInt(text.substring(x + 1).strip());
+            if (rows <= 0 || cols <= 0 || (long) rows * cols > Integer.MAX_VALUE) {
+                return null;
+            }
+            return new int[] {rows, cols};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * Checks or compiles every level in a pack as it streams by
+     * Usage:
+     *   LevelPackReader validate [levels file | -]
+     *   LevelPackReader export [levels file | -] [output directory]
+     * A levels file of "-" reads from stdin.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || !(args[0].equals("validate") || args[0].equals("export"))) {
+            System.out.println("Usage: LevelPackReader validate|export [levels file | -] [output directory]");
+            System.exit(2);
+        }
+        boolean export = args[0].equals("export");
+        String source = args.length > 1 ? args[1] : "src/LevelInfo/levels-all.bbiy";
+        Path output = Path.of(args.length > 2 ? args[2] : "src/LevelInfo/compiled");
+        if (export) {
+            Files.createDirectories(output);
+        }
+
+        long levels = 0;
+        long invalid = 0;
+        try (LevelPackReader reader = source.equals("-") ? new LevelPackReader(System.in) : open(Path.of(source))) {
+            Level level;
+            while ((level = reader.next()) != null) {
+                levels++;
+                if (!level.isValid()) {
+                    invalid++;
+                    System.out.printf("%s (line %d):%n", level.template().getName(), level.line());
+                    for (var problem : level.problems()) {
+                        System.out.printf("    %s%n", problem);
+                    }
+                } else if (export) {
+                    Path temporary = Files.createTempFile(output, "level", ".tmp");
+                    Files.write(temporary, LevelCompiler.encode(level.template()));
+                    Files.move(temporary, output.resolve(level.hash() + LevelCompiler.EXTENSION),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+        }
+
+        System.out.printf("%d levels, %d with problems%n", levels, invalid);
+        System.exit(invalid == 0 ? 0 : 1);
+    }
+}
@@ -1,6 +1,5 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 
 public class LevelParser {
@@ -39,6 +38,9 @@ public class LevelParser {
 
     private final String verb = "I";
 
+    // Grid string for each level file character, indexed by the character
+    private final String[] tiles = buildTiles();
+
     /**
      * Creates a new LevelParser with the specified levels file path
      * @param levelsFilePath Path to the levels file
@@ -60,134 +62,56 @@ public class LevelParser {
      * @return A grid representation of the level, or null if the level couldn't be parsed
      */
     public String[][] parseLevel(String levelName) {
-        int startLine = findLevel(levelName);
-
-        if (startLine == -1) {
-            System.out.println("Error: Level Not Found");
+        LevelCatalog catalog = getCatalog();
+        if (catalog == null) {
             return null;
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(levelsFilePath))) {
-            String line;
-            int currentLine = 1;
-
-            // Skip until we get to the level header's line
-            while ((line = reader.readLine()) != null && currentLine < startLine) {
-                currentLine++;
-            }
-            line = reader.readLine();
-
-            // At this point we should be at the dimensions
-            String[] dimensions = line.split("x");
-
-            // Creating 1st "box" from the file
-            String[][] objects1 = new String[Integer.parseInt(dimensions[0].strip())][Integer.parseInt(dimensions[1].strip())];
-            for (int i = 0; i < objects1.length; i++) {
-                line = reader.readLine();
-                for (int j = 0; j < line.length(); j++) {
-                    char item = line.charAt(j);
-                    objects1[i][j] = Character.toString(item);
-                }
-            }
-
-            // Creating 2nd "box" from the file
-            String[][] objects2 = new String[Integer.parseInt(dimensions[0].strip())][Integer.parseInt(dimensions[1].strip())];
-            for (int i = 0; i < objects2.length; i++) {
-                line = reader.readLine();
-                for (int j = 0; j < line.length(); j++) {
-                    char item = line.charAt(j);
-                    objects2[i][j] = Character.toString(item);
-                }
-            }
-
-            return createGrid(objects1, objects2);
-
-        } catch (Exception e) {
-            System.out.println("Something went wrong while parsing the level...");
-            e.printStackTrace();
+        LevelCatalog.Entry entry = catalog.find(levelName);
+        if (entry == null) {
+            System.out.println("Error: Level Not Found");
+            return null;
         }
 
-        return null;
+        return catalog.parse(entry, tiles);
     }
 
     /**
-     * Find the line where the level's header is
-     * @param levelName The name of the level to find
-     * @return The line number where the level header is, or -1 if not found
+     * The absolute path of the level pack this parser reads
      */
-    private int findLevel(String levelName) {
-        String keyword = levelName;
-        int lineNumber = 1;
+    public Path getPackPath() {
+        return Path.of(levelsFilePath).toAbsolutePath().normalize();
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(levelsFilePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.contains(keyword)) {
-                    return lineNumber;
-                }
-                lineNumber++;
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    /**
+     * The index of the levels in this parser's level pack
+     * @return The catalog, or null if the pack couldn't be read
+     */
+    public LevelCatalog getCatalog() {
+        return LevelCatalog.open(levelsFilePath);
+    }
 
-        return -1;
+    /**
+     * The grid string for each level file character, indexed by the character.
+     * Characters that aren't tiles have no entry.
+     */
+    public String[] getTiles() {
+        return tiles.clone();
     }
 
     /**
-     * Convert the two object boxes into a single play area (grid)
+     * Builds the character to grid string table from the object maps.
      * Background objects are left out of grid since they don't do anything except get rendered
      * Grid will track movement and development of rules
-     * @param obj1 First object box
-     * @param obj2 Second object box
-     * @return A grid representation of the level
      */
-    private String[][] createGrid(String[][] obj1, String[][] obj2) {
-        String[][] grid = new String[obj1.length][obj1[0].length];
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[i].length; j++) {
-                grid[i][j] = "";
+    private String[] buildTiles() {
+        String[] table = new String[128];
+        for (var map : List.of(bgObjects, objects, nouns)) {
+            for (var mapping : map.entrySet()) {
+                table[mapping.getKey().charAt(0)] = mapping.getValue();
             }
         }
-
-        // Process first object box
-        for (int i = 0; i < obj1.length; i++) {
-            for (int j = 0; j < obj1[i].length; j++) {
-                if (bgObjects.containsKey(obj1[i][j])) {
-                    // Add background objects to the grid
-                    grid[i][j] = bgObjects.get(obj1[i][j]);
-                }
-                else if (objects.containsKey(obj1[i][j])) {
-                    grid[i][j] = objects.get(obj1[i][j]);
-                }
-                else if (nouns.containsKey(obj1[i][j])) {
-                    grid[i][j] = nouns.get(obj1[i][j]);
-                }
-                else if (verb.equals(obj1[i][j])) {
-                    grid[i][j] = "is";
-                }
-            }
-        }
-
-        // Process second object box
-        for (int i = 0; i < obj2.length; i++) {
-            for (int j = 0; j < obj2[i].length; j++) {
-                if (bgObjects.containsKey(obj2[i][j])) {
-                    // Add background objects to the grid
-                    grid[i][j] = bgObjects.get(obj2[i][j]);
-                }
-                else if (objects.containsKey(obj2[i][j])) {
-                    grid[i][j] = objects.get(obj2[i][j]);
-                }
-                else if (nouns.containsKey(obj2[i][j])) {
-                    grid[i][j] = nouns.get(obj2[i][j]);
-                }
-                else if (verb.equals(obj2[i][j])) {
-                    grid[i][j] = "is";
-                }
-            }
-        }
-
-        return grid;
+        table[verb.charAt(0)] = "is";
+        return table;
     }
-}
\ No newline at end of file
+}
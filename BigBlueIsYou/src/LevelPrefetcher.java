@@ -0,0 +1,180 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Loads levels on a background thread ahead of when they are needed, e.g. the level highlighted in
+ * the level select menu or the level after the one just won.
+ * Reading and parsing the level, sorting out which entity goes in each cell and finding the starting
+ * rules all happen in the background.  The entities themselves are created on the main thread when the
+ * level is entered, because they are mutable, belong to one play of the level, and are shared with
+ * systems that aren't thread safe.
+ * Loaded levels are kept in a LevelCache, so levels played recently don't need loading at all.
+ */
+public class LevelPrefetcher {
+    private static LevelPrefetcher instance;
+
+    private final LevelCompiler levelCompiler;
+    private final LevelCache levelCache;
+    private final ExecutorService executor;
+    // Loads still in progress on the background thread
+    private final Map<String, CompletableFuture<LevelLayout>> pending = new HashMap<>();
+
+    private LevelPrefetcher() {
+        this.levelCompiler = new LevelCompiler();
+        this.levelCache = new LevelCache();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "level-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static synchronized LevelPrefetcher getInstance() {
+        if (instance == null) {
+            instance = new LevelPrefetcher();
+        }
+        return instance;
+    }
+
+    public LevelCache getCache() {
+        return levelCache;
+    }
+
+    /**
+     * Sets how many bytes of loaded levels are kept around, see LevelCache
+     */
+    public void setCacheBudget(long budgetBytes) {
+        levelCache.setBudgetBytes(budgetBytes);
+    }
+
+    /**
+     * Starts loading the level in the background, unless it is already loaded or loading
+     */
+    public synchronized void prefetch(String levelName) {
+        if (levelName == null || pending.containsKey(levelName) || levelCache.contains(levelName)) {
+            return;
+        }
+        CompletableFuture<LevelLayout> future = new CompletableFuture<>();
+        pending.put(levelName, future);
+        executor.execute(() -> {
+            try {
+                LevelLayout layout = load(levelName);
+                synchronized (this) {
+                    // If the level was replaced while this load was running, the copy read here is stale
+                    if (pending.remove(levelName, future)) {
+                        levelCache.put(levelName, layout);
+                    }
+                }
+                future.complete(layout);
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Returns the level if it has already been loaded, otherwise starts loading it in the background
+     * and returns null, without ever waiting
+     */
+    public LevelLayout peek(String levelName) {
+        if (levelCache.contains(levelName)) {
+            return levelCache.get(levelName);
+        }
+        prefetch(levelName);
+        return null;
+    }
+
+    /**
+     * Runs other slow work on the prefetch thread, after the loads already queued, so it stays off
+     * the render thread
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    /**
+     * Swaps in a level that was edited on disk, so the next take gets the new version.
+     * A prefetch of the level that is still running is dropped, and anything waiting on it gets this version.
+     */
+    public void replace(String levelName, LevelLayout layout) {
+        CompletableFuture<LevelLayout> superseded;
+        synchronized (this) {
+            superseded = pending.remove(levelName);
+            levelCache.put(levelName, layout);
+        }
+        if (superseded != null) {
+            superseded.complete(layout);
+        }
+    }
+
+    /**
+     * Prefetches the level that follows levelName in the level pack, if there is one
+     */
+    public void prefetchNext(String levelName) {
+        prefetch(nextLevel(levelName));
+    }
+
+    /**
+     * Returns the level from the cache, waiting for a prefetch that is still running, or loading it on
+     * the calling thread if it was never prefetched
+     * @return The level, or null if it couldn't be loaded
+     */
+    public LevelLayout take(String levelName) {
+        LevelLayout layout = levelCache.get(levelName);
+        if (layout != null) {
+            return layout;
+        }
+
+        CompletableFuture<LevelLayout> future;
+        synchronized (this) {
+            future = pending.get(levelName);
+        }
+        if (future == null) {
+            layout = load(levelName);
+            levelCache.put(levelName, layout);
+            return layout;
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println("Something went wrong while prefetching " + levelName);
+            e.getCause().printStackTrace();
+            synchronized (this) {
+                pending.remove(levelName, future);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The level laid out, or null if it couldn't be loaded
+     */
+    private LevelLayout load(String levelName) {
+        LevelTemplate template = levelCompiler.load(levelName);
+        return template != null ? LevelLayout.of(template) : null;
+    }
+
+    /**
+     * @return The name of the level after levelName in the level pack, or null if it is the last one
+     */
+    public String nextLevel(String levelName) {
+        LevelCatalog catalog = new LevelParser().getCatalog();
+        LevelCatalog.Entry entry = catalog != null ? catalog.find(levelName) : null;
+        if (entry == null || entry.index() + 1 >= catalog.size()) {
+            return null;
+        }
+        return catalog.get(entry.index() + 1).name();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
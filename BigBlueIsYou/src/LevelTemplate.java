@@ -0,0 +1,127 @@
+import java.util.Arrays;
+
+/**
+ * An immutable, compact copy of a level as it is laid out before play starts.
+ * Each cell is stored as a one byte tile ID, an index into TILE_NAMES, with 0 for an empty cell.
+ * Call toGrid() to get a fresh grid the game is free to modify.
+ */
+public final class LevelTemplate {
+
+    /**
+     * Grid string for each tile ID.  Compiled levels store these IDs, so new tiles must only
+     * ever be added to the end, and LevelCompiler.VERSION bumped if the order has to change.
+     */
+    public static final String[] TILE_NAMES = {
+            "",
+            "floor", "grass", "hedge",
+            "wall", "rock", "flag", "BigBlue", "water", "lava",
+            "wallname", "rockname", "flagname", "baba", "lavaname", "watername",
+            "stop", "push", "you", "win", "sink", "kill",
+            "is"
+    };
+
+    private final String name;
+    private final int rows;
+    private final int cols;
+    private final byte[] tiles;
+
+    /**
+     * @param tiles Row-major tile IDs, rows * cols of them.  The array is kept, not copied.
+     */
+    LevelTemplate(String name, int rows, int cols, byte[] tiles) {
+        if (tiles.length != rows * cols) {
+            throw new IllegalArgumentException("expected " + rows * cols + " tiles but got " + tiles.length);
+        }
+        this.name = name;
+        this.rows = rows;
+        this.cols = cols;
+        this.tiles = tiles;
+    }
+
+    /**
+     * Builds a template from a parsed grid
+     */
+    public static LevelTemplate fromGrid(String name, String[][] grid) {
+        int rows = grid.length;
+        int cols = rows > 0 ? grid[0].length : 0;
+        byte[] tiles = new byte[rows * cols];
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                tiles[i * cols + j] = (byte) tileId(grid[i][j]);
+            }
+        }
+        return new LevelTemplate(name, rows, cols, tiles);
+    }
+
+    /**
+     * @return The tile ID for a grid string, 0 for empty or unknown tiles
+     */
+    public static int tileId(String tile) {
+        if (tile == null || tile.isEmpty()) {
+            return 0;
+        }
+        for (int id = 1; id < TILE_NAMES.length; id++) {
+            if (TILE_NAMES[id].equals(tile)) {
+                return id;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * True if every byte is a tile ID in TILE_NAMES, for checking tiles read back from a file
+     */
+    static boolean isValid(byte[] tiles) {
+        for (byte tile : tiles) {
+            if ((tile & 0xff) >= TILE_NAMES.length) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getTile(int row, int col) {
+        return tiles[row * cols + col] & 0xff;
+    }
+
+    /**
+     * A copy of the row-major tile IDs
+     */
+    public byte[] getTiles() {
+        return Arrays.copyOf(tiles, tiles.length);
+    }
+
+    /**
+     * Rough number of bytes the template holds on to, for budgeting caches
+     */
+    public int sizeInBytes() {
+        return 64 + tiles.length + name.length() * 2;
+    }
+
+    /**
+     * Creates a new grid for the level, with "" for empty cells
+     */
+    public String[][] toGrid() {
+        String[][] grid = new String[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                int id = tiles[i * cols + j] & 0xff;
+                grid[i][j] = id < TILE_NAMES.length ? TILE_NAMES[id] : "";
+            }
+        }
+        return grid;
+    }
+}
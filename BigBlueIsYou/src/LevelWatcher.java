@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Watches the level directories on a background thread and reloads levels that are edited while
+ * the game is running.  When a pack changes, only the levels that have been loaded from it and whose
+ * text is now different are parsed again; each one is then handed to the listener.
+ * The listener is called on the watcher thread, so it should only queue the level for the game loop.
+ */
+public class LevelWatcher implements Runnable {
+
+    public interface Listener {
+        void levelChanged(Path pack, LevelTemplate template);
+    }
+
+    // Editors often save in several steps, so wait for the writes to settle before reading
+    private static final long SETTLE_MILLIS = 150;
+
+    private final List<Path> directories;
+    private final Listener listener;
+    private final String cacheDirectory;
+    private WatchService watchService;
+    private Thread thread;
+
+    public LevelWatcher(List<String> directories, String cacheDirectory, Listener listener) {
+        this.directories = directories.stream().map(d -> Path.of(d).toAbsolutePath().normalize()).toList();
+        this.cacheDirectory = cacheDirectory;
+        this.listener = listener;
+    }
+
+    /**
+     * Watches the directory holding the level pack.  The packs in src/LevelInfo/Debugging are never
+     * opened by the game, so there would be nothing to swap in when they change.
+     */
+    public LevelWatcher(Listener listener) {
+        this(List.of("src/LevelInfo"), "src/LevelInfo/compiled", listener);
+    }
+
+    public void start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (var directory : directories) {
+                if (Files.isDirectory(directory)) {
+                    directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                }
+            }
+        } catch (IOException e) {
+            // Not being able to watch shouldn't stop the game, edits just need a restart
+            System.out.println("Unable to watch the level files for changes");
+            e.printStackTrace();
+            return;
+        }
+
+        thread = new Thread(this, "level-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void shutdown() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<Path> changed = new HashSet<>();
+                collect(key, changed);
+
+                // Gather up everything else that was written while the save settles
+                Thread.sleep(SETTLE_MILLIS);
+                while ((key = watchService.poll()) != null) {
+                    collect(key, changed);
+                }
+
+                for (var pack : changed) {
+                    packChanged(pack);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path directory = (Path) key.watchable();
+        for (var event : key.pollEvents()) {
+            if (event.context() instanceof Path name && name.toString().endsWith(".bbiy")) {
+                changed.add(directory.resolve(name).normalize());
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Reindexes the pack and reloads the levels in it that were in use and have changed
+     */
+    private void packChanged(Path pack) {
+        LevelCatalog previous = LevelCatalog.opened(pack);
+        if (previous == null) {
+            // Nothing has been loaded from this pack, so there is nothing to swap out
+            return;
+        }
+
+        // Only the levels with a known hash have been loaded, so they are the only ones that need swapping
+        Map<String, String> previousHashes = previous.getKnownHashes();
+        LevelCatalog catalog = LevelCatalog.reload(pack);
+        if (catalog == null) {
+            return;
+        }
+
+        LevelCompiler compiler = new LevelCompiler(new LevelParser(pack.toString()), cacheDirectory);
+        for (var known : previousHashes.entrySet()) {
+            LevelCatalog.Entry entry = catalog.find(known.getKey());
+            if (entry == null || catalog.hash(entry).equals(known.getValue())) {
+                continue;
+            }
+
+            LevelTemplate template = compiler.load(entry.name());
+            if (template != null) {
+                System.out.println("Reloaded level " + entry.name());
+                listener.levelChanged(catalog.getPath(), template);
+            }
+        }
+    }
+}
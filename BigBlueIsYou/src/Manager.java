@@ -30,7 +30,13 @@ public class Manager {
             state.initialize(graphics);
         }
 
-        currentState = states.get(GameStateEnum.MainMenu);
+        // Go straight back into a level that was interrupted by a crash
+        if (((GamePlayView) states.get(GameStateEnum.GamePlay)).hasRecoveredLevel()) {
+            nextStateEnum = GameStateEnum.GamePlay;
+            prevStateEnum = GameStateEnum.GamePlay;
+        }
+
+        currentState = states.get(nextStateEnum);
         currentState.initializeSession();
     }
 
@@ -42,6 +48,9 @@ public class Manager {
             if (state instanceof GamePlayView) {
                 ((GamePlayView) state).shutdown();
             }
+            if (state instanceof _LevelSelectView) {
+                ((_LevelSelectView) state).shutdown();
+            }
         }
     }
 
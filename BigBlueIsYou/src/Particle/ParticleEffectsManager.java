@@ -4,8 +4,10 @@ import org.joml.Vector2f;
 import edu.usu.audio.Sound;
 import edu.usu.audio.SoundManager;
 import edu.usu.graphics.Graphics2D;
+import edu.usu.graphics.TextureAtlas;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -46,6 +48,19 @@ public class ParticleEffectsManager {
     private static final String EXPLOSION_TEXTURE = "resources/images/explosion.png";
     private static final String SMOKE_TEXTURE = "resources/images/smoke.png";
 
+    // Names the effect textures are packed into the game's texture atlas under
+    public static final Map<String, String> TEXTURE_FILES = new LinkedHashMap<>();
+    static {
+        TEXTURE_FILES.put(FIRE_TEXTURE, FIRE_TEXTURE);
+        TEXTURE_FILES.put(SPARKLE_TEXTURE, SPARKLE_TEXTURE);
+        TEXTURE_FILES.put(FIREWORKS_TEXTURE, FIREWORKS_TEXTURE);
+        TEXTURE_FILES.put(EXPLOSION_TEXTURE, EXPLOSION_TEXTURE);
+        TEXTURE_FILES.put(SMOKE_TEXTURE, SMOKE_TEXTURE);
+    }
+
+    // Where the renderers find their textures; set by initialize
+    private TextureAtlas atlas;
+
     // Sound paths
     private static final String WIN_SOUND = "resources/audio/win.ogg";
     private static final String DEATH_SOUND = "resources/audio/death.ogg";
@@ -92,8 +107,11 @@ public class ParticleEffectsManager {
 
     /**
      * Initialize all particle systems and renderers
+     * @param atlas Atlas holding the images in TEXTURE_FILES
      */
-    public void initialize() {
+    public void initialize(TextureAtlas atlas) {
+        this.atlas = atlas;
+
         // Initialize audio manager first
         if (audioManager == null) {
             audioManager = new SoundManager();
@@ -153,7 +171,11 @@ public class ParticleEffectsManager {
      */
     private void createRenderer(EffectType type, String texturePath) {
         ParticleSystemRenderer renderer = new ParticleSystemRenderer();
-        renderer.initialize(texturePath);
+        if (atlas != null && atlas.get(texturePath) != null) {
+            renderer.initialize(atlas.get(texturePath));
+        } else {
+            renderer.initialize(texturePath);
+        }
         renderers.put(type, renderer);
     }
 
@@ -2,13 +2,18 @@ package Particle;
 
 import edu.usu.graphics.Color;
 import edu.usu.graphics.Graphics2D;
+import edu.usu.graphics.Rectangle;
+import edu.usu.graphics.SpriteCommandBuffer;
 import edu.usu.graphics.Texture;
+import edu.usu.graphics.TextureRegion;
 
 /**
  * Enhanced renderer for particle systems with support for alpha blending and color tinting
  */
 public class ParticleSystemRenderer {
-    private Texture texParticle;
+    private TextureRegion texParticle;
+    // Only a texture loaded by this renderer is deleted with it, not a region of a shared atlas
+    private boolean ownsTexture;
     private Color tintColor = Color.WHITE;
     private boolean useParticleAlpha = true;
 
@@ -18,15 +23,26 @@ public class ParticleSystemRenderer {
      * @param filenameTexture Path to the texture file
      */
     public void initialize(String filenameTexture) {
-        texParticle = new Texture(filenameTexture);
+        texParticle = new TextureRegion(new Texture(filenameTexture));
+        ownsTexture = true;
+    }
+
+    /**
+     * Initialize the renderer with a region of a texture it doesn't own, such as a texture atlas
+     *
+     * @param region Region to draw each particle with
+     */
+    public void initialize(TextureRegion region) {
+        texParticle = region;
+        ownsTexture = false;
     }
 
     /**
      * Clean up resources
      */
     public void cleanup() {
-        if (texParticle != null) {
-            texParticle.cleanup();
+        if (texParticle != null && ownsTexture) {
+            texParticle.getTexture().cleanup();
         }
     }
 
@@ -37,25 +53,16 @@ public class ParticleSystemRenderer {
      * @param system Particle system to render
      */
     public void render(Graphics2D graphics, ParticleSystem system) {
+        // Particles go straight into the sprite buffer, so drawing them allocates nothing.  Only the tint's
+        // color reaches the sprite shader, so the particle's alpha (useParticleAlpha) has no effect here.
+        SpriteCommandBuffer sprites = graphics.getSprites();
         for (var particle : system.getParticles()) {
-            // Create color with appropriate alpha if enabled
-            Color particleColor;
-            if (useParticleAlpha) {
-                particleColor = new Color(
-                        tintColor.r,
-                        tintColor.g,
-                        tintColor.b,
-                        tintColor.a * particle.getAlpha()
-                );
-            } else {
-                particleColor = tintColor;
-            }
-
             // Set z-value to ensure particles are rendered on top
             particle.area.z = 1.0f;  // Higher than the tile z-values
 
-            // Draw the particle
-            graphics.draw(texParticle, particle.area, particle.rotation, particle.center, particleColor);
+            Rectangle area = particle.area;
+            sprites.add(texParticle, area.left, area.top, area.width, area.height, area.z,
+                    particle.rotation, particle.center.x, particle.center.y, tintColor);
         }
     }
 
@@ -82,7 +89,7 @@ public class ParticleSystemRenderer {
      *
      * @return Current particle texture
      */
-    public Texture getTexture() {
+    public TextureRegion getTexture() {
         return texParticle;
     }
 
@@ -92,9 +99,7 @@ public class ParticleSystemRenderer {
      * @param filenameTexture Path to the new texture file
      */
     public void setTexture(String filenameTexture) {
-        if (texParticle != null) {
-            texParticle.cleanup();
-        }
-        texParticle = new Texture(filenameTexture);
+        cleanup();
+        initialize(filenameTexture);
     }
 }
\ No newline at end of file
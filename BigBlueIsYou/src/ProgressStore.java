@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The player's progress through the level pack, kept in a memory-mapped file of fixed-size records.
+ * A level's record lives at its index in the LevelCatalog, so finding it is one multiply and reading or
+ * updating it touches the mapped bytes directly, with nothing to serialize.  Each record also keeps a
+ * hash of the level's name, and a record whose name doesn't match (the pack was reordered) reads as empty.
+ *
+ * File layout (big-endian):
+ *   int MAGIC, int VERSION, int RECORD_BYTES, int number of records
+ *   then each record: long name key, int flags, int best moves, int best time in milliseconds,
+ *                     int attempts, int wins, int unused
+ *
+ * Only meant to be used from the game thread.
+ */
+public class ProgressStore {
+    private static final int MAGIC = 0x42425047; // "BBPG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 32;
+    private static final int INITIAL_RECORDS = 256;
+
+    // Offsets within a record
+    private static final int KEY = 0;
+    private static final int FLAGS = 8;
+    private static final int BEST_MOVES = 12;
+    private static final int BEST_MILLIS = 16;
+    private static final int ATTEMPTS = 20;
+    private static final int WINS = 24;
+
+    private static final int COMPLETED = 0x1;
+
+    private static ProgressStore instance;
+
+    private final FileChannel channel;
+    private MappedByteBuffer bytes;
+    private int capacity;
+
+    private ProgressStore(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (!readHeader()) {
+            // Missing or from another version, so start over
+            channel.truncate(0);
+            capacity = 0;
+            grow(INITIAL_RECORDS);
+        }
+    }
+
+    /**
+     * The store for saves/progress.dat, opened the first time it is asked for
+     * @return The store, or null if the file couldn't be opened, in which case progress just isn't kept
+     */
+    public static synchronized ProgressStore getInstance() {
+        if (instance == null) {
+            instance = open("saves/progress.dat");
+        }
+        return instance;
+    }
+
+    public static ProgressStore open(String path) {
+        try {
+            Path file = Path.of(path);
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            return new ProgressStore(file);
+        } catch (IOException e) {
+            System.out.println("Unable to open the progress file");
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    public boolean isCompleted(LevelCatalog.Entry level) {
+        int record = find(level);
+        return record >= 0 && (bytes.getInt(record + FLAGS) & COMPLETED) != 0;
+    }
+
+    /**
+     * @return Fewest moves the level has been won in, or -1 if it hasn't been won
+     */
+    public int getBestMoves(LevelCatalog.Entry level) {
+        int record = find(level);
+        return record >= 0 && (bytes.getInt(record + FLAGS) & COMPLETED) != 0 ? bytes.getInt(record + BEST_MOVES) : -1;
+    }
+
+    /**
+     * @return Quickest time the level has been won in, in milliseconds, or -1 if it hasn't been won
+     */
+    public int getBestMillis(LevelCatalog.Entry level) {
+        int record = find(level);
+        return record >= 0 && (bytes.getInt(record + FLAGS) & COMPLETED) != 0 ? bytes.getInt(record + BEST_MILLIS) : -1;
+    }
+
+    public int getAttempts(LevelCatalog.Entry level) {
+        int record = find(level);
+        return record >= 0 ? bytes.getInt(record + ATTEMPTS) : 0;
+    }
+
+    public int getWins(LevelCatalog.Entry level) {
+        int record = find(level);
+        return record >= 0 ? bytes.getInt(record + WINS) : 0;
+    }
+
+    public void levelStarted(LevelCatalog.Entry level) {
+        int record = claim(level);
+        if (record >= 0) {
+            bytes.putInt(record + ATTEMPTS, bytes.getInt(record + ATTEMPTS) + 1);
+        }
+    }
+
+    /**
+     * Marks the level completed and keeps the better of the new and previous bests
+     */
+    public void levelWon(LevelCatalog.Entry level, int moves, int millis) {
+        int record = claim(level);
+        if (record < 0) {
+            return;
+        }
+
+        int flags = bytes.getInt(record + FLAGS);
+        boolean first = (flags & COMPLETED) == 0;
+        if (first || moves < bytes.getInt(record + BEST_MOVES)) {
+            bytes.putInt(record + BEST_MOVES, moves);
+        }
+        if (first || millis < bytes.getInt(record + BEST_MILLIS)) {
+            bytes.putInt(record + BEST_MILLIS, millis);
+        }
+        bytes.putInt(record + WINS, bytes.getInt(record + WINS) + 1);
+        bytes.putInt(record + FLAGS, flags | COMPLETED);
+    }
+
+    /**
+     * Writes the mapped records out to disk; the OS does this on its own eventually as well
+     */
+    public void flush() {
+        bytes.force();
+    }
+
+    /**
+     * @return Offset of the level's record, or -1 if it has no record yet
+     */
+    private int find(LevelCatalog.Entry level) {
+        if (level == null || level.index() >= capacity) {
+            return -1;
+        }
+        int record = offsetOf(level.index());
+        return bytes.getLong(record + KEY) == keyOf(level.name()) ? record : -1;
+    }
+
+    /**
+     * Offset of the level's record, making room for it and clearing out any other level's record in its place
+     * @return The offset, or -1 if the file couldn't be grown
+     */
+    private int claim(LevelCatalog.Entry level) {
+        if (level == null) {
+            return -1;
+        }
+        try {
+            if (level.index() >= capacity) {
+                grow(Math.max(capacity * 2, level.index() + 1));
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to grow the progress file");
+            e.printStackTrace();
+            return -1;
+        }
+
+        int record = offsetOf(level.index());
+        long key = keyOf(level.name());
+        if (bytes.getLong(record + KEY) != key) {
+            bytes.put(record, new byte[RECORD_BYTES]);
+            bytes.putLong(record + KEY, key);
+        }
+        return record;
+    }
+
+    private boolean readHeader() throws IOException {
+        if (channel.size() < HEADER_BYTES) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != RECORD_BYTES) {
+            return false;
+        }
+        capacity = header.getInt();
+        if (capacity <= 0 || channel.size() < HEADER_BYTES + (long) capacity * RECORD_BYTES) {
+            return false;
+        }
+        bytes = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * RECORD_BYTES);
+        return true;
+    }
+
+    private void grow(int newCapacity) throws IOException {
+        long length = HEADER_BYTES + (long) newCapacity * RECORD_BYTES;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("progress file is full");
+        }
+
+        // Writing the last byte extends the file; the new records read back as zeros, so empty
+        channel.write(ByteBuffer.wrap(new byte[1]), length - 1);
+        bytes = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        capacity = newCapacity;
+        bytes.putInt(0, MAGIC);
+        bytes.putInt(4, VERSION);
+        bytes.putInt(8, RECORD_BYTES);
+        bytes.putInt(12, capacity);
+    }
+
+    private static int offsetOf(int index) {
+        return HEADER_BYTES + index * RECORD_BYTES;
+    }
+
+    /**
+     * 64-bit FNV-1a of the level name; never 0, which marks an empty record
+     */
+    private static long keyOf(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash ^= name.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A snapshot of a level in progress: where every tile is now, the level as it started, the undo
+ * history and the rules that were in effect.  Every entity is a single tile, so the tile grids
+ * hold the type and position of each one.  Resuming builds the world straight from these grids,
+ * without reading the level pack or replaying any moves.  SaveGameCodec turns one into bytes and back.
+ */
+public final class SaveGame {
+    static final String EXTENSION = ".bbsv";
+
+    private final LevelTemplate grid;
+    private final LevelTemplate initialGrid;
+    private final List<LevelTemplate> history;
+    private final List<String[]> rules;
+
+    SaveGame(LevelTemplate grid, LevelTemplate initialGrid, List<LevelTemplate> history, List<String[]> rules) {
+        this.grid = grid;
+        this.initialGrid = initialGrid;
+        this.history = history;
+        this.rules = rules;
+    }
+
+    /**
+     * Copies the state of a level.  The grids are packed into tile IDs, so the game can keep
+     * changing its own copies as soon as this returns.
+     * @param history The undo states, oldest first
+     * @param rules Each active rule as the noun and what it is, e.g. {"baba", "you"}
+     */
+    public static SaveGame capture(String levelName, String[][] grid, String[][] initialGrid, List<String[][]> history, List<String[]> rules) {
+        List<LevelTemplate> states = new ArrayList<>(history.size());
+        for (var state : history) {
+            states.add(LevelTemplate.fromGrid(levelName, state));
+        }
+
+        List<String[]> activeRules = new ArrayList<>(rules.size());
+        for (var rule : rules) {
+            activeRules.add(new String[] { rule[0], rule[1] });
+        }
+
+        return new SaveGame(LevelTemplate.fromGrid(levelName, grid), LevelTemplate.fromGrid(levelName, initialGrid),
+                Collections.unmodifiableList(states), Collections.unmodifiableList(activeRules));
+    }
+
+    /**
+     * Where the save for a level is kept
+     */
+    public static String fileFor(String levelName) {
+        return "saves/" + levelName + EXTENSION;
+    }
+
+    public String getLevelName() {
+        return grid.getName();
+    }
+
+    public String[][] getGrid() {
+        return grid.toGrid();
+    }
+
+    public String[][] getInitialGrid() {
+        return initialGrid.toGrid();
+    }
+
+    /**
+     * Fresh copies of the undo states, oldest first
+     */
+    public List<String[][]> getHistory() {
+        List<String[][]> states = new ArrayList<>(history.size());
+        for (var state : history) {
+            states.add(state.toGrid());
+        }
+        return states;
+    }
+
+    public List<String[]> getRules() {
+        return rules;
+    }
+
+    // The packed grids, for SaveGameCodec
+
+    LevelTemplate getGridTiles() {
+        return grid;
+    }
+
+    LevelTemplate getInitialGridTiles() {
+        return initialGrid;
+    }
+
+    List<LevelTemplate> getHistoryTiles() {
+        return history;
+    }
+}
@@ -0,0 +1,118 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Binary form of a SaveGame.  Every grid is rows * cols tile IDs, see LevelTemplate.TILE_NAMES.
+ *
+ * Version 1:
+ *   short  level name length, then the name in UTF-8
+ *   int    rows
+ *   int    cols
+ *   byte[] the current grid
+ *   byte[] the grid the level started from
+ *   int    number of undo states, then the grid for each, oldest first
+ *   short  number of rules, then a tile ID for the noun and one for what it is, for each
+ */
+public class SaveGameCodec extends BinaryCodec<SaveGame> {
+    private static final int MAGIC = 0x42425356; // "BBSV"
+
+    public static final SaveGameCodec INSTANCE = new SaveGameCodec();
+
+    private SaveGameCodec() {
+        super(MAGIC, 1);
+    }
+
+    @Override
+    protected int size(SaveGame value) {
+        int nameLength = value.getLevelName().getBytes(StandardCharsets.UTF_8).length;
+        LevelTemplate grid = value.getGridTiles();
+        int cells = grid.getRows() * grid.getCols();
+        return 2 + nameLength + 4 + 4 + cells * 2 + 4 + value.getHistoryTiles().size() * cells + 2 + value.getRules().size() * 2;
+    }
+
+    @Override
+    protected void write(SaveGame value, ByteBuffer buffer) {
+        byte[] name = value.getLevelName().getBytes(StandardCharsets.UTF_8);
+        LevelTemplate grid = value.getGridTiles();
+
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+        buffer.putInt(grid.getRows());
+        buffer.putInt(grid.getCols());
+        buffer.put(grid.getTiles());
+        buffer.put(value.getInitialGridTiles().getTiles());
+        buffer.putInt(value.getHistoryTiles().size());
+        for (var state : value.getHistoryTiles()) {
+            buffer.put(state.getTiles());
+        }
+        buffer.putShort((short) value.getRules().size());
+        for (var rule : value.getRules()) {
+            buffer.put((byte) LevelTemplate.tileId(rule[0]));
+            buffer.put((byte) LevelTemplate.tileId(rule[1]));
+        }
+    }
+
+    /**
+     * @return The save, or null if it is cut short or holds unknown tiles
+     */
+    @Override
+    protected SaveGame read(ByteBuffer buffer, int version) {
+        int nameLength = buffer.getShort() & 0xffff;
+        byte[] nameBytes = new byte[nameLength];
+        buffer.get(nameBytes);
+        String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+        int rows = buffer.getInt();
+        int cols = buffer.getInt();
+        long cells = (long) rows * cols;
+        // Checked before anything is allocated, so a corrupt size can't ask for a huge array
+        if (rows < 0 || cols < 0 || buffer.remaining() < cells * 2 + 4) {
+            return null;
+        }
+        LevelTemplate grid = readGrid(buffer, name, rows, cols);
+        LevelTemplate initialGrid = readGrid(buffer, name, rows, cols);
+        if (grid == null || initialGrid == null) {
+            return null;
+        }
+
+        int states = buffer.getInt();
+        if (states < 0 || buffer.remaining() < states * cells + 2) {
+            return null;
+        }
+        List<LevelTemplate> history = new ArrayList<>(states);
+        for (int i = 0; i < states; i++) {
+            LevelTemplate state = readGrid(buffer, name, rows, cols);
+            if (state == null) {
+                return null;
+            }
+            history.add(state);
+        }
+
+        int ruleCount = buffer.getShort() & 0xffff;
+        List<String[]> rules = new ArrayList<>(ruleCount);
+        for (int i = 0; i < ruleCount; i++) {
+            rules.add(new String[] { tileName(buffer.get()), tileName(buffer.get()) });
+        }
+
+        return new SaveGame(grid, initialGrid, Collections.unmodifiableList(history), Collections.unmodifiableList(rules));
+    }
+
+    /**
+     * @return The grid, or null if it holds a tile ID that isn't in LevelTemplate.TILE_NAMES
+     */
+    private static LevelTemplate readGrid(ByteBuffer buffer, String name, int rows, int cols) {
+        byte[] tiles = new byte[rows * cols];
+        buffer.get(tiles);
+        if (!LevelTemplate.isValid(tiles)) {
+            return null;
+        }
+        return new LevelTemplate(name, rows, cols, tiles);
+    }
+
+    private static String tileName(byte id) {
+        return id >= 0 && id < LevelTemplate.TILE_NAMES.length ? LevelTemplate.TILE_NAMES[id] : "";
+    }
+}
@@ -1,92 +1,259 @@
-
-
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.Condition;
 
 import com.google.gson.Gson;
-import java.io.FileWriter;
-import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 public class Serializer implements Runnable{
-    private enum Activity {
-        Nothing,
-        Load,
-        Save
+    /// Most requests that can be waiting at once; callers block once this many are queued
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final String KEYBOARD_STATE_FILE = "keyboardstate.bin";
+    private static final String LEGACY_KEYBOARD_STATE_FILE = "keyboardstate.json";
+
+    private abstract static class Request {
+        final Path path;
+
+        Request(Path path) {
+            this.path = path;
+        }
+
+        abstract void perform();
+
+        abstract void cancel();
+    }
+
+    private static class Write extends Request {
+        byte[] bytes;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Write(Path path, byte[] bytes) {
+            super(path);
+            this.bytes = bytes;
+        }
+
+        @Override
+        void perform() {
+            try {
+                writeAtomically(path, bytes);
+                done.complete(null);
+            } catch (IOException ex) {
+                done.completeExceptionally(ex);
+            }
+        }
+
+        @Override
+        void cancel() {
+            done.cancel(false);
+        }
+    }
+
+    private static class Read extends Request {
+        final CompletableFuture<byte[]> done = new CompletableFuture<>();
+
+        Read(Path path) {
+            super(path);
+        }
+
+        @Override
+        void perform() {
+            try {
+                done.complete(Files.readAllBytes(path));
+            } catch (IOException ex) {
+                done.completeExceptionally(ex);
+            }
+        }
+
+        @Override
+        void cancel() {
+            done.cancel(false);
+        }
     }
 
     private boolean done = false;
     private final Lock lockSignal = new ReentrantLock();
-    private final Condition doSomething = lockSignal.newCondition();
-    private Activity doThis = Activity.Nothing;
-
-    private KeyboardState keyboardState;
+    private final Condition notEmpty = lockSignal.newCondition();
+    private final Condition notFull = lockSignal.newCondition();
+    private final int capacity;
+    private final ArrayDeque<Request> requests = new ArrayDeque<>();
+    /// The newest queued write for each file.  Another write to the same file replaces its bytes
+    /// rather than queueing behind it, so only the latest state is ever written.
+    private final Map<Path, Write> pendingWrites = new HashMap<>();
 
+    private final Gson gson = new Gson();
     private final Thread tInternal;
 
     public Serializer() {
-        this.tInternal = new Thread(this);
+        this(DEFAULT_CAPACITY);
+    }
+
+    public Serializer(int capacity) {
+        this.capacity = capacity;
+        this.tInternal = new Thread(this, "serializer");
         this.tInternal.start();
     }
 
     @Override
     public void run() {
-        try {
-            while (!done) {
-                // Wait for a signal to do something
-                lockSignal.lock();
-                doSomething.await();
+        while (true) {
+            Request request;
+            lockSignal.lock();
+            try {
+                while (requests.isEmpty() && !done) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (requests.isEmpty()) {
+                    return;
+                }
+                request = requests.removeFirst();
+                if (request instanceof Write write && pendingWrites.get(write.path) == write) {
+                    pendingWrites.remove(write.path);
+                }
+                notFull.signal();
+            } finally {
                 lockSignal.unlock();
+            }
 
-                // Based on what was requested, do something
-                switch (doThis) {
-                    case Nothing -> {}
-                    case Save -> saveSomething();
-                    case Load -> loadSomething();
-                }
+            request.perform();
+        }
+    }
+
+    /// Queues the bytes to be written to the file, replacing it only once they are all on disk.
+    /// If a write to the same file is still waiting, its bytes are swapped for these and both
+    /// callers are handed the same completion.
+    public CompletableFuture<Void> write(Path path, byte[] bytes) {
+        lockSignal.lock();
+        try {
+            Write pending = pendingWrites.get(path);
+            if (pending != null) {
+                pending.bytes = bytes;
+                return pending.done;
             }
-        } catch (Exception ex) {
-            System.out.printf("Something bad happened: %s\n", ex.getMessage());
+
+            Write write = new Write(path, bytes);
+            if (enqueue(write)) {
+                pendingWrites.put(path, write);
+            }
+            return write.done;
+        } finally {
+            lockSignal.unlock();
         }
     }
 
-    /// Public method used by client code to request the game state is saved
-    /// NOTE: This does not prevent against race conditions if the keyboardState object
-    ///       is modified while the saving is taking place.  A production level
-    ///       approach would have an event held by the client signaled when
-    ///       the saving is complete.
-    public void saveGameState(KeyboardState state) {
+    /// Queues a read of the whole file.  Reads happen in order with the writes, so a read
+    /// requested after a write sees what was written.
+    public CompletableFuture<byte[]> read(Path path) {
         lockSignal.lock();
+        try {
+            Read read = new Read(path);
+            if (enqueue(read)) {
+                // Later writes have to queue behind this read instead of changing what it will see
+                pendingWrites.remove(path);
+            }
+            return read.done;
+        } finally {
+            lockSignal.unlock();
+        }
+    }
 
-        this.keyboardState = state;
-        doThis = Activity.Save;
-        doSomething.signal();
+    /// Saves the value with its binary codec.  It is encoded right away, so the caller is free
+    /// to keep changing it while the write is waiting.
+    public <T> CompletableFuture<Void> save(String file, T value, BinaryCodec<T> codec) {
+        return write(Path.of(file), codec.encode(value));
+    }
 
-        lockSignal.unlock();
+    /// Completes with null if the file holds something the codec can't read
+    public <T> CompletableFuture<T> load(String file, BinaryCodec<T> codec) {
+        return read(Path.of(file)).thenApply(bytes -> codec.decode(ByteBuffer.wrap(bytes)));
     }
 
-    /// Public method used the client code to request the game state is loaded.
-    /// NOTE: Same comment about race conditions as above.
-    public void loadGameState(KeyboardState state) {
-        lockSignal.lock();
+    /// Saves the object as readable JSON.  Only meant for debugging, e.g. dumping a save to look at;
+    /// the game itself stores everything with the binary codecs.
+    public CompletableFuture<Void> saveJson(String file, Object value) {
+        return write(Path.of(file), gson.toJson(value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public <T> CompletableFuture<T> loadJson(String file, Class<T> type) {
+        return read(Path.of(file)).thenApply(bytes -> gson.fromJson(new String(bytes, StandardCharsets.UTF_8), type));
+    }
+
+    /// Must be called with the lock held.  Waits for room in the queue, or cancels the request
+    /// if the serializer has been shut down.
+    private boolean enqueue(Request request) {
+        while (requests.size() >= capacity && !done) {
+            notFull.awaitUninterruptibly();
+        }
+        if (done) {
+            request.cancel();
+            return false;
+        }
+        requests.addLast(request);
+        notEmpty.signal();
+        return true;
+    }
 
-        this.keyboardState = state;
-        doThis = Activity.Load;
-        doSomething.signal();
+    /// Public method used by client code to request the keyboard state is saved
+    public CompletableFuture<Void> saveGameState(KeyboardState state) {
+        return save(KEYBOARD_STATE_FILE, state, KeyboardStateCodec.INSTANCE).whenComplete((result, ex) -> {
+            if (ex != null) {
+                System.out.println(ex.getMessage());
+            }
+        });
+    }
 
-        lockSignal.unlock();
+    /// Public method used the client code to request the keyboard state is loaded.
+    /// The state is filled in on the serializer thread once the file has been read.
+    /// Key bindings saved as JSON by older versions are still picked up if there's no binary file yet.
+    public CompletableFuture<KeyboardState> loadGameState(KeyboardState state) {
+        return load(KEYBOARD_STATE_FILE, KeyboardStateCodec.INSTANCE).exceptionallyCompose(ex -> {
+            if (ex.getCause() instanceof NoSuchFileException) {
+                return loadJson(LEGACY_KEYBOARD_STATE_FILE, KeyboardState.class);
+            }
+            return CompletableFuture.failedFuture(ex);
+        }).thenApply(loaded -> {
+            if (loaded == null) {
+                throw new IllegalStateException("unreadable key bindings in " + KEYBOARD_STATE_FILE);
+            }
+            state.moveUpKey = loaded.moveUpKey;
+            state.moveDownKey = loaded.moveDownKey;
+            state.moveLeftKey = loaded.moveLeftKey;
+            state.moveRightKey = loaded.moveRightKey;
+            state.resetLevel = loaded.resetLevel;
+            state.undo = loaded.undo;
+            state.initialized = true;
+            return state;
+        }).whenComplete((result, ex) -> {
+            if (ex != null) {
+                System.out.println(ex.getMessage());
+            }
+        });
     }
 
-    /// Public method used to signal this code to perform a graceful shutdown
+    /// Public method used to signal this code to perform a graceful shutdown.
+    /// Everything already queued is still written before the thread finishes.
     public void shutdown() {
         try {
             lockSignal.lock();
-
-            doThis = Activity.Nothing;
-            done = true;
-            doSomething.signal();
-
-            lockSignal.unlock();
+            try {
+                done = true;
+                notEmpty.signal();
+                notFull.signalAll();
+            } finally {
+                lockSignal.unlock();
+            }
 
             tInternal.join();
         } catch (Exception ex) {
@@ -94,34 +261,27 @@ public class Serializer implements Runnable{
         }
     }
 
-    /// This is where the actual serialization of the game state is performed.  Have
-    /// chosen to save in JSON format for readability for the demo, but the state
-    /// could have been stored using a binary serializer for more efficient storage
-    private synchronized void saveSomething() {
-        System.out.println("saving something...");
-        try (FileWriter writer = new FileWriter("keyboardstate.json")) {
-            Gson gson = new Gson();
-            gson.toJson(this.keyboardState, writer);
-        } catch (Exception ex) {
-            System.out.println(ex.getMessage());
-        }
-    }
-
-    /// This is where the actual deserialization of the game state is performed.
-    /// Same note as above regarding the choice to use JSON formatting.
-    private synchronized void loadSomething() {
-        System.out.println("loading something...");
-        try (FileReader reader = new FileReader("keyboardstate.json")) {
-            KeyboardState state = (new Gson()).fromJson(reader, KeyboardState.class);
-            this.keyboardState.moveUpKey = state.moveUpKey;
-            this.keyboardState.moveDownKey = state.moveDownKey;
-            this.keyboardState.moveLeftKey = state.moveLeftKey;
-            this.keyboardState.moveRightKey = state.moveRightKey;
-            this.keyboardState.resetLevel = state.resetLevel;
-            this.keyboardState.undo = state.undo;
-            this.keyboardState.initialized = true;
-        } catch (Exception ex) {
-            System.out.println(ex.getMessage());
+    /// Writes to a temporary file next to the target, flushes it to disk, then renames it over
+    /// the target, so a crash part way through leaves the previous file intact
+    static void writeAtomically(Path path, byte[] bytes) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        try {
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
         }
     }
 }
@@ -0,0 +1,71 @@
+import com.google.gson.Gson;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+import static org.lwjgl.glfw.GLFW.*;
+
+/**
+ * Compares the binary KeyboardState codec against Gson, both the way the serializer used to call it
+ * (a new Gson for every save and load) and with one Gson reused.  Prints the payload size and how many
+ * encodes and decodes each manages per second.
+ * Usage: SerializerBenchmark [iterations]
+ */
+public class SerializerBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+
+    // Keeps the JIT from throwing away work whose result is never used
+    private static long sink;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        KeyboardState state = new KeyboardState(GLFW_KEY_W, GLFW_KEY_S, GLFW_KEY_A, GLFW_KEY_D, GLFW_KEY_Z, GLFW_KEY_R);
+        Gson shared = new Gson();
+
+        run("gson, new per call", iterations, state,
+                value -> new Gson().toJson(value).getBytes(StandardCharsets.UTF_8),
+                bytes -> new Gson().fromJson(new String(bytes, StandardCharsets.UTF_8), KeyboardState.class));
+        run("gson, shared", iterations, state,
+                value -> shared.toJson(value).getBytes(StandardCharsets.UTF_8),
+                bytes -> shared.fromJson(new String(bytes, StandardCharsets.UTF_8), KeyboardState.class));
+        run("binary codec", iterations, state,
+                KeyboardStateCodec.INSTANCE::encode,
+                bytes -> KeyboardStateCodec.INSTANCE.decode(ByteBuffer.wrap(bytes)));
+    }
+
+    private static void run(String name, int iterations, KeyboardState state,
+                            Function<KeyboardState, byte[]> encode, Function<byte[], KeyboardState> decode) {
+        byte[] payload = encode.apply(state);
+        KeyboardState decoded = decode.apply(payload);
+        if (decoded.moveUpKey != state.moveUpKey || decoded.resetLevel != state.resetLevel) {
+            throw new IllegalStateException(name + " did not round trip");
+        }
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            timeEncode(encode, state, iterations / 10);
+            timeDecode(decode, payload, iterations / 10);
+        }
+        double encodeSeconds = timeEncode(encode, state, iterations);
+        double decodeSeconds = timeDecode(decode, payload, iterations);
+
+        System.out.printf("%-20s %4d bytes  encode %,12.0f ops/s  decode %,12.0f ops/s%n",
+                name, payload.length, iterations / encodeSeconds, iterations / decodeSeconds);
+    }
+
+    private static double timeEncode(Function<KeyboardState, byte[]> encode, KeyboardState state, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += encode.apply(state).length;
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private static double timeDecode(Function<byte[], KeyboardState> decode, byte[] payload, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += decode.apply(payload).undo;
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+}
@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An append-only record of the level being played, so it can be picked up again after a crash.
+ * Every move, undo and reset is one byte in the journal.  Now and then the level is compacted:
+ * a SaveGame snapshot is written and the journal starts over empty, so recovering only ever means
+ * loading the snapshot and replaying a short tail.
+ *
+ * The game thread only adds to a lock-free queue; a background thread writes the queue out in
+ * batches and forces them to disk.  Snapshots and journals carry a generation number, and a
+ * journal is only replayed on top of the snapshot of the same generation, so a crash part way
+ * through compacting never applies moves twice.
+ *
+ * Both files start with the BinaryCodec header, so they are versioned and checked for truncation the
+ * same way as every other saved file.
+ *   Snapshot file, version 1: long generation, then the SaveGameCodec encoding
+ *   Journal file, version 1:  long generation, then one byte per record
+ */
+public class SessionJournal {
+    public static final byte MOVE_UP = 1;
+    public static final byte MOVE_DOWN = 2;
+    public static final byte MOVE_LEFT = 3;
+    public static final byte MOVE_RIGHT = 4;
+    public static final byte UNDO = 5;
+    public static final byte RESET = 6;
+
+    /**
+     * What is needed to rebuild an interrupted level: its last snapshot and the records since
+     */
+    public record Recovery(SaveGame snapshot, byte[] records) {}
+
+    private record Snapshot(long generation, SaveGame save) {}
+
+    private static final BinaryCodec<Snapshot> SNAPSHOT_CODEC = new BinaryCodec<>(0x42424E53, 1) { // "BBNS"
+        @Override
+        protected int size(Snapshot value) {
+            // The save keeps its own codec header, so it is versioned separately from the snapshot
+            return 8 + 6 + SaveGameCodec.INSTANCE.size(value.save());
+        }
+
+        @Override
+        protected void write(Snapshot value, ByteBuffer buffer) {
+            buffer.putLong(value.generation());
+            buffer.put(SaveGameCodec.INSTANCE.encode(value.save()));
+        }
+
+        @Override
+        protected Snapshot read(ByteBuffer buffer, int version) {
+            long generation = buffer.getLong();
+            SaveGame save = SaveGameCodec.INSTANCE.decode(buffer);
+            return save != null ? new Snapshot(generation, save) : null;
+        }
+    };
+
+    // Only the journal's header goes through the codec; the records after it are appended as they happen
+    private static final BinaryCodec<Long> JOURNAL_CODEC = new BinaryCodec<>(0x42424A4C, 1) { // "BBJL"
+        @Override
+        protected int size(Long generation) {
+            return 8;
+        }
+
+        @Override
+        protected void write(Long generation, ByteBuffer buffer) {
+            buffer.putLong(generation);
+        }
+
+        @Override
+        protected Long read(ByteBuffer buffer, int version) {
+            return buffer.getLong();
+        }
+    };
+
+    private static final long FLUSH_MILLIS = 100;
+    private static final Object END = new Object();
+
+    private final Path journalPath;
+    private final Path snapshotPath;
+    // Records (Byte), snapshots (SaveGame) and END, in the order the game produced them
+    private final Queue<Object> pending = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService writer;
+
+    // Only touched by the writer thread
+    private final ByteBuffer batch = ByteBuffer.allocate(4096);
+    private FileChannel journal;
+    private long generation;
+
+    public SessionJournal(String directory) {
+        this.journalPath = Path.of(directory, "session.journal");
+        this.snapshotPath = Path.of(directory, "session.snapshot");
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flush, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public SessionJournal() {
+        this("saves");
+    }
+
+    /**
+     * Starts a new generation from the snapshot; everything recorded after this is replayed on top of it.
+     * Used both when a level starts and to compact the journal of the level being played.
+     */
+    public void begin(SaveGame snapshot) {
+        pending.add(snapshot);
+    }
+
+    public void record(byte entry) {
+        pending.add(entry);
+    }
+
+    /**
+     * The level was left normally, so there is nothing to recover any more
+     */
+    public void end() {
+        pending.add(END);
+    }
+
+    /**
+     * Writes out everything still queued and stops the writer thread
+     */
+    public void shutdown() {
+        writer.execute(this::flush);
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads back the session that was in progress when the game last stopped.
+     * Call before the first begin, which replaces the files on disk.
+     * @return The snapshot and the records after it, or null if no level was interrupted
+     */
+    public Recovery recover() {
+        try {
+            if (!Files.exists(snapshotPath)) {
+                return null;
+            }
+            Snapshot snapshot = SNAPSHOT_CODEC.decode(ByteBuffer.wrap(Files.readAllBytes(snapshotPath)));
+            if (snapshot == null) {
+                return null;
+            }
+
+            byte[] records = new byte[0];
+            if (Files.exists(journalPath)) {
+                ByteBuffer journalBytes = ByteBuffer.wrap(Files.readAllBytes(journalPath));
+                Long journalGeneration = JOURNAL_CODEC.decode(journalBytes);
+                if (journalGeneration != null && journalGeneration == snapshot.generation()) {
+                    records = new byte[journalBytes.remaining()];
+                    journalBytes.get(records);
+                }
+            }
+
+            // Stop at anything that isn't a record, e.g. the end of a write cut short
+            int valid = 0;
+            while (valid < records.length && records[valid] >= MOVE_UP && records[valid] <= RESET) {
+                valid++;
+            }
+            return new Recovery(snapshot.save(), Arrays.copyOf(records, valid));
+        } catch (IOException e) {
+            System.out.println("Unable to recover the last session");
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private void flush() {
+        try {
+            Object next;
+            while ((next = pending.poll()) != null) {
+                if (next instanceof Byte entry) {
+                    if (journal != null) {
+                        if (!batch.hasRemaining()) {
+                            writeBatch();
+                        }
+                        batch.put(entry);
+                    }
+                } else if (next instanceof SaveGame snapshot) {
+                    writeBatch();
+                    startGeneration(snapshot);
+                } else if (next == END) {
+                    writeBatch();
+                    endSession();
+                }
+            }
+            writeBatch();
+        } catch (IOException e) {
+            // Keep playing without a journal; the next snapshot tries again
+            System.out.println("Unable to write the session journal");
+            e.printStackTrace();
+            batch.clear();
+            closeJournal();
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        if (batch.position() == 0 || journal == null) {
+            batch.clear();
+            return;
+        }
+        batch.flip();
+        while (batch.hasRemaining()) {
+            journal.write(batch);
+        }
+        batch.clear();
+        journal.force(false);
+    }
+
+    /**
+     * The snapshot is in place before the journal is reset, and the new journal names its
+     * snapshot's generation, so there is no point where recovering would mix the two up
+     */
+    private void startGeneration(SaveGame snapshot) throws IOException {
+        generation = Math.max(generation + 1, System.currentTimeMillis());
+
+        Serializer.writeAtomically(snapshotPath, SNAPSHOT_CODEC.encode(new Snapshot(generation, snapshot)));
+
+        closeJournal();
+        journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.wrap(JOURNAL_CODEC.encode(generation));
+        while (header.hasRemaining()) {
+            journal.write(header);
+        }
+        journal.force(false);
+    }
+
+    private void endSession() throws IOException {
+        closeJournal();
+        Files.deleteIfExists(snapshotPath);
+        Files.deleteIfExists(journalPath);
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            journal = null;
+        }
+    }
+}
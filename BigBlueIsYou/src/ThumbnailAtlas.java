@@ -0,0 +1,217 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A file of fixed-size level thumbnails, memory-mapped so stored thumbnails can be drawn
+ * again on later runs without rendering them.  Each slot holds the SHA-256 of the level's text
+ * followed by the thumbnail's RGBA pixels, top row first.  Slots whose level is no longer in the
+ * pack can be given up with retain, and are then reused before the file grows.
+ *
+ * File layout (big-endian):
+ *   int MAGIC, int VERSION, int thumbnail edge in pixels, int number of slots
+ *   then each slot: 32 byte hash (all zero if unused), size * size * 4 bytes of pixels
+ */
+public class ThumbnailAtlas implements AutoCloseable {
+    private static final int MAGIC = 0x42425448; // "BBTH"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int HASH_BYTES = 32;
+    private static final int INITIAL_SLOTS = 64;
+
+    private final int size;
+    private final int slotBytes;
+    private final FileChannel channel;
+    private MappedByteBuffer bytes;
+    private int capacity;
+    // Slots from here on have never been written
+    private int used;
+    // Slots before used whose hash has been cleared
+    private final BitSet free = new BitSet();
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    private ThumbnailAtlas(Path path, int size) throws IOException {
+        this.size = size;
+        this.slotBytes = HASH_BYTES + size * size * 4;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (!readHeader()) {
+            // Missing, from another version or a different thumbnail size, so start over
+            channel.truncate(0);
+            capacity = 0;
+            grow(INITIAL_SLOTS);
+        }
+        index();
+    }
+
+    /**
+     * Opens the atlas at path, creating it if needed
+     * @return The atlas, or null if the file couldn't be opened
+     */
+    public static ThumbnailAtlas open(String path, int size) {
+        try {
+            Path file = Path.of(path);
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            return new ThumbnailAtlas(file, size);
+        } catch (IOException e) {
+            System.out.println("Unable to open the thumbnail atlas");
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public synchronized boolean contains(String hash) {
+        return slots.containsKey(hash);
+    }
+
+    /**
+     * The thumbnail's pixels, straight out of the mapped file
+     * @return A direct buffer of size * size * 4 bytes, or null if the level has no thumbnail yet
+     */
+    public synchronized ByteBuffer get(String hash) {
+        Integer slot = slots.get(hash);
+        if (slot == null) {
+            return null;
+        }
+        return bytes.slice(slotOffset(slot) + HASH_BYTES, size * size * 4);
+    }
+
+    /**
+     * Stores the level's thumbnail, replacing any it already has
+     * @param pixels size * size * 4 bytes of RGBA, top row first
+     */
+    public synchronized void put(String hash, ByteBuffer pixels) throws IOException {
+        Integer slot = slots.get(hash);
+        boolean added = slot == null;
+        if (added) {
+            slot = free.nextSetBit(0);
+            if (slot >= 0) {
+                free.clear(slot);
+            } else {
+                if (used == capacity) {
+                    grow(capacity * 2);
+                }
+                slot = used++;
+            }
+        }
+
+        bytes.put(slotOffset(slot) + HASH_BYTES, pixels, pixels.position(), size * size * 4);
+        if (added) {
+            // The hash goes in last, so a slot is never picked up with half its pixels written
+            bytes.put(slotOffset(slot), HexFormat.of().parseHex(hash));
+            slots.put(hash, slot);
+        }
+    }
+
+    /**
+     * Frees the slots of every thumbnail whose hash isn't in live, e.g. levels that were edited or
+     * removed from the pack, so new thumbnails can use them
+     * @return The number of slots freed
+     */
+    public synchronized int retain(Set<String> live) {
+        int freed = 0;
+        Iterator<Map.Entry<String, Integer>> stored = slots.entrySet().iterator();
+        while (stored.hasNext()) {
+            var entry = stored.next();
+            if (!live.contains(entry.getKey())) {
+                bytes.put(slotOffset(entry.getValue()), new byte[HASH_BYTES]);
+                free.set(entry.getValue());
+                stored.remove();
+                freed++;
+            }
+        }
+        return freed;
+    }
+
+    private boolean readHeader() throws IOException {
+        if (channel.size() < HEADER_BYTES) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != size) {
+            return false;
+        }
+        capacity = header.getInt();
+        if (capacity <= 0 || channel.size() < HEADER_BYTES + (long) capacity * slotBytes) {
+            return false;
+        }
+        bytes = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * slotBytes);
+        return true;
+    }
+
+    /**
+     * Finds the stored thumbnails.  Freed slots can sit between stored ones, so every slot is looked at,
+     * and the empty slots before the last stored one are the free ones.
+     */
+    private void index() {
+        byte[] hash = new byte[HASH_BYTES];
+        used = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            bytes.get(slotOffset(slot), hash);
+            if (isEmpty(hash)) {
+                free.set(slot);
+            } else {
+                slots.put(HexFormat.of().formatHex(hash), slot);
+                used = slot + 1;
+            }
+        }
+        free.clear(used, capacity);
+    }
+
+    private void grow(int newCapacity) throws IOException {
+        long length = HEADER_BYTES + (long) newCapacity * slotBytes;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("thumbnail atlas is full");
+        }
+
+        // Writing the last byte extends the file; the new slots read back as zeros, so unused
+        channel.write(ByteBuffer.wrap(new byte[1]), length - 1);
+        bytes = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        capacity = newCapacity;
+        bytes.putInt(0, MAGIC);
+        bytes.putInt(4, VERSION);
+        bytes.putInt(8, size);
+        bytes.putInt(12, capacity);
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_BYTES + slot * slotBytes;
+    }
+
+    private static boolean isEmpty(byte[] hash) {
+        for (byte b : hash) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            bytes.force();
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
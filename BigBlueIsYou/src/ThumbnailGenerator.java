@@ -0,0 +1,207 @@
+import ecs.Components.Appearance;
+import ecs.Components.Position;
+import ecs.Entities.Bg;
+import ecs.Entities.Entity;
+import ecs.Systems.TileRender;
+import edu.usu.graphics.Color;
+import edu.usu.graphics.Graphics2D;
+import edu.usu.graphics.RenderTarget;
+import edu.usu.graphics.Texture;
+import edu.usu.graphics.TextureAtlas;
+import edu.usu.graphics.TextureRegion;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Makes the small level previews for the level select menu.
+ * A level's starting grid is drawn with TileRender into an offscreen target, read back, and stored
+ * in a ThumbnailAtlas under the hash of the level's text, so it is only ever rendered once.
+ * Levels are parsed on the prefetch thread, and at most one thumbnail is rendered per frame
+ * so the menu keeps its frame rate while the previews fill in.  Giving up the thumbnails of levels
+ * no longer in the pack means hashing the whole pack, so that happens on the prefetch thread too.
+ */
+public class ThumbnailGenerator {
+    public static final int SIZE = 96;
+    private static final String ATLAS_FILE = "src/LevelInfo/compiled/thumbnails.atlas";
+    // GL textures kept for thumbnails that have been drawn recently
+    private static final int MAX_TEXTURES = 32;
+    private static final float TILE_SIZE = 32.0f;
+
+    private final Graphics2D graphics;
+    private final ThumbnailAtlas atlas;
+    // The catalog the atlas last gave up stale thumbnails for, so it is only done once per version of the pack
+    private LevelCatalog retainedFor;
+    // Number of thumbnails given up, once the prefetch thread has finished hashing the pack
+    private CompletableFuture<Integer> retaining;
+    private RenderTarget target;
+    private final ByteBuffer pixels = ByteBuffer.allocate(SIZE * SIZE * 4);
+    private TextureAtlas tileTextures;
+    // One reusable entity per tile type, moved to each cell as it is drawn
+    private final Map<String, Entity> stamps = new HashMap<>();
+
+    // Levels waiting for a thumbnail, by name, with the hash of their text
+    private final Map<String, String> requested = new LinkedHashMap<>();
+    private final Set<String> failed = new HashSet<>();
+    private final Map<String, Texture> textures = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Texture> eldest) {
+            if (size() > MAX_TEXTURES) {
+                eldest.getValue().cleanup();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    public ThumbnailGenerator(Graphics2D graphics) {
+        this.graphics = graphics;
+        this.atlas = ThumbnailAtlas.open(ATLAS_FILE, SIZE);
+    }
+
+    /**
+     * The level's thumbnail, or null if it hasn't been made yet, in which case it is queued
+     */
+    public Texture get(LevelCatalog catalog, LevelCatalog.Entry entry) {
+        if (atlas == null) {
+            return null;
+        }
+        if (catalog != retainedFor) {
+            retaining = LevelPrefetcher.getInstance().submit(() -> atlas.retain(catalog.getAllHashes()));
+            retainedFor = catalog;
+        }
+
+        String hash = catalog.contentHash(entry);
+        Texture texture = textures.get(hash);
+        if (texture != null) {
+            return texture;
+        }
+
+        ByteBuffer pixels = atlas.get(hash);
+        if (pixels != null) {
+            texture = new Texture(SIZE, SIZE, pixels);
+            textures.put(hash, texture);
+            return texture;
+        }
+
+        if (!failed.contains(hash) && !requested.containsKey(entry.name())) {
+            requested.put(entry.name(), hash);
+            LevelPrefetcher.getInstance().prefetch(entry.name());
+        }
+        return null;
+    }
+
+    /**
+     * Renders the first requested thumbnail whose level has finished loading.
+     * Must be called outside of Graphics2D begin/end.
+     */
+    public void update() {
+        if (atlas == null) {
+            return;
+        }
+        if (retaining != null && retaining.isDone()) {
+            try {
+                retaining.join();
+            } catch (CompletionException e) {
+                System.out.println("Unable to give up the thumbnails of levels no longer in the pack");
+                e.getCause().printStackTrace();
+            }
+            retaining = null;
+        }
+
+        Iterator<Map.Entry<String, String>> pending = requested.entrySet().iterator();
+        while (pending.hasNext()) {
+            var request = pending.next();
+            LevelLayout layout = LevelPrefetcher.getInstance().peek(request.getKey());
+            if (layout == null) {
+                continue;
+            }
+
+            pending.remove();
+            try {
+                render(layout.getTemplate());
+                atlas.put(request.getValue(), pixels);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Unable to make a thumbnail for " + request.getKey());
+                e.printStackTrace();
+                failed.add(request.getValue());
+            }
+            return;
+        }
+    }
+
+    /**
+     * Forgets the requests for levels that are no longer on screen
+     */
+    public void clearRequests() {
+        requested.clear();
+    }
+
+    private void render(LevelTemplate template) {
+        if (target == null) {
+            target = new RenderTarget(SIZE, SIZE);
+            tileTextures = new TextureAtlas(Game.TEXTURE_FILES);
+        }
+
+        String[][] grid = template.toGrid();
+        TileRender tiles = new TileRender(graphics);
+        tiles.setNums(grid);
+
+        graphics.renderTo(target, tiles.getGridBounds(), Color.BLACK, () -> {
+            for (int row = 0; row < grid.length; row++) {
+                for (int col = 0; col < grid[row].length; col++) {
+                    Entity stamp = stamp(grid[row][col]);
+                    if (stamp != null) {
+                        var position = stamp.get(Position.class);
+                        position.x = col;
+                        position.y = row;
+                        tiles.render(stamp);
+                    }
+                }
+            }
+        });
+        pixels.clear();
+        target.readPixels(pixels);
+        pixels.flip();
+    }
+
+    private Entity stamp(String tile) {
+        if (tile == null || tile.isEmpty()) {
+            return null;
+        }
+        return stamps.computeIfAbsent(tile, name -> {
+            TextureRegion texture = tileTextures.get(name);
+            if (texture == null) {
+                return null;
+            }
+            // Sprite sheets are a row of square frames; the thumbnail shows the first one
+            int frames = Math.max(1, texture.getWidth() / texture.getHeight());
+            Appearance appearance = frames > 1 ? new Appearance(texture, TILE_SIZE, frames, 0) : new Appearance(texture, TILE_SIZE);
+            return Bg.create(0, 0, name, appearance);
+        });
+    }
+
+    public void shutdown() {
+        for (var texture : textures.values()) {
+            texture.cleanup();
+        }
+        textures.clear();
+        if (tileTextures != null) {
+            tileTextures.cleanup();
+        }
+        if (target != null) {
+            target.cleanup();
+        }
+        if (atlas != null) {
+            atlas.close();
+        }
+    }
+}
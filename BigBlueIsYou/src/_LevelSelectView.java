@@ -1,40 +1,36 @@
 import edu.usu.graphics.Color;
 import edu.usu.graphics.Font;
 import edu.usu.graphics.Graphics2D;
+import edu.usu.graphics.Rectangle;
+import edu.usu.graphics.Texture;
 
 import static org.lwjgl.glfw.GLFW.*;
 
 public class _LevelSelectView extends GameStateView {
 
-    private enum LevelState {
-        Level1,
-        Level2,
-        Level3,
-        Level4,
-        Level5,
-        Back;
-
-        public LevelState next() {
-            int nextOrdinal = (this.ordinal() + 1) % LevelState.values().length;
-            return LevelState.values()[nextOrdinal];
-        }
+    // Number of menu items on screen at once; the list scrolls to keep the selection in view
+    private static final int VISIBLE_ITEMS = 9;
+    private static final float HEIGHT_MENU_ITEM = 0.075f;
+    private static final float TOP = -0.35f;
+    // Small previews sit in a column left of the menu, with a large one of the selected level on the right
+    private static final float THUMBNAIL_LEFT = -0.55f;
+    private static final float PREVIEW_LEFT = 0.45f;
+    private static final float PREVIEW_SIZE = 0.45f;
 
-        public LevelState previous() {
-            int previousOrdinal = (this.ordinal() - 1) % LevelState.values().length;
-            if (previousOrdinal < 0) {
-                previousOrdinal = Back.ordinal();
-            }
-            return LevelState.values()[previousOrdinal];
-        }
-    }
-
-    private LevelState currentSelection = LevelState.Level1;
     private KeyboardInput inputKeyboard;
     private GameStateEnum nextGameState = GameStateEnum.LevelSelect;
     private Font fontMenu;
     private Font fontSelected;
     private String selectedLevel;
 
+    // The levels come from the pack index; the item after the last level is Back
+    private LevelCatalog catalog;
+    private int currentSelection = 0;
+    private int firstVisible = 0;
+    // Menu text for each level, only made once the level has been scrolled into view
+    private String[] labels = new String[0];
+    private ThumbnailGenerator thumbnails;
+
     public String getSelectedLevel() {
         return selectedLevel;
     }
@@ -45,46 +41,82 @@ public class _LevelSelectView extends GameStateView {
 
         fontMenu = new Font("resources/fonts/Roboto-Regular.ttf", 48, false);
         fontSelected = new Font("resources/fonts/Roboto-Bold.ttf", 48, false);
+        thumbnails = new ThumbnailGenerator(graphics);
 
         inputKeyboard = new KeyboardInput(graphics.getWindow());
-        // Arrow keys to navigate the menu
+        // Arrow keys to navigate the menu, page up/down and home/end to jump through long packs
         inputKeyboard.registerCommand(GLFW_KEY_UP, true, (double elapsedTime) -> {
-            currentSelection = currentSelection.previous();
+            select(currentSelection == 0 ? backItem() : currentSelection - 1);
         });
         inputKeyboard.registerCommand(GLFW_KEY_DOWN, true, (double elapsedTime) -> {
-            currentSelection = currentSelection.next();
+            select(currentSelection == backItem() ? 0 : currentSelection + 1);
+        });
+        inputKeyboard.registerCommand(GLFW_KEY_PAGE_UP, true, (double elapsedTime) -> {
+            select(Math.max(0, currentSelection - VISIBLE_ITEMS));
+        });
+        inputKeyboard.registerCommand(GLFW_KEY_PAGE_DOWN, true, (double elapsedTime) -> {
+            select(Math.min(backItem(), currentSelection + VISIBLE_ITEMS));
+        });
+        inputKeyboard.registerCommand(GLFW_KEY_HOME, true, (double elapsedTime) -> {
+            select(0);
+        });
+        inputKeyboard.registerCommand(GLFW_KEY_END, true, (double elapsedTime) -> {
+            select(backItem());
         });
         // When Enter is pressed, set the appropriate new game state
         inputKeyboard.registerCommand(GLFW_KEY_ENTER, true, (double elapsedTime) -> {
-            nextGameState = switch (currentSelection) {
-                case Level1 -> {
-                    selectedLevel = "Level-1";
-                    yield GameStateEnum.GamePlay;
-                }
-                case Level2 -> {
-                    selectedLevel = "Level-2";
-                    yield GameStateEnum.GamePlay;
-                }
-                case Level3 -> {
-                    selectedLevel = "Level-3";
-                    yield GameStateEnum.GamePlay;
-                }
-                case Level4 -> {
-                    selectedLevel = "Level-4";
-                    yield GameStateEnum.GamePlay;
-                }
-                case Level5 -> {
-                    selectedLevel = "Level-5";
-                    yield GameStateEnum.GamePlay;
-                }
-                case Back -> GameStateEnum.MainMenu;
-            };
+            if (currentSelection == backItem()) {
+                nextGameState = GameStateEnum.MainMenu;
+            } else {
+                selectedLevel = catalog.get(currentSelection).name();
+                nextGameState = GameStateEnum.GamePlay;
+            }
         });
     }
 
     @Override
     public void initializeSession() {
         nextGameState = GameStateEnum.LevelSelect;
+
+        // Pick up the pack again in case it was edited while playing
+        LevelCatalog latest = new LevelParser().getCatalog();
+        if (latest != catalog) {
+            catalog = latest;
+            labels = new String[levelCount()];
+            currentSelection = Math.min(currentSelection, backItem());
+        }
+        select(currentSelection);
+    }
+
+    private int levelCount() {
+        return catalog != null ? catalog.size() : 0;
+    }
+
+    private int backItem() {
+        return levelCount();
+    }
+
+    /**
+     * Moves the selection, scrolling just enough to keep it on screen, and starts loading the level
+     * in the background so it is ready if it gets picked
+     */
+    private void select(int item) {
+        int previousFirst = firstVisible;
+        currentSelection = item;
+        if (currentSelection < firstVisible) {
+            firstVisible = currentSelection;
+        } else if (currentSelection >= firstVisible + VISIBLE_ITEMS) {
+            firstVisible = currentSelection - VISIBLE_ITEMS + 1;
+        }
+        firstVisible = Math.max(0, Math.min(firstVisible, backItem() + 1 - VISIBLE_ITEMS));
+        if (firstVisible != previousFirst) {
+            // Levels scrolled out of view don't need their thumbnails made right now
+            thumbnails.clearRequests();
+        }
+
+        if (currentSelection < levelCount()) {
+            LevelPrefetcher.getInstance().prefetch(catalog.get(currentSelection).name());
+        }
     }
 
     @Override
@@ -96,18 +128,72 @@ public class _LevelSelectView extends GameStateView {
 
     @Override
     public void update(double elapsedTime) {
+        thumbnails.update();
     }
 
     @Override
     public void render(double elapsedTime) {
-        final float HEIGHT_MENU_ITEM = 0.075f;
-        float top = -0.25f;
-        top = renderMenuItem(currentSelection == LevelState.Level1 ? fontSelected : fontMenu, "Level 1", top, HEIGHT_MENU_ITEM, currentSelection == LevelState.Level1 ? Color.YELLOW : Color.BLUE);
-        top = renderMenuItem(currentSelection == LevelState.Level2 ? fontSelected : fontMenu, "Level 2", top, HEIGHT_MENU_ITEM, currentSelection == LevelState.Level2 ? Color.YELLOW : Color.BLUE);
-        top = renderMenuItem(currentSelection == LevelState.Level3 ? fontSelected : fontMenu, "Level 3", top, HEIGHT_MENU_ITEM, currentSelection == LevelState.Level3 ? Color.YELLOW : Color.BLUE);
-        top = renderMenuItem(currentSelection == LevelState.Level4 ? fontSelected : fontMenu, "Level 4", top, HEIGHT_MENU_ITEM, currentSelection == LevelState.Level4 ? Color.YELLOW : Color.BLUE);
-        top = renderMenuItem(currentSelection == LevelState.Level5 ? fontSelected : fontMenu, "Level 5", top, HEIGHT_MENU_ITEM, currentSelection == LevelState.Level5 ? Color.YELLOW : Color.BLUE);
-        top = renderMenuItem(currentSelection == LevelState.Back ? fontSelected : fontMenu, "Back", top, HEIGHT_MENU_ITEM, currentSelection == LevelState.Back ? Color.YELLOW : Color.BLUE);
+        float top = TOP;
+        if (firstVisible > 0) {
+            renderMenuItem(fontMenu, "...", top - HEIGHT_MENU_ITEM, HEIGHT_MENU_ITEM, Color.BLUE);
+        }
+
+        int last = Math.min(backItem(), firstVisible + VISIBLE_ITEMS - 1);
+        for (int item = firstVisible; item <= last; item++) {
+            boolean selected = item == currentSelection;
+            renderThumbnail(item, new Rectangle(THUMBNAIL_LEFT, top, HEIGHT_MENU_ITEM, HEIGHT_MENU_ITEM));
+            Color color = selected ? Color.YELLOW : isCompleted(item) ? Color.GREEN : Color.BLUE;
+            top = renderMenuItem(selected ? fontSelected : fontMenu, label(item), top, HEIGHT_MENU_ITEM, color);
+        }
+
+        if (last < backItem()) {
+            renderMenuItem(fontMenu, "...", top, HEIGHT_MENU_ITEM, Color.BLUE);
+        }
+
+        renderThumbnail(currentSelection, new Rectangle(PREVIEW_LEFT, TOP, PREVIEW_SIZE, PREVIEW_SIZE));
+        renderBest(currentSelection, TOP + PREVIEW_SIZE + HEIGHT_MENU_ITEM / 2);
+    }
+
+    private boolean isCompleted(int item) {
+        ProgressStore progress = ProgressStore.getInstance();
+        return item < levelCount() && progress != null && progress.isCompleted(catalog.get(item));
+    }
+
+    /**
+     * Shows the best moves and time under the preview, for levels that have been won
+     */
+    private void renderBest(int item, float top) {
+        if (!isCompleted(item)) {
+            return;
+        }
+        ProgressStore progress = ProgressStore.getInstance();
+        LevelCatalog.Entry level = catalog.get(item);
+        int seconds = progress.getBestMillis(level) / 1000;
+        String best = String.format("Best: %d moves, %d:%02d", progress.getBestMoves(level), seconds / 60, seconds % 60);
+        graphics.drawTextByHeight(fontMenu, best, PREVIEW_LEFT, top, HEIGHT_MENU_ITEM / 2, Color.GREEN);
+    }
+
+    /**
+     * Draws the level's thumbnail if it is ready; until then nothing is drawn and it gets made in the background
+     */
+    private void renderThumbnail(int item, Rectangle destination) {
+        if (item >= levelCount()) {
+            return;
+        }
+        Texture thumbnail = thumbnails.get(catalog, catalog.get(item));
+        if (thumbnail != null) {
+            graphics.draw(thumbnail, destination, Color.WHITE);
+        }
+    }
+
+    private String label(int item) {
+        if (item == backItem()) {
+            return "Back";
+        }
+        if (labels[item] == null) {
+            labels[item] = catalog.get(item).name().replace('-', ' ');
+        }
+        return labels[item];
     }
 
     /**
@@ -120,4 +206,8 @@ public class _LevelSelectView extends GameStateView {
 
         return top + height;
     }
-}
\ No newline at end of file
+
+    public void shutdown() {
+        thumbnails.shutdown();
+    }
+}
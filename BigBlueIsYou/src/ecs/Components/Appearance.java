@@ -1,9 +1,9 @@
 package ecs.Components;
 
-import edu.usu.graphics.Texture;
+import edu.usu.graphics.TextureRegion;
 
 public class Appearance extends Component {
-    public Texture image;
+    public TextureRegion image;
     public float size;
     private boolean isAnimated;
     private int currentFrame;
@@ -11,7 +11,7 @@ public class Appearance extends Component {
     private float frameDuration;
     private float timeSinceLastFrame;
 
-    public Appearance(Texture image, float size) {
+    public Appearance(TextureRegion image, float size) {
         this.image = image;
         this.size = size;
         this.isAnimated = false;
@@ -21,7 +21,7 @@ public class Appearance extends Component {
         this.timeSinceLastFrame = 0;
     }
 
-    public Appearance(Texture image, float size, int totalFrames, float frameDuration) {
+    public Appearance(TextureRegion image, float size, int totalFrames, float frameDuration) {
         this.image = image;
         this.size = size;
         this.isAnimated = true;
@@ -0,0 +1,8 @@
+package ecs.Components;
+
+/**
+ * Marks a tile that never moves or changes type, such as floor, grass and hedge, so it
+ * can be drawn once into a cached layer instead of every frame.
+ */
+public class Background extends Component {
+}
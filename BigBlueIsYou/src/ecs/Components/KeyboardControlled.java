@@ -1,19 +1,25 @@
 package ecs.Components;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * The key bindings for an entity.  The maps are read-only, so a single instance can be
+ * shared by every entity that uses the same bindings.
+ */
 public class KeyboardControlled extends Component {
-    public Map<Integer, Movable.MoveTo> keys;
-    public Map<Movable.MoveTo, Integer> lookup;
+    public final Map<Integer, Movable.MoveTo> keys;
+    public final Map<Movable.MoveTo, Integer> lookup;
 
     public KeyboardControlled(Map<Integer, Movable.MoveTo> keys) {
-        this.keys = keys;
+        this.keys = Collections.unmodifiableMap(new HashMap<>(keys));
 
         // Build the action to key lookup based on the key to action inf
-        lookup = new HashMap<>();
+        Map<Movable.MoveTo, Integer> lookup = new HashMap<>();
         for (var mapping : keys.entrySet()) {
             lookup.put(mapping.getValue(), mapping.getKey());
         }
+        this.lookup = Collections.unmodifiableMap(lookup);
     }
 }
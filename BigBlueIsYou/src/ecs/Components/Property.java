@@ -50,6 +50,13 @@ public class Property extends Component {
         properties = 0;
     }
 
+    /**
+     * The raw bit flags, for comparing or combining several entities' properties at once
+     */
+    public int getMask() {
+        return properties;
+    }
+
     public Set<PropertyType> getProperties() {
         Set<PropertyType> properties = new HashSet<>();
         for (PropertyType type : PropertyType.values()) {
@@ -9,6 +9,7 @@ public class Bg {
 
         bg.add(new ecs.Components.Position(x, y));
         bg.add(appearance);
+        bg.add(new ecs.Components.Background());
 
         return bg;
     }
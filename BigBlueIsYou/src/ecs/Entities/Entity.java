@@ -5,6 +5,8 @@ import ecs.Components.Component;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -13,8 +15,13 @@ import java.util.stream.Collectors;
 public final class Entity {
     private static long nextId = 0;
 
+    // Each component type gets its own bit in the disabled mask, handed out the first time it is seen
+    private static final Map<Class<? extends Component>, Long> componentBits = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextComponentBit = new AtomicInteger();
+
     private long id;
     private final Map<Class<? extends Component>, Component> components = new HashMap<>();
+    private long disabled = 0;
 
     public Entity() {
         id = nextId++;
@@ -35,10 +42,30 @@ public final class Entity {
 
     public <TComponent extends Component> void remove(Class<TComponent> type) {
         this.components.remove(type);
+        this.disabled &= ~bitFor(type);
+    }
+
+    /**
+     * A disabled component stays attached to the entity, but contains() reports it as missing
+     * until it is enabled again.  This lets components be switched on and off without reallocating them.
+     */
+    public <TComponent extends Component> void disable(Class<TComponent> type) {
+        this.disabled |= bitFor(type);
+    }
+
+    public <TComponent extends Component> void enable(Class<TComponent> type) {
+        this.disabled &= ~bitFor(type);
+    }
+
+    /**
+     * True if the component is attached, whether or not it is currently enabled
+     */
+    public <TComponent extends Component> boolean has(Class<TComponent> type) {
+        return components.get(type) != null;
     }
 
     public <TComponent extends Component> boolean contains(Class<TComponent> type) {
-        return components.containsKey(type) && components.get(type) != null;
+        return components.get(type) != null && (disabled & bitFor(type)) == 0;
     }
 
     public <TComponent extends Component> TComponent get(Class<TComponent> type) {
@@ -53,6 +80,21 @@ public final class Entity {
 
     public void clear() {
         components.clear();
+        disabled = 0;
+    }
+
+    private static long bitFor(Class<? extends Component> type) {
+        Long bit = componentBits.get(type);
+        if (bit == null) {
+            bit = componentBits.computeIfAbsent(type, t -> {
+                int index = nextComponentBit.getAndIncrement();
+                if (index >= Long.SIZE) {
+                    throw new IllegalStateException("too many component types to track enabled state");
+                }
+                return 1L << index;
+            });
+        }
+        return bit;
     }
 
     @Override
@@ -5,14 +5,14 @@ import ecs.Components.Object;
 import ecs.Components.Position;
 import ecs.Components.Property;
 import ecs.Components.Text;
-import edu.usu.graphics.Texture;
+import edu.usu.graphics.TextureRegion;
 import java.util.Map;
 
 public class EntityFactory {
-    private Map<String, Texture> textureCache;
+    private Map<String, TextureRegion> textureCache;
     private static final float TILE_SIZE = 32.0f;
 
-    public EntityFactory(Map<String, Texture> textureCache) {
+    public EntityFactory(Map<String, TextureRegion> textureCache) {
         this.textureCache = textureCache;
     }
 
@@ -0,0 +1,102 @@
+package ecs.Systems;
+
+import ecs.Components.Property;
+import ecs.Entities.Entity;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One bitset per property (YOU, WIN, STOP, PUSH, DEFEAT, SINK) and one per object kind,
+ * with a bit set for every cell that holds at least one entity with that property or kind.
+ * A separate hazard plane marks the cells where something other than YOU is DEFEAT or SINK.
+ * Cells use the same row-major index as Occupancy, packed 64 cells to a long.
+ */
+public class Bitboards {
+    private static final Property.PropertyType[] PROPERTIES = Property.PropertyType.values();
+
+    private static final int HAZARDS = Property.PropertyType.DEFEAT.getFlag() | Property.PropertyType.SINK.getFlag();
+
+    private int gridNumRows;
+    private int gridNumCols;
+    private int words;
+    private final long[][] properties = new long[PROPERTIES.length][0];
+    private long[] hazards = new long[0];
+    private final Map<String, long[]> kinds = new HashMap<>();
+
+    public void reset(int rows, int cols) {
+        this.gridNumRows = rows;
+        this.gridNumCols = cols;
+        this.words = (rows * cols + 63) >>> 6;
+
+        for (int i = 0; i < PROPERTIES.length; i++) {
+            properties[i] = new long[words];
+        }
+        hazards = new long[words];
+        kinds.clear();
+    }
+
+    /**
+     * Recomputes every plane's bit for the cell from the entities stacked there
+     */
+    public void refreshCell(int cell, List<Entity> stack) {
+        int word = cell >>> 6;
+        long bit = 1L << cell;
+
+        for (var plane : properties) {
+            plane[word] &= ~bit;
+        }
+        hazards[word] &= ~bit;
+        for (var plane : kinds.values()) {
+            plane[word] &= ~bit;
+        }
+
+        for (var entity : stack) {
+            if (entity.contains(Property.class)) {
+                int mask = entity.get(Property.class).getMask();
+                for (int i = 0; i < PROPERTIES.length; i++) {
+                    if ((mask & PROPERTIES[i].getFlag()) != 0) {
+                        properties[i][word] |= bit;
+                    }
+                }
+                // "baba is sink" shouldn't make baba a hazard to itself
+                if ((mask & Property.PropertyType.YOU.getFlag()) == 0 && (mask & HAZARDS) != 0) {
+                    hazards[word] |= bit;
+                }
+            }
+            if (entity.contains(ecs.Components.Object.class)) {
+                var name = entity.get(ecs.Components.Object.class).name;
+                kinds.computeIfAbsent(name, k -> new long[words])[word] |= bit;
+            }
+        }
+    }
+
+    public long[] plane(Property.PropertyType property) {
+        return properties[property.ordinal()];
+    }
+
+    /**
+     * The plane for an object kind, or null if no cell has ever held that kind
+     */
+    public long[] plane(String kind) {
+        return kinds.get(kind);
+    }
+
+    public boolean has(Property.PropertyType property, int cell) {
+        return (properties[property.ordinal()][cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    public boolean has(Property.PropertyType property, int x, int y) {
+        if (x < 0 || y < 0 || x >= gridNumCols || y >= gridNumRows) {
+            return false;
+        }
+        return has(property, y * gridNumCols + x);
+    }
+
+    /**
+     * True if an entity that isn't YOU makes the cell deadly, by being DEFEAT or SINK
+     */
+    public boolean isHazard(int cell) {
+        return (hazards[cell >>> 6] & (1L << cell)) != 0;
+    }
+}
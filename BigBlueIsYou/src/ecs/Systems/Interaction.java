@@ -0,0 +1,109 @@
+package ecs.Systems;
+
+import Particle.ParticleEffectsManager;
+import ecs.Components.Property;
+import ecs.Entities.Entity;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Resolves what happens when entities share a cell (WIN, DEFEAT and SINK).
+ * Only the cells whose occupancy or contents changed since the last update are looked at,
+ * so the cost of an update is proportional to the number of entities that moved or changed.
+ */
+public class Interaction extends System {
+    private final Occupancy occupancy;
+    private boolean hasWon;
+
+    public Interaction(Occupancy occupancy) {
+        super(ecs.Components.Position.class);
+        this.occupancy = occupancy;
+        this.hasWon = false;
+    }
+
+    public Occupancy getOccupancy() {
+        return occupancy;
+    }
+
+    /**
+     * Resizes the occupancy grid to match a newly loaded grid.  Entities need to be added again afterwards.
+     */
+    public void setGrid(String[][] grid) {
+        entities.clear();
+        occupancy.reset(grid.length, grid.length > 0 ? grid[0].length : 0);
+        hasWon = false;
+    }
+
+    public boolean hasWon() {
+        return hasWon;
+    }
+
+    @Override
+    public boolean add(Entity entity) {
+        boolean interested = super.add(entity);
+        if (interested) {
+            occupancy.add(entity);
+        }
+        return interested;
+    }
+
+    @Override
+    public boolean remove(long id) {
+        Entity entity = entities.get(id);
+        if (entity != null) {
+            occupancy.remove(entity);
+        }
+        return super.remove(id);
+    }
+
+    /**
+     * Another system changed the entity, so its properties may be different now
+     */
+    @Override
+    public void updatedEntity(Entity entity) {
+        super.updatedEntity(entity);
+        occupancy.markDirty(entity);
+    }
+
+    /**
+     * Called for each entity the movement system reports as moved
+     */
+    public void moved(Entity entity) {
+        if (entities.containsKey(entity.getId())) {
+            occupancy.moved(entity);
+        }
+    }
+
+    @Override
+    public Set<EntityUpdate> update(double elapsedTime) {
+        BitSet dirty = occupancy.getDirtyCells();
+        for (int cell = dirty.nextSetBit(0); cell >= 0; cell = dirty.nextSetBit(cell + 1)) {
+            interact(cell);
+        }
+        occupancy.clearDirty();
+
+        return new HashSet<>();
+    }
+
+    private void interact(int cell) {
+        var board = occupancy.getBitboards();
+        if (!board.has(Property.PropertyType.YOU, cell)) {
+            return;
+        }
+
+        int x = cell % occupancy.getNumCols();
+        int y = cell / occupancy.getNumCols();
+        ParticleEffectsManager particleManager = ParticleEffectsManager.getInstance();
+
+        if (!hasWon && board.has(Property.PropertyType.WIN, cell)) {
+            particleManager.objectWinAtGridPosition(x, y);
+            hasWon = true;
+            return;
+        }
+
+        if (board.isHazard(cell)) {
+            particleManager.objectDeathAtGridPosition(x, y);
+        }
+    }
+}
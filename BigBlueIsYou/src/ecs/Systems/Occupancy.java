@@ -0,0 +1,129 @@
+package ecs.Systems;
+
+import ecs.Components.Position;
+import ecs.Entities.Entity;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of which entities are stacked in each grid cell, and which cells have
+ * had their occupancy change since the dirty set was last cleared.
+ * Cells are indexed row-major: index = y * cols + x
+ * The per-property Bitboards are kept in step with every change made here.
+ */
+public class Occupancy {
+    private int gridNumRows;
+    private int gridNumCols;
+    private final List<List<Entity>> cells = new ArrayList<>();
+    private final Map<Long, Integer> cellOf = new HashMap<>();
+    private final BitSet dirty = new BitSet();
+    private final Bitboards bitboards = new Bitboards();
+
+    /**
+     * Empties every cell and resizes the board
+     */
+    public void reset(int rows, int cols) {
+        this.gridNumRows = rows;
+        this.gridNumCols = cols;
+
+        for (var cell : cells) {
+            cell.clear();
+        }
+        while (cells.size() < rows * cols) {
+            cells.add(new ArrayList<>(2));
+        }
+        cellOf.clear();
+        dirty.clear();
+        bitboards.reset(rows, cols);
+    }
+
+    public int getNumRows() {
+        return gridNumRows;
+    }
+
+    public int getNumCols() {
+        return gridNumCols;
+    }
+
+    public boolean inBounds(int x, int y) {
+        return x >= 0 && y >= 0 && x < gridNumCols && y < gridNumRows;
+    }
+
+    public int cellIndex(int x, int y) {
+        return y * gridNumCols + x;
+    }
+
+    /**
+     * Places the entity in the cell given by its current position
+     */
+    public void add(Entity entity) {
+        var pos = entity.get(Position.class);
+        if (!inBounds(pos.x, pos.y)) {
+            return;
+        }
+
+        int cell = cellIndex(pos.x, pos.y);
+        cells.get(cell).add(entity);
+        cellOf.put(entity.getId(), cell);
+        touch(cell);
+    }
+
+    public void remove(Entity entity) {
+        Integer cell = cellOf.remove(entity.getId());
+        if (cell != null) {
+            cells.get(cell).remove(entity);
+            touch(cell);
+        }
+    }
+
+    /**
+     * Moves the entity from the cell it was last seen in to the cell given by its current position.
+     * Both cells are marked as dirty.
+     */
+    public void moved(Entity entity) {
+        var pos = entity.get(Position.class);
+        Integer previous = cellOf.get(entity.getId());
+        int current = inBounds(pos.x, pos.y) ? cellIndex(pos.x, pos.y) : -1;
+
+        if (previous != null && previous == current) {
+            touch(current);
+            return;
+        }
+
+        remove(entity);
+        if (current != -1) {
+            add(entity);
+        }
+    }
+
+    /**
+     * Flags the cell the entity is in as needing to be looked at again, for example
+     * because the entity's properties changed
+     */
+    public void markDirty(Entity entity) {
+        Integer cell = cellOf.get(entity.getId());
+        if (cell != null) {
+            touch(cell);
+        }
+    }
+
+    private void touch(int cell) {
+        dirty.set(cell);
+        bitboards.refreshCell(cell, cells.get(cell));
+    }
+
+    public Bitboards getBitboards() {
+        return bitboards;
+    }
+
+    public BitSet getDirtyCells() {
+        return dirty;
+    }
+
+    public void clearDirty() {
+        dirty.clear();
+    }
+}
@@ -6,25 +6,65 @@ import ecs.Components.Position;
 import ecs.Components.Movable;
 import ecs.Components.KeyboardControlled;
 import ecs.Entities.Entity;
-import edu.usu.graphics.Texture;
+import edu.usu.graphics.TextureRegion;
 import java.util.*;
 import Particle.ParticleEffectsManager;
 import org.joml.Vector2f;
 
+
 public class Rule extends System {
 
+    // Turns on the per-rule console tracing
+    private static final boolean DEBUG = false;
+
+    private static final Set<String> PROPERTY_WORDS = Set.of("stop", "push", "you", "win", "sink", "kill");
+    private static final Set<String> NONSENSE_WORDS = Set.of("win", "push", "stop", "you", "sink", "kill", "is");
+
+    // Properties that cannot be added to an entity already holding any of the masked properties
+    private static final int[] CONTRADICTIONS = new int[Property.PropertyType.values().length];
+    static {
+        int defeatOrSink = Property.PropertyType.DEFEAT.getFlag() | Property.PropertyType.SINK.getFlag();
+        CONTRADICTIONS[Property.PropertyType.YOU.ordinal()] = defeatOrSink;
+        CONTRADICTIONS[Property.PropertyType.WIN.ordinal()] = defeatOrSink;
+        CONTRADICTIONS[Property.PropertyType.STOP.ordinal()] = Property.PropertyType.PUSH.getFlag();
+    }
+
     private String[][] grid;
-    private Map<String, Texture> textureCache;
+    private Map<String, TextureRegion> textureCache;
     private Set<EntityUpdate> changedEntities;
     private KeyboardState keyboardState;
     private Set<String> playedSoundRules; // Track which rules have played their sounds
-    private boolean hasWon; // Track if we've already won the level
     private int gridNumRows;
     private int gridNumCols;
-    private Set<Long> entitiesWithYouEffect = new HashSet<>();
-    private Set<Long> entitiesWithWinEffect = new HashSet<>();
-
-    private String[] descriptors = {"wallname", "rockname", "flagname", "baba", "watername", "lavaname"};
+    // Slots that already showed their YOU or WIN effect during the current update
+    private final BitSet entitiesWithYouEffect = new BitSet();
+    private final BitSet entitiesWithWinEffect = new BitSet();
+
+    // Every controlled entity shares the same read-only key bindings
+    private KeyboardControlled keyboardControls;
+    private final RuleDetector.Listener onRuleFound = this::foundRule;
+    // Each rule found in the last pass, as the noun and what it is
+    private final List<String[]> activeRules = new ArrayList<>();
+
+    // Packed text planes for finding rules, refreshed only for the cells the occupancy says changed
+    private final RuleDetector ruleDetector;
+    private Occupancy occupancy;
+    private String[][] detectorGrid;
+
+    // Dense slots for the tracked entities, so per-entity state can live in flat arrays.
+    // stateBefore holds each entity's property mask and control flags at the start of an update,
+    // and changed collects the slots whose state or type differs afterwards.
+    private final List<Entity> slots = new ArrayList<>();
+    private final Map<Long, Integer> slotOf = new HashMap<>();
+    private final List<Entity> targets = new ArrayList<>();
+    private int[] stateBefore = new int[0];
+    private final BitSet changed = new BitSet();
+
+    private static final String[] DESCRIPTORS = {"wallname", "rockname", "flagname", "baba", "watername", "lavaname"};
+    private static final Set<String> DESCRIPTOR_WORDS = Set.of(DESCRIPTORS);
+    private final Set<String> descriptorWords = DESCRIPTOR_WORDS;
+    // Object name each noun refers to, e.g. "rockname" -> "rock" and "baba" -> "BigBlue"
+    private final Map<String, String> objectNames = new HashMap<>();
     private Map<String, Integer> behaviors = Map.ofEntries(
             Map.entry("stop", 0x0004),
             Map.entry("push",0x0008),
@@ -35,25 +75,63 @@ public class Rule extends System {
             Map.entry("baba", 0x0001)
     );
 
-    public Rule(String[][] grid, Map<String, Texture> textureCache) {
+    public Rule(String[][] grid, Map<String, TextureRegion> textureCache, KeyboardState keyboardState) {
         super(ecs.Components.Position.class, ecs.Components.Object.class);
 
         this.grid = grid;
         this.textureCache = textureCache;
-        this.keyboardState = new KeyboardState();
+        this.keyboardState = keyboardState;
+        this.keyboardControls = controlsFor(keyboardState);
         this.changedEntities = new HashSet<>();
         this.playedSoundRules = new HashSet<>();
-        this.hasWon = false;
+        this.ruleDetector = new RuleDetector(descriptorWords, PROPERTY_WORDS, "is");
+        for (var descriptor : DESCRIPTORS) {
+            objectNames.put(descriptor, descriptor.replace("name", ""));
+        }
+        objectNames.put("baba", "BigBlue");
         if (grid != null && grid.length > 0) {
             this.gridNumRows = grid.length;
             this.gridNumCols = grid[0].length;
         }
     }
 
+    private static KeyboardControlled controlsFor(KeyboardState keyboardState) {
+        return new KeyboardControlled(Map.of(
+                keyboardState.moveUpKey, Movable.MoveTo.Up,
+                keyboardState.moveDownKey, Movable.MoveTo.Down,
+                keyboardState.moveLeftKey, Movable.MoveTo.Left,
+                keyboardState.moveRightKey, Movable.MoveTo.Right
+        ));
+    }
+
+    /**
+     * Switches to new movement keys.  Entities that are already controlled get the new bindings,
+     * and keep their control switched off if it was.
+     *
+     * @return The entities whose bindings were replaced
+     */
+    public Set<EntityUpdate> setKeyboardState(KeyboardState keyboardState) {
+        this.keyboardState = keyboardState;
+        this.keyboardControls = controlsFor(keyboardState);
+
+        Set<EntityUpdate> rebound = new HashSet<>();
+        for (var entity : entities.values()) {
+            if (entity.has(KeyboardControlled.class)) {
+                boolean enabled = entity.contains(KeyboardControlled.class);
+                entity.remove(KeyboardControlled.class);
+                entity.add(keyboardControls);
+                if (!enabled) {
+                    entity.disable(KeyboardControlled.class);
+                }
+                rebound.add(new EntityUpdate(entity, false));
+            }
+        }
+        return rebound;
+    }
+
     public void setGrid(String[][] grid) {
         this.grid = grid;
         this.playedSoundRules.clear(); // Clear played sounds when grid changes
-        this.hasWon = false; // Reset win state when grid changes
         this.entitiesWithYouEffect.clear(); // Clear YOU effect tracking
         this.entitiesWithWinEffect.clear(); // Clear WIN effect tracking
 
@@ -63,52 +141,145 @@ public class Rule extends System {
         }
     }
 
-    public Set<EntityUpdate> update(double elapsedTime) {
-        changedEntities = new HashSet<>();
-        resetEntities();
-        checkForRules();
-        checkWinCondition();
-        checkHazardCollisions();
-        return changedEntities;
+    /**
+     * Lets the rule system refresh only the text cells that changed since the last update,
+     * instead of rescanning the whole grid
+     */
+    public void setOccupancy(Occupancy occupancy) {
+        this.occupancy = occupancy;
     }
 
-    private void resetEntities() {
-        // First, store the current properties
-        Map<Long, Set<Property.PropertyType>> storedProperties = new HashMap<>();
-        for (var entity : entities.values()) {
-            if (entity.contains(ecs.Components.Property.class)) {
-                var prop = entity.get(ecs.Components.Property.class);
-                storedProperties.put(entity.getId(), new HashSet<>(prop.getProperties()));
-            }
+    @Override
+    public boolean add(Entity entity) {
+        boolean interested = super.add(entity);
+        if (interested && !slotOf.containsKey(entity.getId())) {
+            slotOf.put(entity.getId(), slots.size());
+            slots.add(entity);
         }
+        return interested;
+    }
 
-        // Remove all properties
-        for (var entity : entities.values()) {
-            if (entity.contains(ecs.Components.Property.class)) {
-                // Clear effect tracking when entity loses properties
-                entitiesWithYouEffect.remove(entity.getId());
-                entitiesWithWinEffect.remove(entity.getId());
-                entity.remove(ecs.Components.Property.class);
+    @Override
+    public boolean remove(long id) {
+        Integer slot = slotOf.remove(id);
+        if (slot != null) {
+            // Move the last entity into the freed slot to keep the slots dense
+            Entity last = slots.remove(slots.size() - 1);
+            if (slot < slots.size()) {
+                slots.set(slot, last);
+                slotOf.put(last.getId(), slot);
             }
-            if (entity.contains(ecs.Components.Movable.class)) {
-                entity.remove(ecs.Components.Movable.class);
-            }
-            if (entity.contains(ecs.Components.KeyboardControlled.class)) {
-                entity.remove(ecs.Components.KeyboardControlled.class);
+        }
+        return super.remove(id);
+    }
+
+    @Override
+    public void updatedEntity(Entity entity) {
+        if (isInterested(entity)) {
+            add(entity);
+        } else {
+            remove(entity.getId());
+        }
+    }
+
+    /**
+     * Re-evaluates all rules.  Only the entities whose properties, control components or type
+     * actually changed are returned.
+     */
+    public Set<EntityUpdate> update(double elapsedTime) {
+        return evaluate(null);
+    }
+
+    /**
+     * Applies rules that were already found in the grid, e.g. by findRules on the level prefetch thread,
+     * instead of looking for them.  The text is scanned as usual by the next update.
+     */
+    public Set<EntityUpdate> update(List<String[]> rules) {
+        return evaluate(rules);
+    }
+
+    /**
+     * Finds the rules spelled out in a grid, each as the noun and what it is, without needing a Rule
+     * or any entities.  Safe to call from any thread.
+     */
+    public static List<String[]> findRules(String[][] grid) {
+        List<String[]> rules = new ArrayList<>();
+        RuleDetector detector = new RuleDetector(DESCRIPTOR_WORDS, PROPERTY_WORDS, "is");
+        detector.rebuild(grid);
+        detector.detect((row, col, vertical) -> rules.add(vertical
+                ? new String[] { grid[row - 1][col], grid[row + 1][col] }
+                : new String[] { grid[row][col - 1], grid[row][col + 1] }));
+        return rules;
+    }
+
+    /**
+     * @param rules The rules to apply, or null to find them in the grid
+     */
+    private Set<EntityUpdate> evaluate(List<String[]> rules) {
+        changedEntities.clear();
+
+        if (stateBefore.length < slots.size()) {
+            stateBefore = new int[Math.max(slots.size(), stateBefore.length * 2)];
+        }
+        for (int i = 0; i < slots.size(); i++) {
+            stateBefore[i] = stateOf(slots.get(i));
+        }
+
+        resetEntities();
+        if (rules == null) {
+            checkForRules();
+        } else {
+            activeRules.clear();
+            for (var rule : rules) {
+                activeRules.add(rule);
+                applyRules(rule[0], rule[1]);
             }
         }
 
-        // Restore properties that should persist
-        for (var entity : entities.values()) {
-            var storedProps = storedProperties.get(entity.getId());
-            if (storedProps != null && !storedProps.isEmpty()) {
-                var prop = new Property(entity);
-                for (var p : storedProps) {
-                    prop.addProperty(p);
-                }
-                entity.add(prop);
+        for (int i = 0; i < slots.size(); i++) {
+            if (stateOf(slots.get(i)) != stateBefore[i]) {
+                changed.set(i);
             }
         }
+        for (int i = changed.nextSetBit(0); i >= 0; i = changed.nextSetBit(i + 1)) {
+            changedEntities.add(new EntityUpdate(slots.get(i), false));
+        }
+        changed.clear();
+
+        return changedEntities;
+    }
+
+    /**
+     * Packs the things other systems care about into one int: the property flags in the low bits,
+     * plus whether the entity currently has Movable and KeyboardControlled
+     */
+    private static int stateOf(Entity entity) {
+        int state = 0;
+        if (entity.contains(Property.class)) {
+            state = entity.get(Property.class).getMask();
+        }
+        if (entity.contains(ecs.Components.Movable.class)) {
+            state |= 1 << 16;
+        }
+        if (entity.contains(ecs.Components.KeyboardControlled.class)) {
+            state |= 1 << 17;
+        }
+        return state;
+    }
+
+    /**
+     * Switches off the control components on every entity so that only the rules found
+     * in this pass turn them back on.  Properties carry over from the last pass.
+     */
+    private void resetEntities() {
+        entitiesWithYouEffect.clear();
+        entitiesWithWinEffect.clear();
+
+        for (int i = 0; i < slots.size(); i++) {
+            Entity entity = slots.get(i);
+            entity.disable(Movable.class);
+            entity.disable(KeyboardControlled.class);
+        }
     }
 
     private void printGrid() {
@@ -123,39 +294,65 @@ public class Rule extends System {
         }
     }
 
+    /**
+     * The rules found by the last update, each as the noun and what it is, e.g. {"baba", "you"}
+     */
+    public List<String[]> getActiveRules() {
+        return Collections.unmodifiableList(activeRules);
+    }
+
     /** Checks for any existing rules in the grid
      * read top -> bottom OR left -> right
      * consists of <targetNoun> is <thing/rule>
      */
     public void checkForRules() {
-        printGrid();
+        activeRules.clear();
+        refreshRuleDetector();
+        ruleDetector.detect(onRuleFound);
+    }
 
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[i].length; j++) {
-                // Check for vertical rules (top -> bottom)
-                if (i > 0 && i < grid.length - 1) {
-                    String top = grid[i-1][j];
-                    String middle = grid[i][j];
-                    String bottom = grid[i+1][j];
-
-                    if (!top.isEmpty() && middle.equals("is") && !bottom.isEmpty()) {
-                        java.lang.System.out.println("Found vertical rule: " + top + " is " + bottom);
-                        applyRules(top, bottom);
-                    }
-                }
+    /**
+     * Brings the text planes up to date with the grid.  The whole grid is only rescanned when
+     * a different grid was set or there is no occupancy to say which cells changed.
+     */
+    private void refreshRuleDetector() {
+        if (grid == null) {
+            return;
+        }
+
+        if (occupancy == null || grid != detectorGrid || !ruleDetector.isSized(gridNumRows, gridNumCols)) {
+            ruleDetector.rebuild(grid);
+            detectorGrid = grid;
+            return;
+        }
 
-                // Check for horizontal rules (left -> right)
-                if (j > 0 && j < grid[i].length - 1) {
-                    String left = grid[i][j-1];
-                    String middle = grid[i][j];
-                    String right = grid[i][j+1];
+        var dirty = occupancy.getDirtyCells();
+        for (int cell = dirty.nextSetBit(0); cell >= 0; cell = dirty.nextSetBit(cell + 1)) {
+            int row = cell / gridNumCols;
+            int col = cell % gridNumCols;
+            if (row < gridNumRows) {
+                ruleDetector.set(row, col, grid[row][col]);
+            }
+        }
+    }
 
-                    if (!left.isEmpty() && middle.equals("is") && !right.isEmpty()) {
-                        java.lang.System.out.println("Found horizontal rule: " + left + " is " + right);
-                        applyRules(left, right);
-                    }
-                }
+    private void foundRule(int row, int col, boolean vertical) {
+        if (vertical) {
+            String top = grid[row - 1][col];
+            String bottom = grid[row + 1][col];
+            if (DEBUG) {
+                java.lang.System.out.println("Found vertical rule: " + top + " is " + bottom);
+            }
+            activeRules.add(new String[] { top, bottom });
+            applyRules(top, bottom);
+        } else {
+            String left = grid[row][col - 1];
+            String right = grid[row][col + 1];
+            if (DEBUG) {
+                java.lang.System.out.println("Found horizontal rule: " + left + " is " + right);
             }
+            activeRules.add(new String[] { left, right });
+            applyRules(left, right);
         }
     }
 
@@ -167,22 +364,24 @@ public class Rule extends System {
         switch (ruleType.toLowerCase()) {
             case "you":
                 // Show sparkles when YOU rule is formed or changed
-                if (!entitiesWithYouEffect.contains(entity.getId())) {
+                int youSlot = slotOf.get(entity.getId());
+                if (!entitiesWithYouEffect.get(youSlot)) {
                     particleManager.youChangeAtGridPosition(entity.get(Position.class).x, entity.get(Position.class).y);
                     particleManager.playIsYouSound();
-                    entitiesWithYouEffect.add(entity.getId());
+                    entitiesWithYouEffect.set(youSlot);
                 }
                 break;
 
             case "win":
                 // Show sparkles when WIN rule is formed or changed
-                if (!entitiesWithWinEffect.contains(entity.getId())) {
+                int winSlot = slotOf.get(entity.getId());
+                if (!entitiesWithWinEffect.get(winSlot)) {
                     particleManager.winChangeAtGridPosition(entity.get(Position.class).x, entity.get(Position.class).y);
                     if (!playedSoundRules.contains("win")) {
                         particleManager.playIsWinSound();
                         playedSoundRules.add("win");
                     }
-                    entitiesWithWinEffect.add(entity.getId());
+                    entitiesWithWinEffect.set(winSlot);
                 }
                 break;
 
@@ -202,34 +401,16 @@ public class Rule extends System {
         }
     }
 
-    private List<Entity> getTargetEntities(String target, Map<Long, Entity> entities) {
-        List<Entity> targets = new ArrayList<>();
-        for (var entity : entities.values()) {
-            var object = entity.get(Object.class);
-            if (object == null) continue;
+    private List<Entity> getTargetEntities(String target) {
+        // "baba" only matches BigBlue, a descriptor ("rockname") matches its base object name ("rock"),
+        // and anything else has to match the object name directly
+        String name = objectNames.getOrDefault(target, target);
 
-            // Special case: "baba" only matches with "BigBlue"
-            if (target.equals("baba")) {
-                if (object.name.equals("BigBlue")) {
-                    targets.add(entity);
-                }
-                continue; // Skip other checks for "baba"
-            }
-            // If target is a descriptor (ends with "name"), match with base object names
-            else if (target.endsWith("name")) {
-                String baseName = target.replace("name", "");
-                if (object.name.equals(baseName)) {
-                    targets.add(entity);
-                }
-            }
-            // If target is a base name, match with descriptors
-            else if (Arrays.asList(descriptors).contains(target + "name")) {
-                if (object.name.equals(target)) {
-                    targets.add(entity);
-                }
-            }
-            // Direct name match
-            else if (object.name.equals(target)) {
+        targets.clear();
+        for (int i = 0; i < slots.size(); i++) {
+            Entity entity = slots.get(i);
+            var object = entity.get(Object.class);
+            if (object != null && object.name.equals(name)) {
                 targets.add(entity);
             }
         }
@@ -248,19 +429,23 @@ public class Rule extends System {
 
         // Check for nonsense rules
         if (isNonsenseRule(target, rule)) {
-            java.lang.System.out.println("Rule rejected as nonsense: " + target + " is " + rule);
+            if (DEBUG) {
+                java.lang.System.out.println("Rule rejected as nonsense: " + target + " is " + rule);
+            }
             return;
         }
 
-        java.lang.System.out.println("Applying rule: " + target + " is " + rule);
-        List<Entity> targets = getTargetEntities(target, entities);
-        java.lang.System.out.println("Found " + targets.size() + " entities matching target: " + target);
+        List<Entity> targets = getTargetEntities(target);
+        if (DEBUG) {
+            java.lang.System.out.println("Applying rule: " + target + " is " + rule);
+            java.lang.System.out.println("Found " + targets.size() + " entities matching target: " + target);
+        }
 
         // First check if this is a property change rule
         if (behaviors.containsKey(rule.toLowerCase())) {
-            for (var entity : targets) {
+            for (int i = 0; i < targets.size(); i++) {
+                Entity entity = targets.get(i);
                 var object = entity.get(ecs.Components.Object.class);
-                java.lang.System.out.println("Processing entity " + entity.getId() + " with object name: " + object.name);
 
                 // Skip if this is a text object and the rule is defeat/sink
                 if (object.name.equals(target) && (rule.equals("kill") || rule.equals("sink"))) {
@@ -282,7 +467,9 @@ public class Rule extends System {
                 Property.PropertyType newProperty = getPropertyTypeFromRule(rule);
                 if (hasContradictoryProperty(property, newProperty)) {
                     // Mark the rule as ignored
-                    entity.add(new IgnoredRule());
+                    if (!entity.has(IgnoredRule.class)) {
+                        entity.add(new IgnoredRule());
+                    }
                     continue;
                 }
 
@@ -298,51 +485,55 @@ public class Rule extends System {
                 }
 
                 if (rule.equals("push")) {
-                    entity.add(new ecs.Components.Movable(ecs.Components.Movable.MoveTo.Stopped));
+                    enableMovable(entity);
                 }
 
                 // Special handling for "you" property
                 if (rule.equals("you")) {
-                    // Add keyboard control and movement components
-                    java.lang.System.out.println("Adding 'you' rule to entity: " + entity.getId());
-                    entity.add(new ecs.Components.Movable(ecs.Components.Movable.MoveTo.Stopped));
-                    entity.add(new ecs.Components.KeyboardControlled(
-                            Map.of(
-                                    keyboardState.moveUpKey, ecs.Components.Movable.MoveTo.Up,
-                                    keyboardState.moveDownKey, ecs.Components.Movable.MoveTo.Down,
-                                    keyboardState.moveLeftKey, ecs.Components.Movable.MoveTo.Left,
-                                    keyboardState.moveRightKey, ecs.Components.Movable.MoveTo.Right
-                            )
-                    ));
+                    // Turn on keyboard control and movement
+                    enableMovable(entity);
+                    if (entity.has(KeyboardControlled.class)) {
+                        entity.enable(KeyboardControlled.class);
+                    } else {
+                        entity.add(keyboardControls);
+                    }
                 }
-
-                changedEntities.add(new EntityUpdate(entity, false));
             }
         }
         // Then check for object type changes
-        else if (Arrays.asList(descriptors).contains(rule)) {
-            for (var entity : targets) {
+        else if (descriptorWords.contains(rule)) {
+            // Only the descriptors are renamed, so "baba" stays "baba" here
+            String newType = rule.equals("baba") ? rule : objectNames.get(rule);
+            for (int i = 0; i < targets.size(); i++) {
+                Entity entity = targets.get(i);
                 var appearance = entity.get(ecs.Components.Appearance.class);
                 var object = entity.get(ecs.Components.Object.class);
 
-                String newType = rule.replace("name", "");
                 // Only change if the new type is different from the current type
                 if (!object.name.equals(newType)) {
                     appearance.image = textureCache.get(newType);
                     object.name = newType;
+                    changed.set(slotOf.get(entity.getId()));
                     // Trigger transformation effect
                     triggerEffects(rule, entity);
                 }
-
-                changedEntities.add(new EntityUpdate(entity, false));
             }
         }
     }
 
-    private boolean isNonsenseRule(String target, String rule) {
-        // Define nonsense rules
-        Set<String> nonsenseRules = Set.of("win", "push", "stop", "you", "sink", "kill", "is");
+    /**
+     * Turns the entity's Movable back on, stopped, adding one the first time it is needed
+     */
+    private void enableMovable(Entity entity) {
+        if (entity.has(Movable.class)) {
+            entity.enable(Movable.class);
+            entity.get(Movable.class).moveTo = Movable.MoveTo.Stopped;
+        } else {
+            entity.add(new Movable(Movable.MoveTo.Stopped));
+        }
+    }
 
+    private boolean isNonsenseRule(String target, String rule) {
         // Special case: "baba is you" is a valid rule
         if (target.equals("baba") && rule.equals("you")) {
             return false;
@@ -359,12 +550,12 @@ public class Rule extends System {
         }
 
         // Check if the rule is trying to apply a property to a property
-        if (nonsenseRules.contains(target.toLowerCase()) && behaviors.containsKey(rule)) {
+        if (NONSENSE_WORDS.contains(target.toLowerCase()) && behaviors.containsKey(rule)) {
             return true;
         }
 
         // Check if the rule is trying to apply a property to a property
-        if (nonsenseRules.contains(rule.toLowerCase()) && behaviors.containsKey(target)) {
+        if (NONSENSE_WORDS.contains(rule.toLowerCase()) && behaviors.containsKey(target)) {
             return true;
         }
 
@@ -403,100 +594,7 @@ public class Rule extends System {
     }
 
     private boolean hasContradictoryProperty(Property property, Property.PropertyType newProperty) {
-        // Define contradictory properties
-        Map<Property.PropertyType, Set<Property.PropertyType>> contradictions = Map.of(
-                Property.PropertyType.YOU, Set.of(Property.PropertyType.DEFEAT, Property.PropertyType.SINK),
-                Property.PropertyType.WIN, Set.of(Property.PropertyType.DEFEAT, Property.PropertyType.SINK),
-                Property.PropertyType.STOP, Set.of(Property.PropertyType.PUSH)
-        );
-
         // Check if the new property contradicts any existing properties
-        if (contradictions.containsKey(newProperty)) {
-            for (var existingProperty : property.getProperties()) {
-                if (contradictions.get(newProperty).contains(existingProperty)) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
-    }
-
-    private void checkWinCondition() {
-        if (hasWon) return; // Don't check if already won
-
-        // Find all YOU entities
-        List<Entity> youEntities = new ArrayList<>();
-        for (var entity : entities.values()) {
-            if (entity.contains(Property.class) && entity.get(Property.class).hasProperty(Property.PropertyType.YOU)) {
-                youEntities.add(entity);
-            }
-        }
-
-        // Find all WIN entities
-        List<Entity> winEntities = new ArrayList<>();
-        for (var entity : entities.values()) {
-            if (entity.contains(Property.class) && entity.get(Property.class).hasProperty(Property.PropertyType.WIN)) {
-                winEntities.add(entity);
-            }
-        }
-
-        // Check for collisions between YOU and WIN entities
-        for (var youEntity : youEntities) {
-            var youPos = youEntity.get(Position.class);
-            for (var winEntity : winEntities) {
-                var winPos = winEntity.get(Position.class);
-                if (youPos.x == winPos.x && youPos.y == winPos.y && !hasWon) {
-                    // Trigger win effects
-                    ParticleEffectsManager particleManager = ParticleEffectsManager.getInstance();
-                    particleManager.objectWinAtGridPosition(winPos.x, winPos.y);
-                    hasWon = true;
-                    return;
-                }
-            }
-        }
+        return (property.getMask() & CONTRADICTIONS[newProperty.ordinal()]) != 0;
     }
-    private void checkHazardCollisions() {
-        List<Entity> youEntities = new ArrayList<>();
-        List<Entity> hazardEntities = new ArrayList<>();
-
-        for (var entity : entities.values()) {
-            if (entity.contains(Property.class) && entity.contains(Position.class)) {
-                var props = entity.get(Property.class);
-                if (props.hasProperty(Property.PropertyType.YOU)) {
-                    youEntities.add(entity);
-                } else if (props.hasProperty(Property.PropertyType.DEFEAT) || props.hasProperty(Property.PropertyType.SINK)) {
-                    hazardEntities.add(entity);
-                }
-            }
-        }
-
-        for (var youEntity : youEntities) {
-            var youPos = youEntity.get(Position.class);
-
-            for (var hazard : hazardEntities) {
-                var hazardPos = hazard.get(Position.class);
-                var hazardProps = hazard.get(Property.class);
-
-                if (youPos.x == hazardPos.x && youPos.y == hazardPos.y) {
-                    ParticleEffectsManager particleManager = ParticleEffectsManager.getInstance();
-
-                    if (hazardProps.hasProperty(Property.PropertyType.DEFEAT)) {
-                        particleManager.objectDeathAtGridPosition(youPos.x, youPos.y);
-                        //youEntity.markForRemoval(); // Or however your ECS removes entities
-                        return; // Exit after one interaction to avoid modifying list during iteration
-                    }
-
-                    if (hazardProps.hasProperty(Property.PropertyType.SINK)) {
-                        particleManager.objectDeathAtGridPosition(youPos.x, youPos.y);
-                        //youEntity.markForRemoval();
-                        //hazard.markForRemoval(); // Sink destroys both
-                        return;
-                    }
-                }
-            }
-        }
-    }
-
-
 }
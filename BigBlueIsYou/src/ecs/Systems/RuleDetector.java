@@ -0,0 +1,169 @@
+package ecs.Systems;
+
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Finds every horizontal and vertical NOUN IS X triple in the grid.
+ * The positions of noun, "is" and right-hand-side (property or noun) text are kept as packed bit
+ * planes, one row at a time and 64 cells to a long, so a whole word of cells is checked with a couple
+ * of shifts and ANDs.  Very large grids spread the rows across a parallel stream.
+ */
+public class RuleDetector {
+
+    public interface Listener {
+        /**
+         * @param row Row of the "is"
+         * @param col Column of the "is"
+         * @param vertical True for a top -> bottom rule, false for a left -> right rule
+         */
+        void found(int row, int col, boolean vertical);
+    }
+
+    // Number of words on the board before the rows are matched in parallel
+    private static final int PARALLEL_THRESHOLD_WORDS = 1 << 14;
+
+    private final Set<String> nounWords;
+    private final Set<String> propertyWords;
+    private final String verbWord;
+
+    private int gridNumRows;
+    private int gridNumCols;
+    private int wordsPerRow;
+
+    private long[] nouns = new long[0];
+    private long[] verbs = new long[0];
+    private long[] rhs = new long[0];
+    private long[] verticalMatches = new long[0];
+    private long[] horizontalMatches = new long[0];
+
+    public RuleDetector(Set<String> nounWords, Set<String> propertyWords, String verbWord) {
+        this.nounWords = nounWords;
+        this.propertyWords = propertyWords;
+        this.verbWord = verbWord;
+    }
+
+    public boolean isSized(int rows, int cols) {
+        return gridNumRows == rows && gridNumCols == cols;
+    }
+
+    /**
+     * Clears the planes and sizes them for the given grid dimensions
+     */
+    public void resize(int rows, int cols) {
+        this.gridNumRows = rows;
+        this.gridNumCols = cols;
+        this.wordsPerRow = (cols + 63) >>> 6;
+
+        int words = rows * wordsPerRow;
+        nouns = new long[words];
+        verbs = new long[words];
+        rhs = new long[words];
+        verticalMatches = new long[words];
+        horizontalMatches = new long[words];
+    }
+
+    /**
+     * Rebuilds all planes from the grid
+     */
+    public void rebuild(String[][] grid) {
+        resize(grid.length, grid.length > 0 ? grid[0].length : 0);
+        for (int i = 0; i < grid.length; i++) {
+            for (int j = 0; j < grid[i].length; j++) {
+                set(i, j, grid[i][j]);
+            }
+        }
+    }
+
+    /**
+     * Updates the planes for a single cell
+     */
+    public void set(int row, int col, String text) {
+        int word = row * wordsPerRow + (col >>> 6);
+        long bit = 1L << col;
+
+        nouns[word] &= ~bit;
+        verbs[word] &= ~bit;
+        rhs[word] &= ~bit;
+
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        if (nounWords.contains(text)) {
+            nouns[word] |= bit;
+            rhs[word] |= bit;
+        }
+        else if (propertyWords.contains(text)) {
+            rhs[word] |= bit;
+        }
+        else if (verbWord.equals(text)) {
+            verbs[word] |= bit;
+        }
+    }
+
+    /**
+     * Reports every rule on the board, in row-major order of the "is", with a vertical rule reported
+     * before a horizontal rule that shares the same "is"
+     */
+    public void detect(Listener listener) {
+        if (gridNumRows * wordsPerRow >= PARALLEL_THRESHOLD_WORDS) {
+            IntStream.range(0, gridNumRows).parallel().forEach(this::matchRow);
+        } else {
+            for (int i = 0; i < gridNumRows; i++) {
+                matchRow(i);
+            }
+        }
+
+        for (int i = 0; i < gridNumRows; i++) {
+            for (int w = 0; w < wordsPerRow; w++) {
+                int index = i * wordsPerRow + w;
+                long vertical = verticalMatches[index];
+                long horizontal = horizontalMatches[index];
+                long matches = vertical | horizontal;
+
+                while (matches != 0) {
+                    int bit = Long.numberOfTrailingZeros(matches);
+                    long mask = 1L << bit;
+                    int col = (w << 6) + bit;
+
+                    if ((vertical & mask) != 0) {
+                        listener.found(i, col, true);
+                    }
+                    if ((horizontal & mask) != 0) {
+                        listener.found(i, col, false);
+                    }
+                    matches &= ~mask;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the vertical and horizontal matches for every "is" in the row
+     */
+    private void matchRow(int row) {
+        int first = row * wordsPerRow;
+
+        for (int w = 0; w < wordsPerRow; w++) {
+            int index = first + w;
+            long is = verbs[index];
+
+            if (is == 0) {
+                verticalMatches[index] = 0;
+                horizontalMatches[index] = 0;
+                continue;
+            }
+
+            // Bring the cell to the left of each bit, and the cell to the right of each bit, in line with it
+            long leftNoun = (nouns[index] << 1) | (w > 0 ? nouns[index - 1] >>> 63 : 0);
+            long rightRhs = (rhs[index] >>> 1) | (w + 1 < wordsPerRow ? rhs[index + 1] << 63 : 0);
+            horizontalMatches[index] = is & leftNoun & rightRhs;
+
+            if (row > 0 && row < gridNumRows - 1) {
+                verticalMatches[index] = is & nouns[index - wordsPerRow] & rhs[index + wordsPerRow];
+            } else {
+                verticalMatches[index] = 0;
+            }
+        }
+    }
+}
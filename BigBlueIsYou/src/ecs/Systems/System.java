@@ -4,6 +4,7 @@ import ecs.Components.Component;
 import ecs.Entities.Entity;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -84,5 +85,22 @@ public abstract class System {
             this.entity = entity;
             this.shouldRemove = shouldRemove;
         }
+
+        @Override
+        public boolean equals(java.lang.Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof EntityUpdate)) {
+                return false;
+            }
+            var update = (EntityUpdate) other;
+            return entity == update.entity && shouldRemove == update.shouldRemove;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(entity.getId(), shouldRemove);
+        }
     }
 }
@@ -3,56 +3,171 @@ package ecs.Systems;
 import ecs.Entities.Entity;
 import edu.usu.graphics.*;
 import org.joml.Vector2f;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import static java.lang.System.out;
 
 public class TileRender extends System {
 
     Graphics2D graphics;
+    // Turns on printing how much of the tile mesh went up to the GPU, for frames where any did
+    private static final boolean DEBUG = false;
     private static final float SCREEN_WIDTH = 1380.0f;  // Match the window width
     private static final float SCREEN_HEIGHT = 1380.0f; // Match the window height
     private final float TILE_SIZE = 32.0f; // Default tile size in pixels
     private int gridNumRows;
     private int gridNumCols;
 
+    // Background tiles are drawn together into an offscreen layer that is reused until one of them
+    // changes.  Floor and grass animate, so a few layers are kept, one for each mix of their frames.
+    private static final int MAX_LAYERS = 9;
+    private static final float BACKGROUND_Z = -1.0f;
+    private final Map<Long, RenderTarget> layers = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, RenderTarget> eldest) {
+            if (size() > MAX_LAYERS) {
+                eldest.getValue().cleanup();
+                return true;
+            }
+            return false;
+        }
+    };
+    private int layerWidth;
+    private int layerHeight;
+
+    // Every other tile keeps a slot in a mesh that stays on the GPU, along with what the slot was
+    // last written with, so only tiles that changed are uploaded again
+    private static class MeshTile {
+        final int slot;
+        int x;
+        int y;
+        TextureRegion image;
+        int frame;
+        float z;
+        float size;
+        int layout;
+        int seen;
+
+        MeshTile(int slot) {
+            this.slot = slot;
+        }
+    }
+    private TileMesh mesh;
+    private final Map<Long, MeshTile> meshTiles = new HashMap<>();
+    // Counts updates, to spot tiles whose entity has gone
+    private int frame;
+    // Changes whenever the grid changes size, which moves every tile
+    private int layout;
+
     public TileRender(Graphics2D graphics) {
         super(ecs.Components.Appearance.class, ecs.Components.Position.class);
         this.graphics = graphics;
     }
 
     public void setNums(String[][] grid) {
+        if (grid.length != gridNumRows || grid[0].length != gridNumCols) {
+            layout++;
+        }
         this.gridNumRows = grid.length;
         this.gridNumCols = grid[0].length;
     }
 
+    /**
+     * The area the grid covers, in the same normalized coordinates the tiles are drawn in
+     */
+    public Rectangle getGridBounds() {
+        float width = gridNumCols * TILE_SIZE / SCREEN_WIDTH * 2.0f;
+        float height = gridNumRows * TILE_SIZE / SCREEN_HEIGHT * 2.0f;
+        return new Rectangle(-width / 2, -height / 2, width, height);
+    }
+
     @Override
     public Set<EntityUpdate> update(double elapsedTime) {
+        renderBackground();
+
+        if (mesh == null) {
+            mesh = new TileMesh();
+        }
+        if (DEBUG && mesh.getBytesUploaded() > 0) {
+            out.println("Tile mesh uploaded " + mesh.getBytesUploaded() + " bytes last frame");
+        }
+        frame++;
         for (var entity : entities.values()) {
-            render(entity);
+            if (!entity.contains(ecs.Components.Background.class)) {
+                updateTile(entity);
+            }
         }
+        // Whatever wasn't visited has left the level
+        var tiles = meshTiles.values().iterator();
+        while (tiles.hasNext()) {
+            MeshTile tile = tiles.next();
+            if (tile.seen != frame) {
+                mesh.remove(tile.slot);
+                tiles.remove();
+            }
+        }
+        graphics.draw(mesh);
+
         // Rendering systems typically don't modify entities, so return empty set
         return new HashSet<>();
     }
 
+    /**
+     * Draws the entity on its own, through the render queue, rather than through the retained mesh
+     */
     public void render(Entity entity) {
         var appearance = entity.get(ecs.Components.Appearance.class);
         var position = entity.get(ecs.Components.Position.class);
 
-        // Calculate center offset to move the grid to the center of the screen
-        float centerX = SCREEN_WIDTH / 2.0f;
-        float centerY = SCREEN_HEIGHT / 2.0f;
+        Rectangle destination = destinationOf(appearance, position, zOf(entity));
+        Rectangle subImage = subImageOf(appearance);
+        if (subImage != null) {
+            // Draw the animation frame
+            graphics.getSprites().add(appearance.image, subImage.left, subImage.top, subImage.width, subImage.height,
+                    destination.left, destination.top, destination.width, destination.height, destination.z,
+                    0.0f, 0.0f, 0.0f, Color.WHITE);
+        } else {
+            // Draw the full image
+            graphics.getSprites().add(appearance.image, destination.left, destination.top, destination.width, destination.height,
+                    destination.z, 0.0f, 0.0f, 0.0f, Color.WHITE);
+        }
+    }
 
-        int posX = (int)(position.x * TILE_SIZE + TILE_SIZE / 2 + centerX - (gridNumCols * TILE_SIZE / 2));
-        int posY = (int)(position.y * TILE_SIZE + TILE_SIZE / 2 + centerY - (gridNumRows * TILE_SIZE / 2));
+    /**
+     * Rewrites the entity's slot in the mesh, but only if it moved, changed type, depth or size, or
+     * its animation moved on to another frame since the slot was last written
+     */
+    private void updateTile(Entity entity) {
+        var appearance = entity.get(ecs.Components.Appearance.class);
+        var position = entity.get(ecs.Components.Position.class);
+        float z = zOf(entity);
 
-        // Convert pixel coordinates to normalized coordinates (-1 to 1)
-        float normalizedX = (posX / SCREEN_WIDTH) * 2.0f - 1.0f;
-        float normalizedY = ((posY / SCREEN_HEIGHT) * 2.0f - 1.0f);
-        float normalizedWidth = (appearance.size / SCREEN_WIDTH) * 2.0f;
-        float normalizedHeight = (appearance.size / SCREEN_HEIGHT) * 2.0f;
+        MeshTile tile = meshTiles.get(entity.getId());
+        if (tile == null) {
+            tile = new MeshTile(mesh.add());
+            meshTiles.put(entity.getId(), tile);
+        } else if (tile.x == position.x && tile.y == position.y && tile.image == appearance.image
+                && tile.frame == appearance.getCurrentFrame() && tile.z == z && tile.size == appearance.size
+                && tile.layout == layout) {
+            tile.seen = frame;
+            return;
+        }
 
-        // Determine z-value based on entity properties
+        tile.x = position.x;
+        tile.y = position.y;
+        tile.image = appearance.image;
+        tile.frame = appearance.getCurrentFrame();
+        tile.z = z;
+        tile.size = appearance.size;
+        tile.layout = layout;
+        tile.seen = frame;
+        mesh.set(tile.slot, destinationOf(appearance, position, z), appearance.image, subImageOf(appearance), Color.WHITE);
+    }
+
+    private float zOf(Entity entity) {
         float zValue = 0.0f; // Default value
         if (entity.contains(ecs.Components.Property.class)) {
             var property = entity.get(ecs.Components.Property.class);
@@ -63,39 +178,134 @@ public class TileRender extends System {
         if (entity.contains(ecs.Components.Object.class)) {
             var object = entity.get(ecs.Components.Object.class);
             if (object.name.equals("floor")) {
-                zValue = -1.0f; // Floor objects are drawn at the bottom
+                zValue = -0.5f; // Floor objects are drawn below everything but the background
             }
         }
+        return zValue;
+    }
 
-        // Create rectangle in normalized coordinates, centered at the position
-        Rectangle destination = new Rectangle(
+    /**
+     * The tile's rectangle in normalized coordinates, centered on its cell
+     */
+    private Rectangle destinationOf(ecs.Components.Appearance appearance, ecs.Components.Position position, float z) {
+        // Calculate center offset to move the grid to the center of the screen
+        float centerX = SCREEN_WIDTH / 2.0f;
+        float centerY = SCREEN_HEIGHT / 2.0f;
+
+        int posX = (int)(position.x * TILE_SIZE + TILE_SIZE / 2 + centerX - (gridNumCols * TILE_SIZE / 2));
+        int posY = (int)(position.y * TILE_SIZE + TILE_SIZE / 2 + centerY - (gridNumRows * TILE_SIZE / 2));
+
+        // Convert pixel coordinates to normalized coordinates (-1 to 1)
+        float normalizedX = (posX / SCREEN_WIDTH) * 2.0f - 1.0f;
+        float normalizedY = ((posY / SCREEN_HEIGHT) * 2.0f - 1.0f);
+        float normalizedWidth = (appearance.size / SCREEN_WIDTH) * 2.0f;
+        float normalizedHeight = (appearance.size / SCREEN_HEIGHT) * 2.0f;
+
+        return new Rectangle(
                 normalizedX - (normalizedWidth / 2),
                 normalizedY - (normalizedHeight / 2),
                 normalizedWidth,
                 normalizedHeight,
-                zValue
+                z
         );
+    }
 
-        // Create center point for rotation
-        Vector2f center = new Vector2f(normalizedX, normalizedY);
-
-        if (appearance.isAnimated()) {
-            // Calculate sub-image dimensions
-            int subImageWidth = appearance.image.getWidth() / appearance.getTotalFrames();
-            int subImageHeight = appearance.image.getHeight();
-
-            // Create sub-image rectangle
-            Rectangle subImage = new Rectangle(
-                    subImageWidth * appearance.getCurrentFrame(),
-                    0,
-                    subImageWidth,
-                    subImageHeight
-            );
-            // Draw the sub-image with rotation and center
-            graphics.draw(appearance.image, destination, subImage, 0.0f, center, Color.WHITE);
-        } else {
-            // Draw the full image
-            graphics.draw(appearance.image, destination, Color.WHITE);
+    /**
+     * The current frame of an animated sprite sheet, or null to draw the whole image
+     */
+    private static Rectangle subImageOf(ecs.Components.Appearance appearance) {
+        if (!appearance.isAnimated()) {
+            return null;
+        }
+        int subImageWidth = appearance.image.getWidth() / appearance.getTotalFrames();
+        int subImageHeight = appearance.image.getHeight();
+        return new Rectangle(
+                subImageWidth * appearance.getCurrentFrame(),
+                0,
+                subImageWidth,
+                subImageHeight
+        );
+    }
+
+    /**
+     * Deletes the cached background layers and the tile mesh
+     */
+    public void cleanup() {
+        deleteLayers();
+        if (mesh != null) {
+            mesh.cleanup();
+            mesh = null;
         }
+        meshTiles.clear();
+    }
+
+    private void deleteLayers() {
+        for (var layer : layers.values()) {
+            layer.cleanup();
+        }
+        layers.clear();
+    }
+
+    /**
+     * Draws the background tiles as one quad, first rendering them into a layer if their
+     * current look hasn't been seen before.  Must come before anything else is drawn this frame.
+     */
+    private void renderBackground() {
+        long signature = 0;
+        boolean any = false;
+        for (var entity : entities.values()) {
+            if (entity.contains(ecs.Components.Background.class)) {
+                signature += signatureOf(entity);
+                any = true;
+            }
+        }
+        if (!any) {
+            return;
+        }
+        signature = signature * 31 + gridNumRows * 1009L + gridNumCols;
+
+        // The layer matches the grid's size on screen pixel for pixel; if the window changes size, start over
+        // The screen shows 2 units across and 2 * height / width units down, see Graphics2D's projection
+        Rectangle bounds = getGridBounds();
+        int frameWidth = graphics.getFrameBufferWidth();
+        int frameHeight = graphics.getFrameBufferHeight();
+        float screenHeight = 2.0f * frameHeight / frameWidth;
+        int width = Math.max(1, Math.round(bounds.width / 2 * frameWidth));
+        int height = Math.max(1, Math.round(bounds.height / screenHeight * frameHeight));
+        if (width != layerWidth || height != layerHeight) {
+            deleteLayers();
+            layerWidth = width;
+            layerHeight = height;
+        }
+
+        RenderTarget layer = layers.get(signature);
+        if (layer == null) {
+            layer = new RenderTarget(width, height);
+            graphics.renderTo(layer, bounds, graphics.getClearColor(), () -> {
+                for (var entity : entities.values()) {
+                    if (entity.contains(ecs.Components.Background.class)) {
+                        render(entity);
+                    }
+                }
+            });
+            layers.put(signature, layer);
+        }
+
+        bounds.z = BACKGROUND_Z;
+        Rectangle upright = new Rectangle(0, height, width, -height);
+        graphics.draw(layer.getTexture(), bounds, upright, 0.0f, new Vector2f(), Color.WHITE);
+    }
+
+    /**
+     * Mixes where a background tile is and what it currently shows into a hash; the hashes of all
+     * the tiles are summed, so the order the tiles are visited in doesn't matter
+     */
+    private static long signatureOf(Entity entity) {
+        var appearance = entity.get(ecs.Components.Appearance.class);
+        var position = entity.get(ecs.Components.Position.class);
+        long hash = position.x * 0x9E3779B97F4A7C15L + position.y;
+        hash = hash * 0xBF58476D1CE4E5B9L + java.lang.System.identityHashCode(appearance.image);
+        hash = hash * 0x94D049BB133111EBL + appearance.getCurrentFrame();
+        return hash ^ (hash >>> 31);
     }
 }
@@ -40,13 +40,14 @@ public class BufferManager implements AutoCloseable {
     public static final int BUFFER_TYPE_SOLID_COLOR = 0;
     public static final int BUFFER_TYPE_TEXTURE = 1;
     public static final int BUFFER_TYPE_FONT = 2;
+    public static final int BUFFER_TYPE_SPRITE = 3;
     
     // Buffer configurations
     private static class BufferConfig {
         int vaoId;
         int vboPositions;
-        int vboColors; // For solid color buffers
-        int vboTexCoords; // For texture buffers
+        int vboColors; // For solid color and sprite buffers
+        int vboTexCoords; // For texture, font and sprite buffers
         int vboIndices;
         int maxVertices;
         int maxIndices;
@@ -97,6 +98,7 @@ public class BufferManager implements AutoCloseable {
         buffersByType.put(BUFFER_TYPE_SOLID_COLOR, new HashMap<>());
         buffersByType.put(BUFFER_TYPE_TEXTURE, new HashMap<>());
         buffersByType.put(BUFFER_TYPE_FONT, new HashMap<>());
+        buffersByType.put(BUFFER_TYPE_SPRITE, new HashMap<>());
         
         // Initialize reusable buffers
         reuseFloatBuffer = MemoryUtil.memAllocFloat(MAX_REUSE_BUFFER_SIZE);
@@ -133,6 +135,16 @@ public class BufferManager implements AutoCloseable {
         return getOrCreateBuffer(BUFFER_TYPE_FONT, requiredVertices, requiredIndices);
     }
     
+    /**
+     * Gets or creates a buffer configuration for batched sprite rendering
+     * @param requiredVertices Number of vertices needed
+     * @param requiredIndices Number of indices needed
+     * @return The buffer configuration ID
+     */
+    public int getSpriteBuffer(int requiredVertices, int requiredIndices) {
+        return getOrCreateBuffer(BUFFER_TYPE_SPRITE, requiredVertices, requiredIndices);
+    }
+    
     /**
      * Updates a solid color buffer with new data
      * @param bufferId The buffer ID
@@ -161,6 +173,36 @@ public class BufferManager implements AutoCloseable {
         glBindVertexArray(0);
     }
     
+    /**
+     * Updates a solid color buffer with the start of the arrays, which may be longer than what is used
+     * @param bufferId The buffer ID
+     * @param positions Vertex positions
+     * @param colors Vertex colors
+     * @param indices Vertex indices
+     * @param vertices How many vertices to upload
+     * @param indexCount How many indices to upload
+     */
+    public void updateSolidColorBuffer(int bufferId, float[] positions, float[] colors, int[] indices, int vertices, int indexCount) {
+        BufferConfig config = buffersByType.get(BUFFER_TYPE_SOLID_COLOR).get(bufferId);
+        if (config == null) {
+            throw new IllegalArgumentException("Invalid solid color buffer ID: " + bufferId);
+        }
+        
+        glBindVertexArray(config.vaoId);
+        
+        // Update positions
+        updateFloatBuffer(config.vboPositions, positions, vertices * 3);
+        
+        // Update colors
+        updateFloatBuffer(config.vboColors, colors, vertices * 3);
+        
+        // Update indices
+        updateIntBuffer(config.vboIndices, indices, indexCount);
+        
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+    }
+    
     /**
      * Updates a texture buffer with new data
      * @param bufferId The buffer ID
@@ -217,22 +259,63 @@ public class BufferManager implements AutoCloseable {
         glBindVertexArray(0);
     }
     
+    /**
+     * Updates a sprite buffer with the start of the arrays, which may be longer than what is used
+     * @param bufferId The buffer ID
+     * @param positions Vertex positions, already transformed
+     * @param texCoords Texture coordinates
+     * @param colors Vertex colors
+     * @param indices Vertex indices
+     * @param vertices How many vertices to upload
+     * @param indexCount How many indices to upload
+     */
+    public void updateSpriteBuffer(int bufferId, float[] positions, float[] texCoords, float[] colors, int[] indices, int vertices, int indexCount) {
+        BufferConfig config = buffersByType.get(BUFFER_TYPE_SPRITE).get(bufferId);
+        if (config == null) {
+            throw new IllegalArgumentException("Invalid sprite buffer ID: " + bufferId);
+        }
+        
+        glBindVertexArray(config.vaoId);
+        
+        // Update positions
+        updateFloatBuffer(config.vboPositions, positions, vertices * 3);
+        
+        // Update texture coordinates
+        updateFloatBuffer(config.vboTexCoords, texCoords, vertices * 2);
+        
+        // Update colors
+        updateFloatBuffer(config.vboColors, colors, vertices * 3);
+        
+        // Update indices
+        updateIntBuffer(config.vboIndices, indices, indexCount);
+        
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+    }
+    
     /**
      * Helper method to update a float buffer with minimal allocations
      */
     private void updateFloatBuffer(int vboId, float[] data) {
+        updateFloatBuffer(vboId, data, data.length);
+    }
+
+    /**
+     * Uploads only the first length values of data
+     */
+    private void updateFloatBuffer(int vboId, float[] data, int length) {
         glBindBuffer(GL_ARRAY_BUFFER, vboId);
         
-        if (data.length <= MAX_REUSE_BUFFER_SIZE) {
+        if (length <= MAX_REUSE_BUFFER_SIZE) {
             // Use the reusable buffer if possible
             reuseFloatBuffer.clear();
-            reuseFloatBuffer.put(data);
+            reuseFloatBuffer.put(data, 0, length);
             reuseFloatBuffer.flip();
             glBufferSubData(GL_ARRAY_BUFFER, 0, reuseFloatBuffer);
         } else {
             // Fall back to temporary allocation for large buffers
-            FloatBuffer buffer = MemoryUtil.memAllocFloat(data.length);
-            buffer.put(data).flip();
+            FloatBuffer buffer = MemoryUtil.memAllocFloat(length);
+            buffer.put(data, 0, length).flip();
             glBufferSubData(GL_ARRAY_BUFFER, 0, buffer);
             MemoryUtil.memFree(buffer);
         }
@@ -242,18 +325,25 @@ public class BufferManager implements AutoCloseable {
      * Helper method to update an int buffer with minimal allocations
      */
     private void updateIntBuffer(int vboId, int[] data) {
+        updateIntBuffer(vboId, data, data.length);
+    }
+
+    /**
+     * Uploads only the first length values of data
+     */
+    private void updateIntBuffer(int vboId, int[] data, int length) {
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vboId);
         
-        if (data.length <= MAX_REUSE_BUFFER_SIZE) {
+        if (length <= MAX_REUSE_BUFFER_SIZE) {
             // Use the reusable buffer if possible
             reuseIntBuffer.clear();
-            reuseIntBuffer.put(data);
+            reuseIntBuffer.put(data, 0, length);
             reuseIntBuffer.flip();
             glBufferSubData(GL_ELEMENT_ARRAY_BUFFER, 0, reuseIntBuffer);
         } else {
             // Fall back to temporary allocation for large buffers
-            IntBuffer buffer = MemoryUtil.memAllocInt(data.length);
-            buffer.put(data).flip();
+            IntBuffer buffer = MemoryUtil.memAllocInt(length);
+            buffer.put(data, 0, length).flip();
             glBufferSubData(GL_ELEMENT_ARRAY_BUFFER, 0, buffer);
             MemoryUtil.memFree(buffer);
         }
@@ -416,6 +506,15 @@ public class BufferManager implements AutoCloseable {
             glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
         }
         
+        // Sprites carry their color per vertex, after the texture coordinates
+        if (bufferType == BUFFER_TYPE_SPRITE) {
+            vboColors = glGenBuffers();
+            glBindBuffer(GL_ARRAY_BUFFER, vboColors);
+            glBufferData(GL_ARRAY_BUFFER, (long) maxVertices * 3 * Float.BYTES, GL_DYNAMIC_DRAW);
+            glEnableVertexAttribArray(2);
+            glVertexAttribPointer(2, 3, GL_FLOAT, false, 0, 0);
+        }
+        
         // Create index VBO
         int vboIndices = glGenBuffers();
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vboIndices);
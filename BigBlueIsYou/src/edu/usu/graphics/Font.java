@@ -21,8 +21,7 @@ THE SOFTWARE.
 */
 package edu.usu.graphics;
 
-import edu.usu.utils.Tuple7;
-import org.joml.Matrix4f;
+import edu.usu.utils.Tuple6;
 import org.joml.Vector2f;
 
 import java.io.File;
@@ -72,24 +71,12 @@ public class Font {
         return (height / texture.getHeight()) * totalWidth;
     }
 
-    public ArrayList<Tuple7<Texture, Rectangle, Vector2f, Vector2f, Vector2f, Vector2f, Matrix4f>> drawText(String text, float left, float top, float width, float z) {
-        Matrix4f mIdentity = new Matrix4f();
-        mIdentity.identity();
-
-        return drawText(text, left, top, width, z, mIdentity);
-    }
-
-    public ArrayList<Tuple7<Texture, Rectangle, Vector2f, Vector2f, Vector2f, Vector2f, Matrix4f>> drawText(String text, float left, float top, float width, float z, float rotation, Vector2f center) {
-        Matrix4f mRotation = new Matrix4f();
-        mRotation.translate(center.x, center.y, 0);
-        mRotation.rotateZ(rotation);
-        mRotation.translate(-center.x, -center.y, 0);
-
-        return drawText(text, left, top, width, z, mRotation);
-    }
-
-    private ArrayList<Tuple7<Texture, Rectangle, Vector2f, Vector2f, Vector2f, Vector2f, Matrix4f>> drawText(String text, float left, float top, float width, float z, Matrix4f mRotation) {
-        ArrayList<Tuple7<Texture, Rectangle, Vector2f, Vector2f, Vector2f, Vector2f, Matrix4f>> tuples = new ArrayList<>();
+    /**
+     * A rectangle and its texture coordinates for each character.  Any rotation of the text is
+     * applied to these rectangles' corners when they are drawn.
+     */
+    public ArrayList<Tuple6<Texture, Rectangle, Vector2f, Vector2f, Vector2f, Vector2f>> drawText(String text, float left, float top, float width, float z) {
+        ArrayList<Tuple6<Texture, Rectangle, Vector2f, Vector2f, Vector2f, Vector2f>> tuples = new ArrayList<>();
 
         char[] characters = text.toCharArray();
 
@@ -117,7 +104,7 @@ public class Font {
             float charHeight = (texture.getHeight() / (float) totalWidth) * width;
             Rectangle r = new Rectangle(currentLeft, top, charWidth, charHeight, z);
 
-            tuples.add(new Tuple7<>(texture.getTexture(), r, v1, v2, v3, v4, mRotation));
+            tuples.add(new Tuple6<>(texture.getTexture(), r, v1, v2, v3, v4));
 
             currentLeft += charWidth;
         }
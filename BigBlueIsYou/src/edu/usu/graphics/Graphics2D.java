@@ -21,6 +21,7 @@ THE SOFTWARE.
 */
 package edu.usu.graphics;
 
+import edu.usu.utils.Tuple6;
 import org.joml.Matrix4f;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
@@ -31,6 +32,7 @@ import org.lwjgl.system.MemoryStack;
 
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.lwjgl.glfw.Callbacks.*;
@@ -51,23 +53,26 @@ public class Graphics2D  implements AutoCloseable {
     private final RenderQueue renderQueue = new RenderQueue();
     
     private Matrix4f mProjection;
+    private Color clearColor;
     private Matrix4f mModelIdentity;
     private ShaderProgram shaderSolidColor;
-    private ShaderProgram shaderTexture;
-    private ShaderProgram shaderFont;
+    private ShaderProgram shaderSprite;
     
     // Cached uniform locations
     private int uniformSolidColorProjectionLocation;
     private int uniformSolidColorModelLocation;
-    private int uniformTextureProjectionLocation;
-    private int uniformTextureModelLocation;
-    private int uniformTextureColorLocation;
-    private int uniformFontProjectionLocation;
-    private int uniformFontModelLocation;
-    private int uniformFontColorLocation;
+    private int uniformSpriteProjectionLocation;
     
     // Buffer manager for reusing VAOs and VBOs
     private BufferManager bufferManager;
+
+    // Vertex arrays each batch is written into, kept from frame to frame
+    private final Graphics2DUtils.BuffersSprite spriteBuffers = new Graphics2DUtils.BuffersSprite();
+    private final Graphics2DUtils.BuffersColor colorBuffers = new Graphics2DUtils.BuffersColor();
+    // Where each texture's draw starts within the sprite batch being drawn
+    private Texture[] runTextures = new Texture[16];
+    private int[] runStarts = new int[16];
+    private int textureRuns;
     
     // Frame counter for periodic buffer compaction
     private int frameCount = 0;
@@ -87,6 +92,7 @@ public class Graphics2D  implements AutoCloseable {
         glfwSetInputMode(window, GLFW_STICKY_KEYS, GLFW_FALSE);
 
         // Set the clear color
+        this.clearColor = clearColor;
         glClearColor(clearColor.r, clearColor.g, clearColor.b, clearColor.a);
         // Enable support for blending so that alpha is handled in textures correctly
         glEnable(GL_BLEND);
@@ -124,20 +130,13 @@ public class Graphics2D  implements AutoCloseable {
         this.mModelIdentity.identity();
 
         shaderSolidColor = createShader("resources/shaders/solid-color.vert", "resources/shaders/solid-color.frag");
-        shaderTexture = createShader("resources/shaders/texture.vert", "resources/shaders/texture.frag");
-        shaderFont = createShader("resources/shaders/font.vert", "resources/shaders/font.frag");
+        shaderSprite = createShader("resources/shaders/sprite.vert", "resources/shaders/texture.frag");
         
         // Cache uniform locations
         uniformSolidColorProjectionLocation = shaderSolidColor.getUniformLocation("mProjection");
         uniformSolidColorModelLocation = shaderSolidColor.getUniformLocation("mModel");
         
-        uniformTextureProjectionLocation = shaderTexture.getUniformLocation("mProjection");
-        uniformTextureModelLocation = shaderTexture.getUniformLocation("mModel");
-        uniformTextureColorLocation = shaderTexture.getUniformLocation("color");
-        
-        uniformFontProjectionLocation = shaderFont.getUniformLocation("mProjection");
-        uniformFontModelLocation = shaderFont.getUniformLocation("mModel");
-        uniformFontColorLocation = shaderFont.getUniformLocation("color");
+        uniformSpriteProjectionLocation = shaderSprite.getUniformLocation("mProjection");
         
         // Initialize the buffer manager
         bufferManager = new BufferManager();
@@ -155,6 +154,18 @@ public class Graphics2D  implements AutoCloseable {
         return this.window;
     }
 
+    public int getFrameBufferWidth() {
+        return this.frameBufferWidth;
+    }
+
+    public int getFrameBufferHeight() {
+        return this.frameBufferHeight;
+    }
+
+    public Color getClearColor() {
+        return this.clearColor;
+    }
+
     public void begin() {
         glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
         glViewport(0, 0, frameBufferWidth, frameBufferHeight);
@@ -180,10 +191,38 @@ public class Graphics2D  implements AutoCloseable {
         glfwSwapBuffers(window);
     }
 
+    /**
+     * Draws into an offscreen target instead of the window.  Everything the draw callback queues is
+     * rendered straight away into the target, with view mapped onto the whole target.
+     * Must be called outside of begin/end, so the window's queued drawing isn't mixed in.
+     */
+    public void renderTo(RenderTarget target, Rectangle view, Color background, Runnable draw) {
+        if (!renderQueue.isEmpty()) {
+            throw new IllegalStateException("renderTo can't be used between begin and end");
+        }
+
+        Matrix4f screenProjection = new Matrix4f(mProjection);
+        mProjection.setOrtho2D(view.left, view.left + view.width, view.top + view.height, view.top);
+
+        target.bind();
+        glViewport(0, 0, target.getWidth(), target.getHeight());
+        glClearColor(background.r, background.g, background.b, background.a);
+        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+
+        draw.run();
+        renderQueue.sort();
+        processRenderQueue();
+        renderQueue.clear();
+
+        target.unbind();
+        glViewport(0, 0, frameBufferWidth, frameBufferHeight);
+        glClearColor(clearColor.r, clearColor.g, clearColor.b, clearColor.a);
+        mProjection.set(screenProjection);
+    }
+
     public void close() {
         shaderSolidColor.cleanup();
-        shaderTexture.cleanup();
-        shaderFont.cleanup();
+        shaderSprite.cleanup();
         
         // Clean up the buffer manager
         bufferManager.close();
@@ -201,29 +240,19 @@ public class Graphics2D  implements AutoCloseable {
     }
 
     public void draw(Rectangle destination, Color color) {
-        renderQueue.add(destination, color, mModelIdentity);
+        renderQueue.add(destination, color, 0, 0, 0);
     }
 
     public void draw(Triangle triangle, Color color) {
-        renderQueue.add(triangle, color, mModelIdentity);
+        renderQueue.add(triangle, color, 0, 0, 0);
     }
 
     public void draw(Triangle triangle, float rotation, Vector2f center, Color color) {
-        Matrix4f mRotation = new Matrix4f();
-        mRotation.translate(center.x, center.y, 0);
-        mRotation.rotateZ(rotation);
-        mRotation.translate(-center.x, -center.y, 0);
-        renderQueue.add(triangle, color, mRotation);
+        renderQueue.add(triangle, color, rotation, center.x, center.y);
     }
 
     public void draw(Texture texture, Triangle triangle, Color color) {
-        // Default texture coordinates: (0,0), (1,0), (0,1)
-        TriangleTexCoords texCoords = new TriangleTexCoords(
-            new Vector2f(0.0f, 0.0f),
-            new Vector2f(1.0f, 0.0f),
-            new Vector2f(0.0f, 1.0f)
-        );
-        renderQueue.add(texture, triangle, texCoords, mModelIdentity, new Vector3f(color.r, color.g, color.b));
+        draw(texture, triangle, 0, new Vector2f(), color);
     }
 
     public void draw(Texture texture, Triangle triangle, float rotation, Vector2f center, Color color) {
@@ -233,174 +262,132 @@ public class Graphics2D  implements AutoCloseable {
             new Vector2f(1.0f, 0.0f),
             new Vector2f(0.0f, 1.0f)
         );
-        Matrix4f mRotation = new Matrix4f();
-        mRotation.translate(center.x, center.y, 0);
-        mRotation.rotateZ(rotation);
-        mRotation.translate(-center.x, -center.y, 0);
-        renderQueue.add(texture, triangle, texCoords, mRotation, new Vector3f(color.r, color.g, color.b));
+        renderQueue.add(texture, triangle, texCoords, rotation, center.x, center.y, color);
     }
 
     public void draw(Texture texture, Triangle triangle, TriangleTexCoords texCoords, Color color) {
-        renderQueue.add(texture, triangle, texCoords, mModelIdentity, new Vector3f(color.r, color.g, color.b));
+        renderQueue.add(texture, triangle, texCoords, 0, 0, 0, color);
     }
 
     public void draw(Texture texture, Triangle triangle, TriangleTexCoords texCoords, float rotation, Vector2f center, Color color) {
-        Matrix4f mRotation = new Matrix4f();
-        mRotation.translate(center.x, center.y, 0);
-        mRotation.rotateZ(rotation);
-        mRotation.translate(-center.x, -center.y, 0);
-        renderQueue.add(texture, triangle, texCoords, mRotation, new Vector3f(color.r, color.g, color.b));
+        renderQueue.add(texture, triangle, texCoords, rotation, center.x, center.y, color);
     }
 
     public void draw(Rectangle destination, float rotation, Vector2f center, Color color) {
-        Matrix4f mRotation = new Matrix4f();
-        mRotation.translate(center.x, center.y, 0);
-        mRotation.rotateZ(rotation);
-        mRotation.translate(-center.x, -center.y, 0);
-        renderQueue.add(destination, color, mRotation);
+        renderQueue.add(destination, color, rotation, center.x, center.y);
     }
 
     public void draw(Texture texture, Rectangle destination, Color color) {
-        renderQueue.add(texture, destination, null, mModelIdentity, new Vector3f(color.r, color.g, color.b));
+        renderQueue.getSprites().add(texture, destination.left, destination.top, destination.width, destination.height, destination.z,
+                0, 0, 1, 1, color.r, color.g, color.b, 0, 0, 0);
     }
 
     public void draw(Texture texture, Rectangle destination, float rotation, Vector2f center, Color color) {
-        Matrix4f mRotation = new Matrix4f();
-        mRotation.translate(center.x, center.y, 0);
-        mRotation.rotateZ(rotation);
-        mRotation.translate(-center.x, -center.y, 0);
-        renderQueue.add(texture, destination, null, mRotation, new Vector3f(color.r, color.g, color.b));
+        renderQueue.getSprites().add(texture, destination.left, destination.top, destination.width, destination.height, destination.z,
+                0, 0, 1, 1, color.r, color.g, color.b, rotation, center.x, center.y);
     }
 
     public void draw(Texture texture, Rectangle destination, Rectangle subImage, float rotation, Vector2f center, Color color) {
-        Matrix4f mRotation = new Matrix4f();
-        mRotation.translate(center.x, center.y, 0);
-        mRotation.rotateZ(rotation);
-        mRotation.translate(-center.x, -center.y, 0);
-        renderQueue.add(texture, destination, subImage, mRotation, new Vector3f(color.r, color.g, color.b));
+        if (subImage == null) {
+            draw(texture, destination, rotation, center, color);
+            return;
+        }
+        float texWidth = texture.getWidth();
+        float texHeight = texture.getHeight();
+        renderQueue.getSprites().add(texture, destination.left, destination.top, destination.width, destination.height, destination.z,
+                subImage.left / texWidth, subImage.top / texHeight,
+                (subImage.left + subImage.width) / texWidth, (subImage.top + subImage.height) / texHeight,
+                color.r, color.g, color.b, rotation, center.x, center.y);
     }
 
-    public void drawTextByWidth(Font font, String text, float left, float top, float width, float z, Color color) {
-        var tuples = font.drawText(text, left, top, width, z);
-        for (var tuple : tuples) {
-            renderQueue.add(
-                    tuple.item1(),
-                    tuple.item2(),
-                    tuple.item3(),
-                    tuple.item4(),
-                    tuple.item5(),
-                    tuple.item6(),
-                    tuple.item7(), // Rotation
-                    new Vector3f(color.r, color.g, color.b));
+    /**
+     * Queues a retained mesh; whatever changed in it since it was last drawn is uploaded when it is drawn
+     */
+    public void draw(TileMesh mesh) {
+        renderQueue.add(mesh);
+    }
+
+    public void draw(TextureRegion region, Rectangle destination, Color color) {
+        renderQueue.getSprites().add(region, destination.left, destination.top, destination.width, destination.height, destination.z,
+                0, 0, 0, color);
+    }
+
+    public void draw(TextureRegion region, Rectangle destination, float rotation, Vector2f center, Color color) {
+        renderQueue.getSprites().add(region, destination.left, destination.top, destination.width, destination.height, destination.z,
+                rotation, center.x, center.y, color);
+    }
+
+    /**
+     * @param subImage Part of the region to draw, in the region's own pixels
+     */
+    public void draw(TextureRegion region, Rectangle destination, Rectangle subImage, float rotation, Vector2f center, Color color) {
+        if (subImage == null) {
+            draw(region, destination, rotation, center, color);
+            return;
         }
+        renderQueue.getSprites().add(region, subImage.left, subImage.top, subImage.width, subImage.height,
+                destination.left, destination.top, destination.width, destination.height, destination.z,
+                rotation, center.x, center.y, color);
+    }
+
+    /**
+     * Textured rectangles queued so far this frame.  Code drawing many sprites a frame can add them
+     * here directly, without building a Rectangle or Vector2f for each one.
+     */
+    public SpriteCommandBuffer getSprites() {
+        return renderQueue.getSprites();
+    }
+
+    public void drawTextByWidth(Font font, String text, float left, float top, float width, float z, Color color) {
+        queueText(font.drawText(text, left, top, width, z), 0, 0, 0, color);
     }
 
     public void drawTextByWidth(Font font, String text, float left, float top, float width, Color color) {
-        var tuples = font.drawText(text, left, top,  width, 0.0f);
-        for (var tuple : tuples) {
-            renderQueue.add(
-                    tuple.item1(),
-                    tuple.item2(),
-                    tuple.item3(),
-                    tuple.item4(),
-                    tuple.item5(),
-                    tuple.item6(),
-                    tuple.item7(), // Rotation
-                    new Vector3f(color.r, color.g, color.b));
-        }
+        queueText(font.drawText(text, left, top, width, 0.0f), 0, 0, 0, color);
     }
 
     public void drawTextByWidth(Font font, String text, float left, float top, float width, float z, float rotation, Vector2f center, Color color) {
-        var tuples = font.drawText(text, left, top, width, z, rotation, center);
-        for (var tuple : tuples) {
-            renderQueue.add(
-                    tuple.item1(),
-                    tuple.item2(),
-                    tuple.item3(),
-                    tuple.item4(),
-                    tuple.item5(),
-                    tuple.item6(),
-                    tuple.item7(), // Rotation
-                    new Vector3f(color.r, color.g, color.b));
-        }
+        queueText(font.drawText(text, left, top, width, z), rotation, center.x, center.y, color);
     }
 
     public void drawTextByWidth(Font font, String text, float left, float top, float width, float rotation, Vector2f center, Color color) {
-        var tuples = font.drawText(text, left, top, width, 0.0f, rotation, center);
-        for (var tuple : tuples) {
-            renderQueue.add(
-                    tuple.item1(),
-                    tuple.item2(),
-                    tuple.item3(),
-                    tuple.item4(),
-                    tuple.item5(),
-                    tuple.item6(),
-                    tuple.item7(), // Rotation
-                    new Vector3f(color.r, color.g, color.b));
-        }
+        queueText(font.drawText(text, left, top, width, 0.0f), rotation, center.x, center.y, color);
     }
 
     public void drawTextByHeight(Font font, String text, float left, float top, float height, float z, Color color) {
         float width = font.measureTextWidth(text, height);
-        var tuples = font.drawText(text, left, top, width, z);
-        for (var tuple : tuples) {
-            renderQueue.add(
-                    tuple.item1(),
-                    tuple.item2(),
-                    tuple.item3(),
-                    tuple.item4(),
-                    tuple.item5(),
-                    tuple.item6(),
-                    tuple.item7(), // Rotation
-                    new Vector3f(color.r, color.g, color.b));
-        }
+        queueText(font.drawText(text, left, top, width, z), 0, 0, 0, color);
     }
 
     public void drawTextByHeight(Font font, String text, float left, float top, float height, Color color) {
         float width = font.measureTextWidth(text, height);
-        var tuples = font.drawText(text, left, top, width, 0.0f);
-        for (var tuple : tuples) {
-            renderQueue.add(
-                    tuple.item1(),
-                    tuple.item2(),
-                    tuple.item3(),
-                    tuple.item4(),
-                    tuple.item5(),
-                    tuple.item6(),
-                    tuple.item7(), // Rotation
-                    new Vector3f(color.r, color.g, color.b));
-        }
+        queueText(font.drawText(text, left, top, width, 0.0f), 0, 0, 0, color);
     }
 
     public void drawTextByHeight(Font font, String text, float left, float top, float height, float z, float rotation, Vector2f center, Color color) {
         float width = font.measureTextWidth(text, height);
-        var tuples = font.drawText(text, left, top, width, z, rotation, center);
-        for (var tuple : tuples) {
-            renderQueue.add(
-                    tuple.item1(),
-                    tuple.item2(),
-                    tuple.item3(),
-                    tuple.item4(),
-                    tuple.item5(),
-                    tuple.item6(),
-                    tuple.item7(), // Rotation
-                    new Vector3f(color.r, color.g, color.b));
-        }
+        queueText(font.drawText(text, left, top, width, z), rotation, center.x, center.y, color);
     }
 
     public void drawTextByHeight(Font font, String text, float left, float top, float height, float rotation, Vector2f center, Color color) {
         float width = font.measureTextWidth(text, height);
-        var tuples = font.drawText(text, left, top, width, 0.0f, rotation, center);
-        for (var tuple : tuples) {
+        queueText(font.drawText(text, left, top, width, 0.0f), rotation, center.x, center.y, color);
+    }
+
+    /**
+     * Queues each character of the text, all of them rotated about the same center
+     */
+    private void queueText(List<Tuple6<Texture, Rectangle, Vector2f, Vector2f, Vector2f, Vector2f>> glyphs, float rotation, float centerX, float centerY, Color color) {
+        for (var glyph : glyphs) {
             renderQueue.add(
-                    tuple.item1(),
-                    tuple.item2(),
-                    tuple.item3(),
-                    tuple.item4(),
-                    tuple.item5(),
-                    tuple.item6(),
-                    tuple.item7(), // Rotation
-                    new Vector3f(color.r, color.g, color.b));
+                    glyph.item1(),
+                    glyph.item2(),
+                    glyph.item3(),
+                    glyph.item4(),
+                    glyph.item5(),
+                    glyph.item6(),
+                    rotation, centerX, centerY,
+                    color);
         }
     }
 
@@ -505,250 +492,174 @@ public class Graphics2D  implements AutoCloseable {
     }
 
     /**
-     * Process the render queue
+     * Process the render queue.  Operations are drawn in sorted order, and each stretch of them sharing a
+     * pipeline goes out as one batch: one buffer upload, one shader bind and one draw call per texture run.
      */
     private void processRenderQueue() {
-        // Get operations using the type-safe methods
-        List<RenderQueue.RenderLineOperation> lines = renderQueue.getLineOperations();
-        List<RenderQueue.RenderSolidTriangleOperation> trianglesSolidColor = renderQueue.getSolidTriangleOperations();
-        List<RenderQueue.RenderSolidRectangleOperation> rectanglesSolidColor = renderQueue.getSolidRectangleOperations();
-        List<RenderQueue.RenderTexturedRectangleOperation> rectanglesTextured = renderQueue.getTexturedRectangleOperations();
-        List<RenderQueue.RenderTexturedTriangleOperation> trianglesTextured = renderQueue.getTexturedTriangleOperations();
-        List<RenderQueue.RenderTextGlyphOperation> textGlyphs = renderQueue.getTextGlyphOperations();
-
-        renderTrianglesSolidColor(trianglesSolidColor);
-        renderRectanglesSolidColor(rectanglesSolidColor);
-        renderRectanglesTextured(rectanglesTextured);
-        renderTrianglesTextured(trianglesTextured);
-        renderTextGlyphs(textGlyphs);
-        renderLines(lines);
-    }
-
-    private void renderTextGlyphs(List<RenderQueue.RenderTextGlyphOperation> textGlyphs) {
-        if (!textGlyphs.isEmpty()) {
-            Graphics2DUtils.BuffersTexture buffersTextGlyphs = Graphics2DUtils.prepareTextGlyphBuffers(textGlyphs);
-            int bufferId = bufferManager.getFontBuffer(buffersTextGlyphs.positions.length / 3, buffersTextGlyphs.indices.length);
-            bufferManager.updateFontBuffer(bufferId, buffersTextGlyphs.positions, buffersTextGlyphs.coords, buffersTextGlyphs.indices);
-
-            bufferManager.bindBuffer(BufferManager.BUFFER_TYPE_FONT, bufferId);
-            shaderFont.bind();
-
-            try (var stack = MemoryStack.stackPush()) {
-                var matrixBuffer = stack.mallocFloat(16);
-                mProjection.get(matrixBuffer);
-                glUniformMatrix4fv(uniformFontProjectionLocation, false, matrixBuffer);
-
-                Texture currentTexture = null;
-                for (int i = 0; i < textGlyphs.size(); i++) {
-                    var op = textGlyphs.get(i);
-                    Texture texture = op.getTexture();
-                    Matrix4f modelMatrix = op.getTransform();
-                    Vector3f color = op.getColor();
-
-                    // Only bind the texture if it's different from the current one
-                    if (currentTexture != texture) {
-                        if (currentTexture != null) {
-                            glBindTexture(GL_TEXTURE_2D, 0);
-                        }
-                        texture.bind();
-                        currentTexture = texture;
-                    }
-
-                    modelMatrix.get(matrixBuffer);
-                    glUniformMatrix4fv(uniformFontModelLocation, false, matrixBuffer);
-                    glUniform3f(uniformFontColorLocation, color.x, color.y, color.z);
-
-                    glDrawElements(GL_TRIANGLES, 6, GL_UNSIGNED_INT, i * 6 * Integer.BYTES);
-                }
-
-                if (currentTexture != null) {
-                    glBindTexture(GL_TEXTURE_2D, 0);
-                }
+        int count = renderQueue.size();
+        int runStart = 0;
+        while (runStart < count) {
+            RenderQueue.Pipeline pipeline = renderQueue.getType(runStart).pipeline;
+            int runEnd = runStart + 1;
+            while (runEnd < count && renderQueue.getType(runEnd).pipeline == pipeline) {
+                runEnd++;
             }
 
-            shaderFont.unbind();
-            bufferManager.unbindBuffer();
-            bufferManager.releaseBuffer(BufferManager.BUFFER_TYPE_FONT, bufferId);
+            switch (pipeline) {
+                case MESH -> renderMeshes(runStart, runEnd);
+                case SOLID_COLOR -> renderSolidColor(runStart, runEnd);
+                case SPRITE -> renderSprites(runStart, runEnd);
+                case LINE -> renderLines(runStart, runEnd);
+            }
+            runStart = runEnd;
         }
     }
 
-    private void renderTrianglesTextured(List<RenderQueue.RenderTexturedTriangleOperation> triangles) {
-        if (!triangles.isEmpty()) {
-            Graphics2DUtils.BuffersTexture buffersTrianglesTexture = Graphics2DUtils.prepareTrianglesTextureBuffers(triangles);
-            int bufferId = bufferManager.getTextureBuffer(buffersTrianglesTexture.positions.length / 3, buffersTrianglesTexture.indices.length);
-            bufferManager.updateTextureBuffer(bufferId, buffersTrianglesTexture.positions, buffersTrianglesTexture.coords, buffersTrianglesTexture.indices);
-
-            bufferManager.bindBuffer(BufferManager.BUFFER_TYPE_TEXTURE, bufferId);
-            shaderTexture.bind();
-
-            try (var stack = MemoryStack.stackPush()) {
-                var matrixBuffer = stack.mallocFloat(16);
-                mProjection.get(matrixBuffer);
-                glUniformMatrix4fv(uniformTextureProjectionLocation, false, matrixBuffer);
-
-                Texture currentTexture = null;
-                for (int i = 0; i < triangles.size(); i++) {
-                    var op = triangles.get(i);
-                    Texture texture = op.getTexture();
-                    Matrix4f modelMatrix = op.getTransform();
-                    Vector3f color = op.getColor();
-
-                    // Only bind the texture if it's different from the current one
-                    if (currentTexture != texture) {
-                        if (currentTexture != null) {
-                            glBindTexture(GL_TEXTURE_2D, 0);
-                        }
-                        texture.bind();
-                        currentTexture = texture;
-                    }
-
-                    modelMatrix.get(matrixBuffer);
-                    glUniformMatrix4fv(uniformTextureModelLocation, false, matrixBuffer);
-                    glUniform3f(uniformTextureColorLocation, color.x, color.y, color.z);
-
-                    glDrawElements(GL_TRIANGLES, 3, GL_UNSIGNED_INT, i * 3 * Integer.BYTES);
-                }
+    /**
+     * Draws the textured rectangles, textured triangles and glyphs from..to (exclusive) in sorted order.
+     * Their vertices are transformed and tinted up front, so every run that shares a texture is one draw call.
+     */
+    private void renderSprites(int from, int to) {
+        SpriteCommandBuffer sprites = renderQueue.getSprites();
+        List<RenderQueue.RenderTexturedTriangleOperation> triangles = renderQueue.getTexturedTriangleOperations();
+        List<RenderQueue.RenderTextGlyphOperation> textGlyphs = renderQueue.getTextGlyphOperations();
 
-                if (currentTexture != null) {
-                    glBindTexture(GL_TEXTURE_2D, 0);
+        spriteBuffers.clear();
+        textureRuns = 0;
+        for (int order = from; order < to; order++) {
+            int index = renderQueue.getIndex(order);
+            int firstIndex = spriteBuffers.indexCount;
+            Texture texture;
+            switch (renderQueue.getType(order)) {
+                case TEXTURED_RECTANGLE -> {
+                    texture = sprites.getTexture(index);
+                    Graphics2DUtils.addSprite(spriteBuffers, sprites, index);
                 }
-            }
-
-            shaderTexture.unbind();
-            bufferManager.unbindBuffer();
-            bufferManager.releaseBuffer(BufferManager.BUFFER_TYPE_TEXTURE, bufferId);
-        }
-    }
-
-    private void renderRectanglesTextured(List<RenderQueue.RenderTexturedRectangleOperation> rectangles) {
-        if (!rectangles.isEmpty()) {
-            Graphics2DUtils.BuffersTexture buffersTexture = Graphics2DUtils.prepareRectsTextureBuffers(rectangles);
-            int bufferId = bufferManager.getTextureBuffer(buffersTexture.positions.length / 3, buffersTexture.indices.length);
-            bufferManager.updateTextureBuffer(bufferId, buffersTexture.positions, buffersTexture.coords, buffersTexture.indices);
-
-            bufferManager.bindBuffer(BufferManager.BUFFER_TYPE_TEXTURE, bufferId);
-            shaderTexture.bind();
-
-            try (var stack = MemoryStack.stackPush()) {
-                var matrixBuffer = stack.mallocFloat(16);
-                mProjection.get(matrixBuffer);
-                glUniformMatrix4fv(uniformTextureProjectionLocation, false, matrixBuffer);
-
-                Texture currentTexture = null;
-                for (int i = 0; i < rectangles.size(); i++) {
-                    var op = rectangles.get(i);
-                    Texture texture = op.getTexture();
-                    Matrix4f modelMatrix = op.getTransform();
-                    Vector3f color = op.getColor();
-
-                    // Only bind the texture if it's different from the current one
-                    if (currentTexture != texture) {
-                        if (currentTexture != null) {
-                            glBindTexture(GL_TEXTURE_2D, 0);
-                        }
-                        texture.bind();
-                        currentTexture = texture;
-                    }
-
-                    modelMatrix.get(matrixBuffer);
-                    glUniformMatrix4fv(uniformTextureModelLocation, false, matrixBuffer);
-                    glUniform3f(uniformTextureColorLocation, color.x, color.y, color.z);
-
-                    glDrawElements(GL_TRIANGLES, 6, GL_UNSIGNED_INT, i * 6 * Integer.BYTES);
+                case TEXTURED_TRIANGLE -> {
+                    var op = triangles.get(index);
+                    texture = op.getTexture();
+                    Graphics2DUtils.addTriangle(spriteBuffers, op);
                 }
-
-                if (currentTexture != null) {
-                    glBindTexture(GL_TEXTURE_2D, 0);
+                case TEXT_GLYPH -> {
+                    var op = textGlyphs.get(index);
+                    texture = op.getTexture();
+                    Graphics2DUtils.addGlyph(spriteBuffers, op);
                 }
+                default -> throw new IllegalStateException("Not a sprite: " + renderQueue.getType(order));
             }
 
-            shaderTexture.unbind();
-            bufferManager.unbindBuffer();
-            bufferManager.releaseBuffer(BufferManager.BUFFER_TYPE_TEXTURE, bufferId);
+            if (textureRuns == 0 || runTextures[textureRuns - 1] != texture) {
+                if (textureRuns == runTextures.length) {
+                    runTextures = Arrays.copyOf(runTextures, textureRuns * 2);
+                    runStarts = Arrays.copyOf(runStarts, textureRuns * 2);
+                }
+                runTextures[textureRuns] = texture;
+                runStarts[textureRuns] = firstIndex;
+                textureRuns++;
+            }
         }
-    }
 
-    private void renderRectanglesSolidColor(List<RenderQueue.RenderSolidRectangleOperation> rectangles) {
-        if (!rectangles.isEmpty()) {
-            Graphics2DUtils.BuffersColor buffersSolidColor = Graphics2DUtils.prepareRectsSolidColorBuffers(rectangles);
-            int bufferId = bufferManager.getSolidColorBuffer(buffersSolidColor.positions.length / 3, buffersSolidColor.indices.length);
-            bufferManager.updateSolidColorBuffer(bufferId, buffersSolidColor.positions, buffersSolidColor.colors, buffersSolidColor.indices);
+        int bufferId = bufferManager.getSpriteBuffer(spriteBuffers.vertexCount, spriteBuffers.indexCount);
+        bufferManager.updateSpriteBuffer(bufferId, spriteBuffers.positions, spriteBuffers.coords, spriteBuffers.colors,
+                spriteBuffers.indices, spriteBuffers.vertexCount, spriteBuffers.indexCount);
 
-            bufferManager.bindBuffer(BufferManager.BUFFER_TYPE_SOLID_COLOR, bufferId);
-            shaderSolidColor.bind();
+        bufferManager.bindBuffer(BufferManager.BUFFER_TYPE_SPRITE, bufferId);
+        shaderSprite.bind();
 
-            try (var stack = MemoryStack.stackPush()) {
-                var matrixBuffer = stack.mallocFloat(16);
-                mProjection.get(matrixBuffer);
-                glUniformMatrix4fv(uniformSolidColorProjectionLocation, false, matrixBuffer);
+        try (var stack = MemoryStack.stackPush()) {
+            var matrixBuffer = stack.mallocFloat(16);
+            mProjection.get(matrixBuffer);
+            glUniformMatrix4fv(uniformSpriteProjectionLocation, false, matrixBuffer);
 
-                for (int i = 0; i < rectangles.size(); i++) {
-                    var op = rectangles.get(i);
-                    Matrix4f modelMatrix = op.getTransform();
-                    modelMatrix.get(matrixBuffer);
-                    glUniformMatrix4fv(uniformSolidColorModelLocation, false, matrixBuffer);
-                    glDrawElements(GL_TRIANGLES, 6, GL_UNSIGNED_INT, i * 6 * Integer.BYTES);
-                }
+            for (int run = 0; run < textureRuns; run++) {
+                int runEnd = run + 1 < textureRuns ? runStarts[run + 1] : spriteBuffers.indexCount;
+                runTextures[run].bind();
+                glDrawElements(GL_TRIANGLES, runEnd - runStarts[run], GL_UNSIGNED_INT, (long) runStarts[run] * Integer.BYTES);
+                runTextures[run] = null;
             }
 
-            shaderSolidColor.unbind();
-            bufferManager.unbindBuffer();
-            bufferManager.releaseBuffer(BufferManager.BUFFER_TYPE_SOLID_COLOR, bufferId);
+            glBindTexture(GL_TEXTURE_2D, 0);
         }
-    }
 
-    private void renderTrianglesSolidColor(List<RenderQueue.RenderSolidTriangleOperation> triangles) {
-        if (!triangles.isEmpty()) {
-            Graphics2DUtils.BuffersColor buffersSolidColor = Graphics2DUtils.prepareTrisSolidColorBuffers(triangles);
-            int bufferId = bufferManager.getSolidColorBuffer(buffersSolidColor.positions.length / 3, buffersSolidColor.indices.length);
-            bufferManager.updateSolidColorBuffer(bufferId, buffersSolidColor.positions, buffersSolidColor.colors, buffersSolidColor.indices);
+        shaderSprite.unbind();
+        bufferManager.unbindBuffer();
+        bufferManager.releaseBuffer(BufferManager.BUFFER_TYPE_SPRITE, bufferId);
+    }
 
-            bufferManager.bindBuffer(BufferManager.BUFFER_TYPE_SOLID_COLOR, bufferId);
-            shaderSolidColor.bind();
+    private void renderMeshes(int from, int to) {
+        List<TileMesh> meshes = renderQueue.getMeshes();
+        shaderSprite.bind();
 
-            try (var stack = MemoryStack.stackPush()) {
-                var matrixBuffer = stack.mallocFloat(16);
-                mProjection.get(matrixBuffer);
-                glUniformMatrix4fv(uniformSolidColorProjectionLocation, false, matrixBuffer);
+        try (var stack = MemoryStack.stackPush()) {
+            var matrixBuffer = stack.mallocFloat(16);
+            mProjection.get(matrixBuffer);
+            glUniformMatrix4fv(uniformSpriteProjectionLocation, false, matrixBuffer);
 
-                for (int i = 0; i < triangles.size(); i++) {
-                    var op = triangles.get(i);
-                    Matrix4f modelMatrix = op.getTransform();
-                    modelMatrix.get(matrixBuffer);
-                    glUniformMatrix4fv(uniformSolidColorModelLocation, false, matrixBuffer);
-                    glDrawElements(GL_TRIANGLES, 3, GL_UNSIGNED_INT, i * 3 * Integer.BYTES);
-                }
+            for (int order = from; order < to; order++) {
+                int index = renderQueue.getIndex(order);
+                meshes.get(index).draw(renderQueue.getMeshLayer(index));
             }
-
-            shaderSolidColor.unbind();
-            bufferManager.unbindBuffer();
-            bufferManager.releaseBuffer(BufferManager.BUFFER_TYPE_SOLID_COLOR, bufferId);
         }
+
+        shaderSprite.unbind();
     }
 
-    private void renderLines(List<RenderQueue.RenderLineOperation> linex) {
-        if (!linex.isEmpty()) {
-            Graphics2DUtils.BuffersColor buffersLines = Graphics2DUtils.prepareLinesColorBuffers(linex);
-            int bufferId = bufferManager.getSolidColorBuffer(buffersLines.positions.length / 3, buffersLines.indices.length);
-            bufferManager.updateSolidColorBuffer(bufferId, buffersLines.positions, buffersLines.colors, buffersLines.indices);
+    /**
+     * Draws the solid rectangles and triangles from..to (exclusive) in sorted order with one draw call
+     */
+    private void renderSolidColor(int from, int to) {
+        List<RenderQueue.RenderSolidRectangleOperation> rectangles = renderQueue.getSolidRectangleOperations();
+        List<RenderQueue.RenderSolidTriangleOperation> triangles = renderQueue.getSolidTriangleOperations();
+
+        colorBuffers.clear();
+        for (int order = from; order < to; order++) {
+            int index = renderQueue.getIndex(order);
+            if (renderQueue.getType(order) == RenderQueue.RenderType.SOLID_COLOR_RECTANGLE) {
+                Graphics2DUtils.addRectangle(colorBuffers, rectangles.get(index));
+            } else {
+                Graphics2DUtils.addTriangle(colorBuffers, triangles.get(index));
+            }
+        }
 
-            bufferManager.bindBuffer(BufferManager.BUFFER_TYPE_SOLID_COLOR, bufferId);
-            shaderSolidColor.bind();
+        renderColorBuffers(GL_TRIANGLES);
+    }
 
-            try (var stack = MemoryStack.stackPush()) {
-                var matrixBuffer = stack.mallocFloat(16);
-                mProjection.get(matrixBuffer);
-                glUniformMatrix4fv(uniformSolidColorProjectionLocation, false, matrixBuffer);
-                mModelIdentity.get(matrixBuffer);
-                glUniformMatrix4fv(uniformSolidColorModelLocation, false, matrixBuffer);
+    private void renderLines(int from, int to) {
+        List<RenderQueue.RenderLineOperation> lines = renderQueue.getLineOperations();
 
-                glLineWidth(1.5f);
-                glDrawElements(GL_LINES, linex.size() * 2, GL_UNSIGNED_INT, 0);
-            }
+        colorBuffers.clear();
+        for (int order = from; order < to; order++) {
+            Graphics2DUtils.addLine(colorBuffers, lines.get(renderQueue.getIndex(order)));
+        }
+
+        glLineWidth(1.5f);
+        renderColorBuffers(GL_LINES);
+    }
 
-            shaderSolidColor.unbind();
-            bufferManager.unbindBuffer();
-            bufferManager.releaseBuffer(BufferManager.BUFFER_TYPE_SOLID_COLOR, bufferId);
+    /**
+     * Uploads and draws whatever is in colorBuffers.  The vertices are already transformed, so the
+     * whole batch shares the projection and the identity model
+     */
+    private void renderColorBuffers(int mode) {
+        int bufferId = bufferManager.getSolidColorBuffer(colorBuffers.vertexCount, colorBuffers.indexCount);
+        bufferManager.updateSolidColorBuffer(bufferId, colorBuffers.positions, colorBuffers.colors, colorBuffers.indices,
+                colorBuffers.vertexCount, colorBuffers.indexCount);
+
+        bufferManager.bindBuffer(BufferManager.BUFFER_TYPE_SOLID_COLOR, bufferId);
+        shaderSolidColor.bind();
+
+        try (var stack = MemoryStack.stackPush()) {
+            var matrixBuffer = stack.mallocFloat(16);
+            mProjection.get(matrixBuffer);
+            glUniformMatrix4fv(uniformSolidColorProjectionLocation, false, matrixBuffer);
+            mModelIdentity.get(matrixBuffer);
+            glUniformMatrix4fv(uniformSolidColorModelLocation, false, matrixBuffer);
+
+            glDrawElements(mode, colorBuffers.indexCount, GL_UNSIGNED_INT, 0);
         }
+
+        shaderSolidColor.unbind();
+        bufferManager.unbindBuffer();
+        bufferManager.releaseBuffer(BufferManager.BUFFER_TYPE_SOLID_COLOR, bufferId);
     }
 }
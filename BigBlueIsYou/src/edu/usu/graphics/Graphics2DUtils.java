@@ -24,346 +24,317 @@ package edu.usu.graphics;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
 
-import java.util.List;
+import java.util.Arrays;
 
+/**
+ * Writes queued operations into vertex arrays ready to upload.  The arrays are kept from frame to
+ * frame and only grow, so each batch is appended to buffers that were cleared rather than reallocated.
+ */
 public class Graphics2DUtils {
 
+    private static final int INITIAL_VERTICES = 1024;
+
     public static class BuffersColor {
-        public BuffersColor(float[] positions, float[] colors, int[] indices) {
-            this.positions = positions;
-            this.colors = colors;
-            this.indices = indices;
+        public float[] positions = new float[INITIAL_VERTICES * 3];
+        public float[] colors = new float[INITIAL_VERTICES * 3];
+        public int[] indices = new int[INITIAL_VERTICES * 3 / 2];
+        public int vertexCount;
+        public int indexCount;
+
+        public void clear() {
+            vertexCount = 0;
+            indexCount = 0;
         }
 
-        public float[] positions;
-        public float[] colors;
-        public int[] indices;
+        /**
+         * Makes room for this many more vertices and indices
+         */
+        void reserve(int vertices, int indexes) {
+            if (vertexCount + vertices > positions.length / 3) {
+                int capacity = Math.max(vertexCount + vertices, positions.length / 3 * 2);
+                positions = Arrays.copyOf(positions, capacity * 3);
+                colors = Arrays.copyOf(colors, capacity * 3);
+            }
+            if (indexCount + indexes > indices.length) {
+                indices = Arrays.copyOf(indices, Math.max(indexCount + indexes, indices.length * 2));
+            }
+        }
     }
 
-    public static class BuffersTexture {
-        public BuffersTexture(float[] positions, float[] coords, int[] indices) {
-            this.positions = positions;
-            this.coords = coords;
-            this.indices = indices;
+    public static class BuffersSprite {
+        public float[] positions = new float[INITIAL_VERTICES * 3];
+        public float[] coords = new float[INITIAL_VERTICES * 2];
+        public float[] colors = new float[INITIAL_VERTICES * 3];
+        public int[] indices = new int[INITIAL_VERTICES * 3 / 2];
+        public int vertexCount;
+        public int indexCount;
+
+        public void clear() {
+            vertexCount = 0;
+            indexCount = 0;
         }
 
-        public float[] positions;
-        public float[] coords;
-        public int[] indices;
+        /**
+         * Makes room for this many more vertices and indices
+         */
+        void reserve(int vertices, int indexes) {
+            if (vertexCount + vertices > positions.length / 3) {
+                int capacity = Math.max(vertexCount + vertices, positions.length / 3 * 2);
+                positions = Arrays.copyOf(positions, capacity * 3);
+                coords = Arrays.copyOf(coords, capacity * 2);
+                colors = Arrays.copyOf(colors, capacity * 3);
+            }
+            if (indexCount + indexes > indices.length) {
+                indices = Arrays.copyOf(indices, Math.max(indexCount + indexes, indices.length * 2));
+            }
+        }
     }
 
-    public static BuffersColor prepareLinesColorBuffers(List<RenderQueue.RenderLineOperation> operations) {
-        float[] positions = new float[operations.size() * 6];
-        float[] colors = new float[operations.size() * 6];
-        int[] indices = new int[operations.size() * 2];
+    public static void addLine(BuffersColor buffers, RenderQueue.RenderLineOperation op) {
+        buffers.reserve(2, 2);
+        float[] positions = buffers.positions;
+        float[] colors = buffers.colors;
+        int[] indices = buffers.indices;
+        int rIndex = buffers.vertexCount;
+        int iIndex = buffers.indexCount;
 
-        int rIndex = 0;
-        int iIndex = 0;
-        for (var op : operations) {
-            Vector3f start = op.getStart();
-            Vector3f end = op.getEnd();
-            Color color = op.getColor();
+        Vector3f start = op.getStart();
+        Vector3f end = op.getEnd();
+        Color color = op.getColor();
 
-            positions[rIndex * 3 + 0] = start.x;
-            positions[rIndex * 3 + 1] = start.y;
-            positions[rIndex * 3 + 2] = start.z;
+        positions[rIndex * 3 + 0] = start.x;
+        positions[rIndex * 3 + 1] = start.y;
+        positions[rIndex * 3 + 2] = start.z;
 
-            positions[rIndex * 3 + 3] = end.x;
-            positions[rIndex * 3 + 4] = end.y;
-            positions[rIndex * 3 + 5] = end.z;
+        positions[rIndex * 3 + 3] = end.x;
+        positions[rIndex * 3 + 4] = end.y;
+        positions[rIndex * 3 + 5] = end.z;
 
-            colors[rIndex * 3 + 0] = color.r;
-            colors[rIndex * 3 + 1] = color.g;
-            colors[rIndex * 3 + 2] = color.b;
+        putColor(colors, rIndex, 2, color.r, color.g, color.b);
 
-            colors[rIndex * 3 + 3] = color.r;
-            colors[rIndex * 3 + 4] = color.g;
-            colors[rIndex * 3 + 5] = color.b;
+        indices[iIndex + 0] = rIndex + 0;
+        indices[iIndex + 1] = rIndex + 1;
 
-            indices[iIndex + 0] = rIndex + 0;
-            indices[iIndex + 1] = rIndex + 1;
-
-            rIndex += 2;
-            iIndex += 2;
-        }
-
-        return new BuffersColor(positions, colors, indices);
+        buffers.vertexCount += 2;
+        buffers.indexCount += 2;
     }
 
-    public static BuffersColor prepareTrisSolidColorBuffers(List<RenderQueue.RenderSolidTriangleOperation> operations) {
-        float[] positions = new float[operations.size() * 9];
-        float[] colors = new float[operations.size() * 9];
-        int[] indices = new int[operations.size() * 3];
+    public static void addTriangle(BuffersColor buffers, RenderQueue.RenderSolidTriangleOperation op) {
+        buffers.reserve(3, 3);
+        float[] positions = buffers.positions;
+        int rIndex = buffers.vertexCount;
 
-        int rIndex = 0;
-        int iIndex = 0;
-        for (var op : operations) {
-            Triangle triangle = op.getTriangle();
-            Color color = op.getColor();
+        Triangle triangle = op.getTriangle();
+        Color color = op.getColor();
 
-            positions[rIndex * 3 + 0] = triangle.pt1.x;
-            positions[rIndex * 3 + 1] = triangle.pt1.y;
-            positions[rIndex * 3 + 2] = triangle.pt1.z;
+        positions[rIndex * 3 + 0] = triangle.pt1.x;
+        positions[rIndex * 3 + 1] = triangle.pt1.y;
+        positions[rIndex * 3 + 2] = triangle.pt1.z;
 
-            positions[rIndex * 3 + 3] = triangle.pt2.x;
-            positions[rIndex * 3 + 4] = triangle.pt2.y;
-            positions[rIndex * 3 + 5] = triangle.pt2.z;
+        positions[rIndex * 3 + 3] = triangle.pt2.x;
+        positions[rIndex * 3 + 4] = triangle.pt2.y;
+        positions[rIndex * 3 + 5] = triangle.pt2.z;
 
-            positions[rIndex * 3 + 6] = triangle.pt3.x;
-            positions[rIndex * 3 + 7] = triangle.pt3.y;
-            positions[rIndex * 3 + 8] = triangle.pt3.z;
+        positions[rIndex * 3 + 6] = triangle.pt3.x;
+        positions[rIndex * 3 + 7] = triangle.pt3.y;
+        positions[rIndex * 3 + 8] = triangle.pt3.z;
+        rotateVertices(positions, rIndex * 3, 3, op.getRotation(), op.getCenterX(), op.getCenterY());
 
-            colors[rIndex * 3 + 0] = color.r;
-            colors[rIndex * 3 + 1] = color.g;
-            colors[rIndex * 3 + 2] = color.b;
+        putColor(buffers.colors, rIndex, 3, color.r, color.g, color.b);
+        putTriangleIndices(buffers.indices, buffers.indexCount, rIndex);
 
-            colors[rIndex * 3 + 3] = color.r;
-            colors[rIndex * 3 + 4] = color.g;
-            colors[rIndex * 3 + 5] = color.b;
+        buffers.vertexCount += 3;
+        buffers.indexCount += 3;
+    }
 
-            colors[rIndex * 3 + 6] = color.r;
-            colors[rIndex * 3 + 7] = color.g;
-            colors[rIndex * 3 + 8] = color.b;
+    public static void addRectangle(BuffersColor buffers, RenderQueue.RenderSolidRectangleOperation op) {
+        buffers.reserve(4, 6);
+        int rIndex = buffers.vertexCount;
 
-            indices[iIndex + 0] = rIndex + 0;
-            indices[iIndex + 1] = rIndex + 1;
-            indices[iIndex + 2] = rIndex + 2;
+        Rectangle rect = op.getRectangle();
+        Color color = op.getColor();
 
-            rIndex += 3;
-            iIndex += 3;
-        }
+        putQuad(buffers.positions, rIndex, rect.left, rect.top, rect.left + rect.width, rect.top + rect.height, rect.z);
+        rotateVertices(buffers.positions, rIndex * 3, 4, op.getRotation(), op.getCenterX(), op.getCenterY());
+        putColor(buffers.colors, rIndex, 4, color.r, color.g, color.b);
+        putQuadIndices(buffers.indices, buffers.indexCount, rIndex);
 
-        return new BuffersColor(positions, colors, indices);
+        buffers.vertexCount += 4;
+        buffers.indexCount += 6;
     }
 
-    public static BuffersColor prepareRectsSolidColorBuffers(List<RenderQueue.RenderSolidRectangleOperation> operations) {
-        float[] positions = new float[operations.size() * 12];
-        float[] colors = new float[operations.size() * 12];
-        int[] indices = new int[operations.size() * 6];
-
-        int rIndex = 0;
-        int iIndex = 0;
-        for (var op : operations) {
-            Rectangle rect = op.getRectangle();
-            Color color = op.getColor();
-
-            positions[rIndex * 3 + 0] = rect.left;
-            positions[rIndex * 3 + 1] = rect.top;
-            positions[rIndex * 3 + 2] = rect.z;
-
-            positions[rIndex * 3 + 3] = rect.left + rect.width;
-            positions[rIndex * 3 + 4] = rect.top;
-            positions[rIndex * 3 + 5] = rect.z;
+    /**
+     * Appends a sprite from the command buffer, rotating its corners about its center here and putting its
+     * tint in per vertex, so no per-sprite uniforms are needed and any run sharing a texture can be drawn
+     * with a single call
+     */
+    public static void addSprite(BuffersSprite buffers, SpriteCommandBuffer sprites, int i) {
+        buffers.reserve(4, 6);
+        float[] coords = buffers.coords;
+        int rIndex = buffers.vertexCount;
+
+        float left = sprites.getLeft(i);
+        float top = sprites.getTop(i);
+        putQuad(buffers.positions, rIndex, left, top, left + sprites.getWidth(i), top + sprites.getHeight(i), sprites.getZ(i));
+        rotateVertices(buffers.positions, rIndex * 3, 4, sprites.getRotation(i), sprites.getCenterX(i), sprites.getCenterY(i));
+
+        float u1 = sprites.getU1(i);
+        float v1 = sprites.getV1(i);
+        float u2 = sprites.getU2(i);
+        float v2 = sprites.getV2(i);
+        coords[rIndex * 2 + 0] = u1;
+        coords[rIndex * 2 + 1] = v1;
+
+        coords[rIndex * 2 + 2] = u2;
+        coords[rIndex * 2 + 3] = v1;
+
+        coords[rIndex * 2 + 4] = u2;
+        coords[rIndex * 2 + 5] = v2;
+
+        coords[rIndex * 2 + 6] = u1;
+        coords[rIndex * 2 + 7] = v2;
+
+        putColor(buffers.colors, rIndex, 4, sprites.getRed(i), sprites.getGreen(i), sprites.getBlue(i));
+        putQuadIndices(buffers.indices, buffers.indexCount, rIndex);
+
+        buffers.vertexCount += 4;
+        buffers.indexCount += 6;
+    }
 
-            positions[rIndex * 3 + 6] = rect.left + rect.width;
-            positions[rIndex * 3 + 7] = rect.top + rect.height;
-            positions[rIndex * 3 + 8] = rect.z;
+    public static void addTriangle(BuffersSprite buffers, RenderQueue.RenderTexturedTriangleOperation op) {
+        buffers.reserve(3, 3);
+        float[] positions = buffers.positions;
+        float[] coords = buffers.coords;
+        int tIndex = buffers.vertexCount;
 
-            positions[rIndex * 3 + 9] = rect.left;
-            positions[rIndex * 3 + 10] = rect.top + rect.height;
-            positions[rIndex * 3 + 11] = rect.z;
+        Triangle triangle = op.getTriangle();
+        TriangleTexCoords texCoords = op.getTexCoords();
+        Color color = op.getColor();
 
-            colors[rIndex * 3 + 0] = color.r;
-            colors[rIndex * 3 + 1] = color.g;
-            colors[rIndex * 3 + 2] = color.b;
+        positions[tIndex * 3 + 0] = triangle.pt1.x;
+        positions[tIndex * 3 + 1] = triangle.pt1.y;
+        positions[tIndex * 3 + 2] = triangle.pt1.z;
 
-            colors[rIndex * 3 + 3] = color.r;
-            colors[rIndex * 3 + 4] = color.g;
-            colors[rIndex * 3 + 5] = color.b;
+        positions[tIndex * 3 + 3] = triangle.pt2.x;
+        positions[tIndex * 3 + 4] = triangle.pt2.y;
+        positions[tIndex * 3 + 5] = triangle.pt2.z;
 
-            colors[rIndex * 3 + 6] = color.r;
-            colors[rIndex * 3 + 7] = color.g;
-            colors[rIndex * 3 + 8] = color.b;
+        positions[tIndex * 3 + 6] = triangle.pt3.x;
+        positions[tIndex * 3 + 7] = triangle.pt3.y;
+        positions[tIndex * 3 + 8] = triangle.pt3.z;
+        rotateVertices(positions, tIndex * 3, 3, op.getRotation(), op.getCenterX(), op.getCenterY());
 
-            colors[rIndex * 3 + 9] = color.r;
-            colors[rIndex * 3 + 10] = color.g;
-            colors[rIndex * 3 + 11] = color.b;
+        coords[tIndex * 2 + 0] = texCoords.pt1.x;
+        coords[tIndex * 2 + 1] = texCoords.pt1.y;
 
-            indices[iIndex + 0] = rIndex + 0;
-            indices[iIndex + 1] = rIndex + 1;
-            indices[iIndex + 2] = rIndex + 2;
+        coords[tIndex * 2 + 2] = texCoords.pt2.x;
+        coords[tIndex * 2 + 3] = texCoords.pt2.y;
 
-            indices[iIndex + 3] = rIndex + 0;
-            indices[iIndex + 4] = rIndex + 2;
-            indices[iIndex + 5] = rIndex + 3;
+        coords[tIndex * 2 + 4] = texCoords.pt3.x;
+        coords[tIndex * 2 + 5] = texCoords.pt3.y;
 
-            rIndex += 4;
-            iIndex += 6;
-        }
+        putColor(buffers.colors, tIndex, 3, color.r, color.g, color.b);
+        putTriangleIndices(buffers.indices, buffers.indexCount, tIndex);
 
-        return new BuffersColor(positions, colors, indices);
+        buffers.vertexCount += 3;
+        buffers.indexCount += 3;
     }
 
-    public static BuffersTexture prepareRectsTextureBuffers(List<RenderQueue.RenderTexturedRectangleOperation> operations) {
-        float[] positions = new float[operations.size() * 12];
-        float[] coords = new float[operations.size() * 8];
-        int[] indices = new int[operations.size() * 6];
-
-        int rIndex = 0;
-        int iIndex = 0;
-        for (var op : operations) {
-            Texture texture = op.getTexture();
-            Rectangle rect = op.getDestination();
-            Rectangle subImage = op.getSubImage();
-
-            positions[rIndex * 3 + 0] = rect.left;
-            positions[rIndex * 3 + 1] = rect.top;
-            positions[rIndex * 3 + 2] = rect.z;
-
-            positions[rIndex * 3 + 3] = rect.left + rect.width;
-            positions[rIndex * 3 + 4] = rect.top;
-            positions[rIndex * 3 + 5] = rect.z;
+    public static void addGlyph(BuffersSprite buffers, RenderQueue.RenderTextGlyphOperation op) {
+        buffers.reserve(4, 6);
+        float[] coords = buffers.coords;
+        int rIndex = buffers.vertexCount;
 
-            positions[rIndex * 3 + 6] = rect.left + rect.width;
-            positions[rIndex * 3 + 7] = rect.top + rect.height;
-            positions[rIndex * 3 + 8] = rect.z;
+        Rectangle rect = op.getDestination();
+        Vector2f p1 = op.getP1();
+        Vector2f p2 = op.getP2();
+        Vector2f p3 = op.getP3();
+        Vector2f p4 = op.getP4();
+        Color color = op.getColor();
 
-            positions[rIndex * 3 + 9] = rect.left;
-            positions[rIndex * 3 + 10] = rect.top + rect.height;
-            positions[rIndex * 3 + 11] = rect.z;
+        putQuad(buffers.positions, rIndex, rect.left, rect.top, rect.left + rect.width, rect.top + rect.height, rect.z);
+        rotateVertices(buffers.positions, rIndex * 3, 4, op.getRotation(), op.getCenterX(), op.getCenterY());
 
-            // Convert pixel coordinates to texture coordinates
-            float texWidth = texture.getWidth();
-            float texHeight = texture.getHeight();
+        coords[rIndex * 2 + 0] = p1.x;
+        coords[rIndex * 2 + 1] = p1.y;
 
-            if (subImage != null) {
-                coords[rIndex * 2 + 0] = subImage.left / texWidth;
-                coords[rIndex * 2 + 1] = subImage.top / texHeight;
+        coords[rIndex * 2 + 2] = p2.x;
+        coords[rIndex * 2 + 3] = p2.y;
 
-                coords[rIndex * 2 + 2] = (subImage.left + subImage.width) / texWidth;
-                coords[rIndex * 2 + 3] = subImage.top / texHeight;
-
-                coords[rIndex * 2 + 4] = (subImage.left + subImage.width) / texWidth;
-                coords[rIndex * 2 + 5] = (subImage.top + subImage.height) / texHeight;
-
-                coords[rIndex * 2 + 6] = subImage.left / texWidth;
-                coords[rIndex * 2 + 7] = (subImage.top + subImage.height) / texHeight;
-            } else {
-                coords[rIndex * 2 + 0] = 0.0f;
-                coords[rIndex * 2 + 1] = 0.0f;
-
-                coords[rIndex * 2 + 2] = 1.0f;
-                coords[rIndex * 2 + 3] = 0.0f;
-
-                coords[rIndex * 2 + 4] = 1.0f;
-                coords[rIndex * 2 + 5] = 1.0f;
-
-                coords[rIndex * 2 + 6] = 0.0f;
-                coords[rIndex * 2 + 7] = 1.0f;
-            }
+        coords[rIndex * 2 + 4] = p3.x;
+        coords[rIndex * 2 + 5] = p3.y;
 
-            indices[iIndex + 0] = rIndex + 0;
-            indices[iIndex + 1] = rIndex + 1;
-            indices[iIndex + 2] = rIndex + 2;
+        coords[rIndex * 2 + 6] = p4.x;
+        coords[rIndex * 2 + 7] = p4.y;
 
-            indices[iIndex + 3] = rIndex + 0;
-            indices[iIndex + 4] = rIndex + 2;
-            indices[iIndex + 5] = rIndex + 3;
+        putColor(buffers.colors, rIndex, 4, color.r, color.g, color.b);
+        putQuadIndices(buffers.indices, buffers.indexCount, rIndex);
 
-            rIndex += 4;
-            iIndex += 6;
-        }
-
-        return new BuffersTexture(positions, coords, indices);
+        buffers.vertexCount += 4;
+        buffers.indexCount += 6;
     }
 
-    public static BuffersTexture prepareTrianglesTextureBuffers(List<RenderQueue.RenderTexturedTriangleOperation> operations) {
-        float[] positions = new float[operations.size() * 9];
-        float[] coords = new float[operations.size() * 6];
-        int[] indices = new int[operations.size() * 3];
-
-        int tIndex = 0;
-        int iIndex = 0;
-        for (var op : operations) {
-            Triangle triangle = op.getTriangle();
-            TriangleTexCoords texCoords = op.getTexCoords();
-
-            positions[tIndex * 3 + 0] = triangle.pt1.x;
-            positions[tIndex * 3 + 1] = triangle.pt1.y;
-            positions[tIndex * 3 + 2] = triangle.pt1.z;
-
-            positions[tIndex * 3 + 3] = triangle.pt2.x;
-            positions[tIndex * 3 + 4] = triangle.pt2.y;
-            positions[tIndex * 3 + 5] = triangle.pt2.z;
-
-            positions[tIndex * 3 + 6] = triangle.pt3.x;
-            positions[tIndex * 3 + 7] = triangle.pt3.y;
-            positions[tIndex * 3 + 8] = triangle.pt3.z;
-
-            coords[tIndex * 2 + 0] = texCoords.pt1.x;
-            coords[tIndex * 2 + 1] = texCoords.pt1.y;
+    /**
+     * Corners clockwise from the top left, starting at vertex rIndex
+     */
+    private static void putQuad(float[] positions, int rIndex, float left, float top, float right, float bottom, float z) {
+        positions[rIndex * 3 + 0] = left;
+        positions[rIndex * 3 + 1] = top;
+        positions[rIndex * 3 + 2] = z;
+
+        positions[rIndex * 3 + 3] = right;
+        positions[rIndex * 3 + 4] = top;
+        positions[rIndex * 3 + 5] = z;
+
+        positions[rIndex * 3 + 6] = right;
+        positions[rIndex * 3 + 7] = bottom;
+        positions[rIndex * 3 + 8] = z;
+
+        positions[rIndex * 3 + 9] = left;
+        positions[rIndex * 3 + 10] = bottom;
+        positions[rIndex * 3 + 11] = z;
+    }
 
-            coords[tIndex * 2 + 2] = texCoords.pt2.x;
-            coords[tIndex * 2 + 3] = texCoords.pt2.y;
+    private static void putQuadIndices(int[] indices, int iIndex, int rIndex) {
+        indices[iIndex + 0] = rIndex + 0;
+        indices[iIndex + 1] = rIndex + 1;
+        indices[iIndex + 2] = rIndex + 2;
 
-            coords[tIndex * 2 + 4] = texCoords.pt3.x;
-            coords[tIndex * 2 + 5] = texCoords.pt3.y;
+        indices[iIndex + 3] = rIndex + 0;
+        indices[iIndex + 4] = rIndex + 2;
+        indices[iIndex + 5] = rIndex + 3;
+    }
 
-            indices[iIndex + 0] = tIndex + 0;
-            indices[iIndex + 1] = tIndex + 1;
-            indices[iIndex + 2] = tIndex + 2;
+    private static void putTriangleIndices(int[] indices, int iIndex, int rIndex) {
+        indices[iIndex + 0] = rIndex + 0;
+        indices[iIndex + 1] = rIndex + 1;
+        indices[iIndex + 2] = rIndex + 2;
+    }
 
-            tIndex += 3;
-            iIndex += 3;
+    private static void putColor(float[] colors, int rIndex, int vertices, float red, float green, float blue) {
+        for (int corners = 0; corners < vertices; corners++) {
+            colors[rIndex * 3 + corners * 3 + 0] = red;
+            colors[rIndex * 3 + corners * 3 + 1] = green;
+            colors[rIndex * 3 + corners * 3 + 2] = blue;
         }
-
-        return new BuffersTexture(positions, coords, indices);
     }
 
-    public static BuffersTexture prepareTextGlyphBuffers(List<RenderQueue.RenderTextGlyphOperation> operations) {
-        float[] positions = new float[operations.size() * 12];
-        float[] coords = new float[operations.size() * 8];
-        int[] indices = new int[operations.size() * 6];
-
-        int rIndex = 0;
-        int iIndex = 0;
-        for (var op : operations) {
-            Rectangle rect = op.getDestination();
-            Vector2f p1 = op.getP1();
-            Vector2f p2 = op.getP2();
-            Vector2f p3 = op.getP3();
-            Vector2f p4 = op.getP4();
-
-            positions[rIndex * 3 + 0] = rect.left;
-            positions[rIndex * 3 + 1] = rect.top;
-            positions[rIndex * 3 + 2] = rect.z;
-
-            positions[rIndex * 3 + 3] = rect.left + rect.width;
-            positions[rIndex * 3 + 4] = rect.top;
-            positions[rIndex * 3 + 5] = rect.z;
-
-            positions[rIndex * 3 + 6] = rect.left + rect.width;
-            positions[rIndex * 3 + 7] = rect.top + rect.height;
-            positions[rIndex * 3 + 8] = rect.z;
-
-            positions[rIndex * 3 + 9] = rect.left;
-            positions[rIndex * 3 + 10] = rect.top + rect.height;
-            positions[rIndex * 3 + 11] = rect.z;
-
-            coords[rIndex * 2 + 0] = p1.x;
-            coords[rIndex * 2 + 1] = p1.y;
-
-            coords[rIndex * 2 + 2] = p2.x;
-            coords[rIndex * 2 + 3] = p2.y;
-
-            coords[rIndex * 2 + 4] = p3.x;
-            coords[rIndex * 2 + 5] = p3.y;
-
-            coords[rIndex * 2 + 6] = p4.x;
-            coords[rIndex * 2 + 7] = p4.y;
-
-            indices[iIndex + 0] = rIndex + 0;
-            indices[iIndex + 1] = rIndex + 1;
-            indices[iIndex + 2] = rIndex + 2;
-
-            indices[iIndex + 3] = rIndex + 0;
-            indices[iIndex + 4] = rIndex + 2;
-            indices[iIndex + 5] = rIndex + 3;
-
-            rIndex += 4;
-            iIndex += 6;
+    /**
+     * Rotates the x and y of vertices already written at offset about (centerX, centerY), the same as
+     * translating the center to the origin, rotating about z and translating back.  Most shapes aren't
+     * rotated, and those are left as they are.
+     */
+    private static void rotateVertices(float[] positions, int offset, int vertices, float rotation, float centerX, float centerY) {
+        if (rotation == 0) {
+            return;
+        }
+        float cos = (float) Math.cos(rotation);
+        float sin = (float) Math.sin(rotation);
+        for (int vertex = offset; vertex < offset + vertices * 3; vertex += 3) {
+            float dx = positions[vertex] - centerX;
+            float dy = positions[vertex + 1] - centerY;
+            positions[vertex + 0] = centerX + dx * cos - dy * sin;
+            positions[vertex + 1] = centerY + dx * sin + dy * cos;
         }
-
-        return new BuffersTexture(positions, coords, indices);
     }
 }
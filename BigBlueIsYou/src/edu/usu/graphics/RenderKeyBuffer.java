@@ -0,0 +1,196 @@
+/*
+Copyright (c) 2024 James Dean Mathias
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package edu.usu.graphics;
+
+import java.util.Arrays;
+
+/**
+ * The drawing order of everything queued in a frame, whatever its type.  Each command gets a packed
+ * 64-bit key and the keys are radix sorted, so the whole frame is ordered in linear time and without
+ * allocating once the arrays are large enough.  The commands are moved along with their keys, and
+ * the radix sort is stable, so commands with the same key stay in the order they were queued and
+ * there is no limit on how many a frame can have.
+ *
+ * Key layout, most significant first:
+ *   32 bits  layer: the command's z, with its bits rearranged so that integer order is depth order
+ *   14 bits  unused, always 0, so the sort skips over them
+ *    2 bits  pipeline (shader), so commands in the same layer that share a shader are drawn together
+ *   16 bits  texture, by the order textures were first used this frame, so they also share texture binds
+ */
+class RenderKeyBuffer {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int TEXTURE_BITS = 16;
+    private static final int MAX_TEXTURES = 1 << TEXTURE_BITS;
+    private static final int INDEX_BITS = 28;
+
+    private int count;
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private long[] scratch = new long[INITIAL_CAPACITY];
+    // The command with the key at the same position: its type in the top bits, its index within that type below
+    private int[] commands = new int[INITIAL_CAPACITY];
+    private int[] commandScratch = new int[INITIAL_CAPACITY];
+    private final int[][] histograms = new int[Long.BYTES][256];
+
+    // Textures used this frame.  There are only ever a few, so a linear search, starting with the
+    // last one used, beats hashing
+    private Texture[] textures = new Texture[16];
+    private int textureCount;
+    private int lastTexture;
+
+    /**
+     * Records a command, to be drawn in key order once sorted
+     * @param texture The command's texture, or null if it has none
+     * @param index Where the command is in the list for its type
+     */
+    public void add(float z, RenderQueue.RenderType type, Texture texture, int index) {
+        if (count == keys.length) {
+            int capacity = count * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            scratch = new long[capacity];
+            commands = Arrays.copyOf(commands, capacity);
+            commandScratch = new int[capacity];
+        }
+
+        int slot = texture == null ? 0 : slotOf(texture);
+        keys[count] = (long) sortableBits(z) << 32
+                | (long) type.pipeline.ordinal() << TEXTURE_BITS
+                | slot;
+        commands[count] = type.ordinal() << INDEX_BITS | index;
+        count++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public void clear() {
+        count = 0;
+        Arrays.fill(textures, 0, textureCount, null);
+        textureCount = 0;
+        lastTexture = 0;
+    }
+
+    /**
+     * Type of the command drawn in the given position once sorted
+     */
+    public RenderQueue.RenderType getType(int order) {
+        return RenderQueue.RenderType.ALL[commands[order] >>> INDEX_BITS];
+    }
+
+    /**
+     * Index, within the list for its type, of the command drawn in the given position once sorted
+     */
+    public int getIndex(int order) {
+        return commands[order] & ((1 << INDEX_BITS) - 1);
+    }
+
+    private int slotOf(Texture texture) {
+        if (lastTexture < textureCount && textures[lastTexture] == texture) {
+            return lastTexture;
+        }
+        for (int i = 0; i < textureCount; i++) {
+            if (textures[i] == texture) {
+                lastTexture = i;
+                return i;
+            }
+        }
+        if (textureCount == MAX_TEXTURES) {
+            // Only costs some batching: every texture past the limit shares the last slot, in queued order
+            return MAX_TEXTURES - 1;
+        }
+        if (textureCount == textures.length) {
+            textures = Arrays.copyOf(textures, textures.length * 2);
+        }
+        textures[textureCount] = texture;
+        lastTexture = textureCount;
+        return textureCount++;
+    }
+
+    /**
+     * The float's bits rearranged so that comparing them as unsigned integers orders the floats
+     */
+    static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits < 0 ? ~bits : bits ^ Integer.MIN_VALUE;
+    }
+
+    /**
+     * Orders the commands by key: least significant byte first, skipping any byte that is the same
+     * in every key, which for a typical frame is most of them.  Each pass is stable, so commands with
+     * equal keys keep their queued order.
+     */
+    public void sort() {
+        for (int[] histogram : histograms) {
+            Arrays.fill(histogram, 0);
+        }
+        for (int i = 0; i < count; i++) {
+            long key = keys[i];
+            for (int b = 0; b < Long.BYTES; b++) {
+                histograms[b][(int) (key >>> (b * 8)) & 0xFF]++;
+            }
+        }
+
+        long[] from = keys;
+        long[] to = scratch;
+        int[] fromCommands = commands;
+        int[] toCommands = commandScratch;
+        for (int b = 0; b < Long.BYTES && count > 0; b++) {
+            int[] histogram = histograms[b];
+            int shift = b * 8;
+            if (histogram[(int) (from[0] >>> shift) & 0xFF] == count) {
+                continue;
+            }
+
+            int offset = 0;
+            for (int digit = 0; digit < 256; digit++) {
+                int digitCount = histogram[digit];
+                histogram[digit] = offset;
+                offset += digitCount;
+            }
+            for (int i = 0; i < count; i++) {
+                long key = from[i];
+                int position = histogram[(int) (key >>> shift) & 0xFF]++;
+                to[position] = key;
+                toCommands[position] = fromCommands[i];
+            }
+
+            long[] swap = from;
+            from = to;
+            to = swap;
+            int[] swapCommands = fromCommands;
+            fromCommands = toCommands;
+            toCommands = swapCommands;
+        }
+
+        if (from != keys) {
+            scratch = keys;
+            keys = from;
+            commandScratch = commands;
+            commands = fromCommands;
+        }
+    }
+}
@@ -1,15 +1,15 @@
 package edu.usu.graphics;
 
-import org.joml.Matrix4f;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
 
+import edu.usu.utils.Tuple2;
 import edu.usu.utils.Tuple3;
-import edu.usu.utils.Tuple5;
-import edu.usu.utils.Tuple8;
+import edu.usu.utils.Tuple4;
+import edu.usu.utils.Tuple7;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -17,14 +17,32 @@ import java.util.List;
  * without changing the existing Graphics2D API.
  */
 public class RenderQueue {
+    // Shader setups, in the order they are drawn within a layer.  Meshes go first, as they always have,
+    // so sprites at the same depth end up on top of them
+    public enum Pipeline {
+        MESH,
+        SOLID_COLOR,
+        SPRITE,
+        LINE
+    }
+
     // Different types of render operations
     public enum RenderType {
-        SOLID_COLOR_RECTANGLE,
-        SOLID_COLOR_TRIANGLE,
-        TEXTURED_RECTANGLE,
-        TEXTURED_TRIANGLE,
-        TEXT_GLYPH,
-        LINE
+        SOLID_COLOR_RECTANGLE(Pipeline.SOLID_COLOR),
+        SOLID_COLOR_TRIANGLE(Pipeline.SOLID_COLOR),
+        TEXTURED_RECTANGLE(Pipeline.SPRITE),
+        TEXTURED_TRIANGLE(Pipeline.SPRITE),
+        TEXT_GLYPH(Pipeline.SPRITE),
+        LINE(Pipeline.LINE),
+        MESH(Pipeline.MESH);
+
+        static final RenderType[] ALL = values();
+
+        public final Pipeline pipeline;
+
+        RenderType(Pipeline pipeline) {
+            this.pipeline = pipeline;
+        }
     }
 
     // There is no need to include RenderOperation constructors, only the base abstract class is needed for typing
@@ -42,43 +60,44 @@ public class RenderQueue {
         }
     }
 
-    // Specific operation class for solid color rectangles
-    public static class RenderSolidRectangleOperation extends RenderOperation {
-        private final Tuple3<Rectangle, Color, Matrix4f> data;
-
-        public RenderSolidRectangleOperation(Rectangle rectangle, Color color, Matrix4f transform) {
-            super(RenderType.SOLID_COLOR_RECTANGLE, rectangle.z);
-            this.data = new Tuple3<>(rectangle, color, transform);
+    // Rotation of an operation's vertices about a center, applied when its buffers are prepared
+    public static abstract class RotatedRenderOperation extends RenderOperation {
+        private final float rotation;
+        private final float centerX;
+        private final float centerY;
+
+        protected RotatedRenderOperation(RenderType type, float zOrder, float rotation, float centerX, float centerY) {
+            super(type, zOrder);
+            this.rotation = rotation;
+            this.centerX = centerX;
+            this.centerY = centerY;
         }
 
-        public Rectangle getRectangle() { return data.item1(); }
-        public Color getColor() { return data.item2(); }
-        public Matrix4f getTransform() { return data.item3(); }
+        public float getRotation() { return rotation; }
+        public float getCenterX() { return centerX; }
+        public float getCenterY() { return centerY; }
     }
 
-    // Specific operation class for textured rectangles
-    public static class RenderTexturedRectangleOperation extends RenderOperation {
-        private final Tuple5<Texture, Rectangle, Rectangle, Matrix4f, Vector3f> data;
+    // Specific operation class for solid color rectangles
+    public static class RenderSolidRectangleOperation extends RotatedRenderOperation {
+        private final Tuple2<Rectangle, Color> data;
 
-        public RenderTexturedRectangleOperation(Texture texture, Rectangle destination, Rectangle subImage, Matrix4f transform, Vector3f color) {
-            super(RenderType.TEXTURED_RECTANGLE, destination.z);
-            this.data = new Tuple5<>(texture, destination, subImage, transform, color);
+        public RenderSolidRectangleOperation(Rectangle rectangle, Color color, float rotation, float centerX, float centerY) {
+            super(RenderType.SOLID_COLOR_RECTANGLE, rectangle.z, rotation, centerX, centerY);
+            this.data = new Tuple2<>(rectangle, color);
         }
 
-        public Texture getTexture() { return data.item1(); }
-        public Rectangle getDestination() { return data.item2(); }
-        public Rectangle getSubImage() { return data.item3(); }
-        public Matrix4f getTransform() { return data.item4(); }
-        public Vector3f getColor() { return data.item5(); }
+        public Rectangle getRectangle() { return data.item1(); }
+        public Color getColor() { return data.item2(); }
     }
 
     // Specific operation class for text glyphs
-    public static class RenderTextGlyphOperation extends RenderOperation {
-        private final Tuple8<Texture, Rectangle, Vector2f, Vector2f, Vector2f, Vector2f, Matrix4f, Vector3f> data;
+    public static class RenderTextGlyphOperation extends RotatedRenderOperation {
+        private final Tuple7<Texture, Rectangle, Vector2f, Vector2f, Vector2f, Vector2f, Color> data;
 
-        public RenderTextGlyphOperation(Texture texture, Rectangle destination, Vector2f p1, Vector2f p2, Vector2f p3, Vector2f p4, Matrix4f transform, Vector3f color) {
-            super(RenderType.TEXT_GLYPH, destination.z);
-            this.data = new Tuple8<>(texture, destination, p1, p2, p3, p4, transform, color);
+        public RenderTextGlyphOperation(Texture texture, Rectangle destination, Vector2f p1, Vector2f p2, Vector2f p3, Vector2f p4, float rotation, float centerX, float centerY, Color color) {
+            super(RenderType.TEXT_GLYPH, destination.z, rotation, centerX, centerY);
+            this.data = new Tuple7<>(texture, destination, p1, p2, p3, p4, color);
         }
         
         public Texture getTexture() { return data.item1(); }
@@ -87,38 +106,35 @@ public class RenderQueue {
         public Vector2f getP2() { return data.item4(); }
         public Vector2f getP3() { return data.item5(); }
         public Vector2f getP4() { return data.item6(); }
-        public Matrix4f getTransform() { return data.item7(); }
-        public Vector3f getColor() { return data.item8(); }
+        public Color getColor() { return data.item7(); }
     }
 
     // Specific operation class for solid color triangles
-    public static class RenderSolidTriangleOperation extends RenderOperation {
-        private final Tuple3<Triangle, Color, Matrix4f> data;
+    public static class RenderSolidTriangleOperation extends RotatedRenderOperation {
+        private final Tuple2<Triangle, Color> data;
 
-        public RenderSolidTriangleOperation(Triangle triangle, Color color, Matrix4f transform) {
-            super(RenderType.SOLID_COLOR_TRIANGLE, triangle.pt1.z);
-            this.data = new Tuple3<>(triangle, color, transform);
+        public RenderSolidTriangleOperation(Triangle triangle, Color color, float rotation, float centerX, float centerY) {
+            super(RenderType.SOLID_COLOR_TRIANGLE, triangle.pt1.z, rotation, centerX, centerY);
+            this.data = new Tuple2<>(triangle, color);
         }
         
         public Triangle getTriangle() { return data.item1(); }
         public Color getColor() { return data.item2(); }
-        public Matrix4f getTransform() { return data.item3(); }
     }
 
     // Specific operation class for textured triangles
-    public static class RenderTexturedTriangleOperation extends RenderOperation {
-        private final Tuple5<Texture, Triangle, TriangleTexCoords, Matrix4f, Vector3f> data;
+    public static class RenderTexturedTriangleOperation extends RotatedRenderOperation {
+        private final Tuple4<Texture, Triangle, TriangleTexCoords, Color> data;
 
-        public RenderTexturedTriangleOperation(Texture texture, Triangle triangle, TriangleTexCoords texCoords, Matrix4f transform, Vector3f color) {
-            super(RenderType.TEXTURED_TRIANGLE, triangle.pt1.z);
-            this.data = new Tuple5<>(texture, triangle, texCoords, transform, color);
+        public RenderTexturedTriangleOperation(Texture texture, Triangle triangle, TriangleTexCoords texCoords, float rotation, float centerX, float centerY, Color color) {
+            super(RenderType.TEXTURED_TRIANGLE, triangle.pt1.z, rotation, centerX, centerY);
+            this.data = new Tuple4<>(texture, triangle, texCoords, color);
         }
         
         public Texture getTexture() { return data.item1(); }
         public Triangle getTriangle() { return data.item2(); }
         public TriangleTexCoords getTexCoords() { return data.item3(); }
-        public Matrix4f getTransform() { return data.item4(); }
-        public Vector3f getColor() { return data.item5(); }
+        public Color getColor() { return data.item4(); }
     }
 
     // Specific operation class for lines
@@ -135,46 +151,49 @@ public class RenderQueue {
         public Color getColor() { return data.item3(); }
     }
 
+    // Everything queued, of every type, in the order it is drawn once sorted
+    private final RenderKeyBuffer keys = new RenderKeyBuffer();
     private final ArrayList<RenderSolidRectangleOperation> solidColorRectangles = new ArrayList<>();
     private final ArrayList<RenderSolidTriangleOperation> solidColorTriangles = new ArrayList<>();
-    private final ArrayList<RenderTexturedRectangleOperation> texturedRectangles = new ArrayList<>();
+    // Textured rectangles are by far the most common, so they are kept in flat arrays rather than as objects
+    private final SpriteCommandBuffer sprites = new SpriteCommandBuffer(keys);
     private final ArrayList<RenderTexturedTriangleOperation> texturedTriangles = new ArrayList<>();
     private final ArrayList<RenderTextGlyphOperation> textGlyphs = new ArrayList<>();
     private final ArrayList<RenderLineOperation> lines = new ArrayList<>();
+    // One entry per mesh layer, with the layer it is in meshLayers
+    private final ArrayList<TileMesh> meshes = new ArrayList<>();
+    private int[] meshLayers = new int[16];
 
     /**
      * Add a solid color rectangle operation to the queue
      */
-    public void add(Rectangle rectangle, Color color, Matrix4f transform) {
-        solidColorRectangles.add(new RenderSolidRectangleOperation(rectangle, color, transform));
-    }
-
-    /**
-     * Add a textured rectangle operation to the queue
-     */
-    public void add(Texture texture, Rectangle destination, Rectangle subImage, Matrix4f transform, Vector3f color) {
-        texturedRectangles.add(new RenderTexturedRectangleOperation(texture, destination, subImage, transform, color));
+    public void add(Rectangle rectangle, Color color, float rotation, float centerX, float centerY) {
+        solidColorRectangles.add(new RenderSolidRectangleOperation(rectangle, color, rotation, centerX, centerY));
+        keys.add(rectangle.z, RenderType.SOLID_COLOR_RECTANGLE, null, solidColorRectangles.size() - 1);
     }
 
     /**
      * Add a text glyph operation to the queue
      */
-    public void add(Texture texture, Rectangle destination, Vector2f p1, Vector2f p2, Vector2f p3, Vector2f p4, Matrix4f transform, Vector3f color) {
-        textGlyphs.add(new RenderTextGlyphOperation(texture, destination, p1, p2, p3, p4, transform, color));
+    public void add(Texture texture, Rectangle destination, Vector2f p1, Vector2f p2, Vector2f p3, Vector2f p4, float rotation, float centerX, float centerY, Color color) {
+        textGlyphs.add(new RenderTextGlyphOperation(texture, destination, p1, p2, p3, p4, rotation, centerX, centerY, color));
+        keys.add(destination.z, RenderType.TEXT_GLYPH, texture, textGlyphs.size() - 1);
     }
 
     /**
      * Add a solid color triangle operation to the queue
      */
-    public void add(Triangle triangle, Color color, Matrix4f transform) {
-        solidColorTriangles.add(new RenderSolidTriangleOperation(triangle, color, transform));
+    public void add(Triangle triangle, Color color, float rotation, float centerX, float centerY) {
+        solidColorTriangles.add(new RenderSolidTriangleOperation(triangle, color, rotation, centerX, centerY));
+        keys.add(triangle.pt1.z, RenderType.SOLID_COLOR_TRIANGLE, null, solidColorTriangles.size() - 1);
     }
 
     /**
      * Add a textured triangle operation to the queue
      */
-    public void add(Texture texture, Triangle triangle, TriangleTexCoords texCoords, Matrix4f transform, Vector3f color) {
-        texturedTriangles.add(new RenderTexturedTriangleOperation(texture, triangle, texCoords, transform, color));
+    public void add(Texture texture, Triangle triangle, TriangleTexCoords texCoords, float rotation, float centerX, float centerY, Color color) {
+        texturedTriangles.add(new RenderTexturedTriangleOperation(texture, triangle, texCoords, rotation, centerX, centerY, color));
+        keys.add(triangle.pt1.z, RenderType.TEXTURED_TRIANGLE, texture, texturedTriangles.size() - 1);
     }
 
     /**
@@ -182,19 +201,52 @@ public class RenderQueue {
      */
     public void add(Vector3f start, Vector3f end, Color color) {
         lines.add(new RenderLineOperation(start, end, color));
+        keys.add(Math.max(start.z, end.z), RenderType.LINE, null, lines.size() - 1);
+    }
+
+    /**
+     * Add a retained mesh to be drawn this frame.  Each depth its tiles are at is queued as a layer of
+     * its own, so anything queued between two of them is drawn between them.
+     */
+    public void add(TileMesh mesh) {
+        mesh.startFrame();
+        int layers = mesh.getLayerCount();
+        for (int layer = 0; layer < layers; layer++) {
+            if (meshes.size() == meshLayers.length) {
+                meshLayers = Arrays.copyOf(meshLayers, meshLayers.length * 2);
+            }
+            meshLayers[meshes.size()] = layer;
+            meshes.add(mesh);
+            keys.add(mesh.getLayerZ(layer), RenderType.MESH, null, meshes.size() - 1);
+        }
     }
 
     /**
-     * Sort all render queues by z-order (back to front)
+     * Sort everything queued back to front by layer, and within a layer by pipeline and then texture
      */
     public void sort() {
-        Comparator<RenderOperation> zOrderComparator = Comparator.comparing(RenderOperation::getZOrder);
-        solidColorRectangles.sort(zOrderComparator);
-        solidColorTriangles.sort(zOrderComparator);
-        texturedRectangles.sort(zOrderComparator);
-        texturedTriangles.sort(zOrderComparator);
-        textGlyphs.sort(zOrderComparator);
-        lines.sort(zOrderComparator);
+        keys.sort();
+    }
+
+    /**
+     * Number of operations queued, of every type
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Type of the operation drawn in the given position once sorted
+     */
+    public RenderType getType(int order) {
+        return keys.getType(order);
+    }
+
+    /**
+     * Index of the operation drawn in the given position once sorted, within the list for its type
+     */
+    public int getIndex(int order) {
+        return keys.getIndex(order);
     }
 
     /**
@@ -212,10 +264,10 @@ public class RenderQueue {
     }
 
     /**
-     * Get textured rectangle operations
+     * Get the queued textured rectangles
      */
-    public List<RenderTexturedRectangleOperation> getTexturedRectangleOperations() {
-        return texturedRectangles;
+    public SpriteCommandBuffer getSprites() {
+        return sprites;
     }
 
     /**
@@ -239,15 +291,38 @@ public class RenderQueue {
         return lines;
     }
 
+    /**
+     * Get retained meshes
+     */
+    public List<TileMesh> getMeshes() {
+        return meshes;
+    }
+
+    /**
+     * Which of its mesh's layers a retained mesh entry draws
+     */
+    public int getMeshLayer(int index) {
+        return meshLayers[index];
+    }
+
+    /**
+     * True if nothing has been queued since the last clear
+     */
+    public boolean isEmpty() {
+        return keys.isEmpty();
+    }
+
     /**
      * Clear all operations in the queue
      */
     public void clear() {
         solidColorRectangles.clear();
         solidColorTriangles.clear();
-        texturedRectangles.clear();
+        sprites.clear();
         texturedTriangles.clear();
         textGlyphs.clear();
         lines.clear();
+        meshes.clear();
+        keys.clear();
     }
 }
\ No newline at end of file
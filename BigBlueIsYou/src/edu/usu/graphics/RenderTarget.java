@@ -0,0 +1,125 @@
+/*
+Copyright (c) 2024 James Dean Mathias
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package edu.usu.graphics;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL32.*;
+
+/**
+ * An offscreen framebuffer with an RGBA color buffer and a depth buffer, for drawing into
+ * with Graphics2D.renderTo and then reading the pixels back.
+ */
+public class RenderTarget {
+
+    private final int width;
+    private final int height;
+    private final int framebufferId;
+    private final int colorId;
+    private final int depthId;
+    private final Texture texture;
+
+    public RenderTarget(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        colorId = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, colorId);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        depthId = glGenRenderbuffers();
+        glBindRenderbuffer(GL_RENDERBUFFER, depthId);
+        glRenderbufferStorage(GL_RENDERBUFFER, GL_DEPTH_COMPONENT24, width, height);
+        glBindRenderbuffer(GL_RENDERBUFFER, 0);
+
+        framebufferId = glGenFramebuffers();
+        glBindFramebuffer(GL_FRAMEBUFFER, framebufferId);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, colorId, 0);
+        glFramebufferRenderbuffer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_RENDERBUFFER, depthId);
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+
+        if (status != GL_FRAMEBUFFER_COMPLETE) {
+            cleanup();
+            throw new RuntimeException("Render target not complete: 0x" + Integer.toHexString(status));
+        }
+        texture = new Texture(colorId, width, height);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * The color buffer, for drawing what was rendered.  Its rows are bottom first, so draw it with a
+     * sub-image from (0, height) of height -height to have it the right way up.
+     */
+    public Texture getTexture() {
+        return texture;
+    }
+
+    public void bind() {
+        glBindFramebuffer(GL_FRAMEBUFFER, framebufferId);
+    }
+
+    public void unbind() {
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+    }
+
+    /**
+     * Copies the color buffer into destination as RGBA bytes, top row first, the same
+     * row order images are loaded in.  destination must have room for width * height * 4 bytes.
+     */
+    public void readPixels(ByteBuffer destination) {
+        ByteBuffer pixels = BufferUtils.createByteBuffer(width * height * 4);
+
+        bind();
+        glPixelStorei(GL_PACK_ALIGNMENT, 1);
+        glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+        unbind();
+
+        // OpenGL returns the bottom row first
+        int rowBytes = width * 4;
+        int start = destination.position();
+        for (int row = 0; row < height; row++) {
+            pixels.limit((row + 1) * rowBytes).position(row * rowBytes);
+            destination.position(start + (height - 1 - row) * rowBytes);
+            destination.put(pixels);
+        }
+        destination.position(start + height * rowBytes);
+    }
+
+    public void cleanup() {
+        glDeleteFramebuffers(framebufferId);
+        glDeleteRenderbuffers(depthId);
+        glDeleteTextures(colorId);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+Copyright (c) 2024 James Dean Mathias
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package edu.usu.graphics;
+
+import java.util.Arrays;
+
+/**
+ * A flat, reusable queue of textured sprites.  Each sprite is one index into a set of primitive
+ * arrays, one array per field, and the arrays only ever grow, so once they are large enough
+ * queueing a frame's sprites allocates nothing.  Where each sprite is drawn, among everything
+ * else queued, is decided by its key in the render queue's RenderKeyBuffer.
+ */
+public class SpriteCommandBuffer {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final RenderKeyBuffer keys;
+
+    private int count;
+    private float[] left;
+    private float[] top;
+    private float[] width;
+    private float[] height;
+    private float[] z;
+    private float[] u1;
+    private float[] v1;
+    private float[] u2;
+    private float[] v2;
+    private float[] red;
+    private float[] green;
+    private float[] blue;
+    private float[] rotation;
+    private float[] centerX;
+    private float[] centerY;
+    private Texture[] texture;
+
+    SpriteCommandBuffer(RenderKeyBuffer keys) {
+        this.keys = keys;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Queues a sprite
+     * @param u1 Left texture coordinate, and likewise v1 top, u2 right and v2 bottom, from 0 to 1
+     * @param rotation Rotation in radians about (centerX, centerY)
+     */
+    public void add(Texture image, float left, float top, float width, float height, float z,
+                    float u1, float v1, float u2, float v2,
+                    float red, float green, float blue,
+                    float rotation, float centerX, float centerY) {
+        if (count == this.left.length) {
+            allocate(count * 2);
+        }
+
+        int i = count++;
+        this.left[i] = left;
+        this.top[i] = top;
+        this.width[i] = width;
+        this.height[i] = height;
+        this.z[i] = z;
+        this.u1[i] = u1;
+        this.v1[i] = v1;
+        this.u2[i] = u2;
+        this.v2[i] = v2;
+        this.red[i] = red;
+        this.green[i] = green;
+        this.blue[i] = blue;
+        this.rotation[i] = rotation;
+        this.centerX[i] = centerX;
+        this.centerY[i] = centerY;
+        this.texture[i] = image;
+        keys.add(z, RenderQueue.RenderType.TEXTURED_RECTANGLE, image, i);
+    }
+
+    /**
+     * Queues part of a region
+     * @param subLeft Left of the part of the region to draw, in the region's own pixels, and likewise the rest
+     */
+    public void add(TextureRegion region, float subLeft, float subTop, float subWidth, float subHeight,
+                    float left, float top, float width, float height, float z,
+                    float rotation, float centerX, float centerY, Color color) {
+        Texture image = region.getTexture();
+        float texWidth = image.getWidth();
+        float texHeight = image.getHeight();
+        float sourceLeft = region.getLeft() + subLeft;
+        float sourceTop = region.getTop() + subTop;
+        add(image, left, top, width, height, z,
+                sourceLeft / texWidth, sourceTop / texHeight,
+                (sourceLeft + subWidth) / texWidth, (sourceTop + subHeight) / texHeight,
+                color.r, color.g, color.b, rotation, centerX, centerY);
+    }
+
+    /**
+     * Queues the whole of a region
+     */
+    public void add(TextureRegion region, float left, float top, float width, float height, float z,
+                    float rotation, float centerX, float centerY, Color color) {
+        add(region, 0, 0, region.getWidth(), region.getHeight(), left, top, width, height, z, rotation, centerX, centerY, color);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Only called by the render queue, which clears the keys along with it
+     */
+    void clear() {
+        Arrays.fill(texture, 0, count, null);
+        count = 0;
+    }
+
+    public Texture getTexture(int sprite) {
+        return texture[sprite];
+    }
+
+    public float getLeft(int sprite) { return left[sprite]; }
+    public float getTop(int sprite) { return top[sprite]; }
+    public float getWidth(int sprite) { return width[sprite]; }
+    public float getHeight(int sprite) { return height[sprite]; }
+    public float getZ(int sprite) { return z[sprite]; }
+    public float getU1(int sprite) { return u1[sprite]; }
+    public float getV1(int sprite) { return v1[sprite]; }
+    public float getU2(int sprite) { return u2[sprite]; }
+    public float getV2(int sprite) { return v2[sprite]; }
+    public float getRed(int sprite) { return red[sprite]; }
+    public float getGreen(int sprite) { return green[sprite]; }
+    public float getBlue(int sprite) { return blue[sprite]; }
+    public float getRotation(int sprite) { return rotation[sprite]; }
+    public float getCenterX(int sprite) { return centerX[sprite]; }
+    public float getCenterY(int sprite) { return centerY[sprite]; }
+
+    private void allocate(int capacity) {
+        left = grow(left, capacity);
+        top = grow(top, capacity);
+        width = grow(width, capacity);
+        height = grow(height, capacity);
+        z = grow(z, capacity);
+        u1 = grow(u1, capacity);
+        v1 = grow(v1, capacity);
+        u2 = grow(u2, capacity);
+        v2 = grow(v2, capacity);
+        red = grow(red, capacity);
+        green = grow(green, capacity);
+        blue = grow(blue, capacity);
+        rotation = grow(rotation, capacity);
+        centerX = grow(centerX, capacity);
+        centerY = grow(centerY, capacity);
+        texture = texture == null ? new Texture[capacity] : Arrays.copyOf(texture, capacity);
+    }
+
+    private static float[] grow(float[] values, int capacity) {
+        return values == null ? new float[capacity] : Arrays.copyOf(values, capacity);
+    }
+}
@@ -81,6 +81,29 @@ public class Texture {
         }
     }
 
+    // --------------------------------------------------------------
+    //
+    // Builds a texture from raw RGBA pixels, top row first, such as
+    // those read back from a RenderTarget.  The buffer must be a direct
+    // buffer holding width * height * 4 bytes.
+    //
+    // --------------------------------------------------------------
+    public Texture(int width, int height, ByteBuffer rgba) {
+        this.width = width;
+        this.height = height;
+        this.textureId = createTexture(rgba);
+    }
+
+    /**
+     * Wraps a texture that already exists, such as the color buffer of a RenderTarget,
+     * which stays responsible for deleting it
+     */
+    Texture(int textureId, int width, int height) {
+        this.textureId = textureId;
+        this.width = width;
+        this.height = height;
+    }
+
     public int getWidth() {
         return this.width;
     }
@@ -89,6 +112,10 @@ public class Texture {
         return this.height;
     }
 
+    public int getId() {
+        return this.textureId;
+    }
+
     public void bind() {
         glBindTexture(GL_TEXTURE_2D, textureId);
     }
@@ -97,6 +124,15 @@ public class Texture {
         glDeleteTextures(textureId);
     }
 
+    /**
+     * Stops sampling at the given mipmap level, for textures where the smaller levels would
+     * blend together images that sit next to each other
+     */
+    void setMaxMipLevel(int level) {
+        glBindTexture(GL_TEXTURE_2D, textureId);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, level);
+    }
+
     private int createTexture(ByteBuffer buffer) {
         int textureId = glGenTextures();
 
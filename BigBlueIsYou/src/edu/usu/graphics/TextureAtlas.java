@@ -0,0 +1,233 @@
+/*
+Copyright (c) 2024 James Dean Mathias
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package edu.usu.graphics;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.stb.STBImage.*;
+
+/**
+ * Packs a set of images into as few textures as will hold them, so sprites drawn from
+ * different files can still share a texture and be drawn together.  Images are placed on
+ * shelves, tallest first, and each one has its edge pixels repeated around it so filtering
+ * near the edge of a region never picks up its neighbors.
+ *
+ * Mipmaps average 2^level pixels together, so the padding only keeps regions apart down to
+ * the level where that reaches the padding.  Shared pages stop their mipmaps there, with every
+ * region starting on a multiple of the padding.  Large images are drawn scaled well down and need
+ * the deeper levels, so each one gets a page of its own with the full mipmap chain instead.
+ */
+public class TextureAtlas {
+
+    private static final int MAX_PAGE_SIZE = 2048;
+    // Deepest mipmap level used on a shared page, and the padding that keeps it from bleeding
+    private static final int SHARED_MAX_LEVEL = 2;
+    private static final int PADDING = 1 << SHARED_MAX_LEVEL;
+    // Images with a side longer than this get a page of their own
+    private static final int LARGE_IMAGE = 128;
+
+    private static class Image {
+        final String path;
+        final int width;
+        final int height;
+        final ByteBuffer pixels;
+        int page;
+        int left;
+        int top;
+
+        Image(String path, int width, int height, ByteBuffer pixels) {
+            this.path = path;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+    }
+
+    private final List<Texture> pages = new ArrayList<>();
+    private final Map<String, TextureRegion> regions = new HashMap<>();
+
+    /**
+     * Loads and packs the images
+     * @param files Path of the image for each name; names sharing a path share one region
+     */
+    public TextureAtlas(Map<String, String> files) {
+        Map<String, Image> images = new HashMap<>();
+        for (String path : files.values()) {
+            if (!images.containsKey(path)) {
+                Image image = load(path);
+                if (image != null) {
+                    images.put(path, image);
+                }
+            }
+        }
+
+        List<Image> sorted = new ArrayList<>(images.values());
+        sorted.sort(Comparator.comparingInt((Image image) -> image.height).thenComparingInt(image -> image.width).reversed());
+        pack(sorted, Math.min(MAX_PAGE_SIZE, glGetInteger(GL_MAX_TEXTURE_SIZE)));
+
+        for (var file : files.entrySet()) {
+            Image image = images.get(file.getValue());
+            if (image != null && image.page >= 0) {
+                regions.put(file.getKey(), new TextureRegion(pages.get(image.page), image.left, image.top, image.width, image.height));
+            }
+        }
+        for (Image image : sorted) {
+            stbi_image_free(image.pixels);
+        }
+    }
+
+    /**
+     * @return The named image's region, or null if it couldn't be loaded
+     */
+    public TextureRegion get(String name) {
+        return regions.get(name);
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    public void cleanup() {
+        for (Texture page : pages) {
+            page.cleanup();
+        }
+        pages.clear();
+        regions.clear();
+    }
+
+    private static Image load(String path) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer channels = stack.mallocInt(1);
+
+            ByteBuffer pixels = stbi_load(path, w, h, channels, 4);
+            if (pixels == null) {
+                System.out.println("Image file [" + path + "] not loaded: " + stbi_failure_reason());
+                return null;
+            }
+            return new Image(path, w.get(), h.get(), pixels);
+        }
+    }
+
+    /**
+     * Places the images, which must be sorted tallest first, and builds the page textures
+     */
+    private void pack(List<Image> images, int pageSize) {
+        List<Image> onPage = new ArrayList<>();
+        int x = 0;
+        int y = 0;
+        int shelfHeight = 0;
+        int pageWidth = 0;
+
+        for (Image image : images) {
+            // Cells are a whole number of paddings across, so every region starts on a multiple of the padding
+            int cellWidth = alignToPadding(image.width + 2 * PADDING);
+            int cellHeight = alignToPadding(image.height + 2 * PADDING);
+            if (cellWidth > pageSize || cellHeight > pageSize) {
+                System.out.println("Image file [" + image.path + "] is too large for the texture atlas");
+                image.page = -1;
+                continue;
+            }
+
+            if (Math.max(image.width, image.height) > LARGE_IMAGE) {
+                image.page = pages.size();
+                image.left = PADDING;
+                image.top = PADDING;
+                buildPage(List.of(image), cellWidth, cellHeight, false);
+                continue;
+            }
+
+            if (x + cellWidth > pageSize) {
+                x = 0;
+                y += shelfHeight;
+                shelfHeight = 0;
+            }
+            if (y + cellHeight > pageSize) {
+                buildPage(onPage, pageWidth, y + shelfHeight, true);
+                onPage.clear();
+                x = 0;
+                y = 0;
+                shelfHeight = 0;
+                pageWidth = 0;
+            }
+
+            image.page = pages.size();
+            image.left = x + PADDING;
+            image.top = y + PADDING;
+            onPage.add(image);
+
+            x += cellWidth;
+            shelfHeight = Math.max(shelfHeight, cellHeight);
+            pageWidth = Math.max(pageWidth, x);
+        }
+
+        if (!onPage.isEmpty()) {
+            buildPage(onPage, pageWidth, y + shelfHeight, true);
+        }
+    }
+
+    /**
+     * @param shared True if the page holds more than one region, so its mipmaps have to stop at SHARED_MAX_LEVEL
+     */
+    private void buildPage(List<Image> images, int width, int height, boolean shared) {
+        ByteBuffer pixels = MemoryUtil.memCalloc(width * height * 4);
+        for (Image image : images) {
+            copy(image, pixels, width);
+        }
+        Texture page = new Texture(width, height, pixels);
+        if (shared) {
+            page.setMaxMipLevel(SHARED_MAX_LEVEL);
+        }
+        pages.add(page);
+        MemoryUtil.memFree(pixels);
+    }
+
+    private static int alignToPadding(int size) {
+        return (size + PADDING - 1) & -PADDING;
+    }
+
+    /**
+     * Copies the image to its place on the page, repeating the outermost pixels into the padding
+     */
+    private static void copy(Image image, ByteBuffer page, int pageWidth) {
+        for (int row = -PADDING; row < image.height + PADDING; row++) {
+            int sourceRow = Math.min(Math.max(row, 0), image.height - 1);
+            int target = ((image.top + row) * pageWidth + image.left - PADDING) * 4;
+            for (int col = -PADDING; col < image.width + PADDING; col++) {
+                int sourceCol = Math.min(Math.max(col, 0), image.width - 1);
+                page.putInt(target, image.pixels.getInt((sourceRow * image.width + sourceCol) * 4));
+                target += 4;
+            }
+        }
+    }
+}
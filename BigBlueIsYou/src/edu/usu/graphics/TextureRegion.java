@@ -0,0 +1,81 @@
+/*
+Copyright (c) 2024 James Dean Mathias
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package edu.usu.graphics;
+
+/**
+ * A rectangle of pixels within a texture, usually one image packed into a TextureAtlas.
+ * Drawing a region is the same as drawing its texture with the region as the sub-image.
+ */
+public class TextureRegion {
+
+    private final Texture texture;
+    private final int left;
+    private final int top;
+    private final int width;
+    private final int height;
+
+    public TextureRegion(Texture texture, int left, int top, int width, int height) {
+        this.texture = texture;
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * The whole of the texture
+     */
+    public TextureRegion(Texture texture) {
+        this(texture, 0, 0, texture.getWidth(), texture.getHeight());
+    }
+
+    public Texture getTexture() {
+        return texture;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Converts a rectangle given in the region's own pixels into the texture's pixels
+     * @param subImage Part of the region, or null for all of it
+     */
+    public Rectangle toTexture(Rectangle subImage) {
+        if (subImage == null) {
+            return new Rectangle(left, top, width, height);
+        }
+        return new Rectangle(left + subImage.left, top + subImage.top, subImage.width, subImage.height);
+    }
+}
@@ -0,0 +1,427 @@
+/*
+Copyright (c) 2024 James Dean Mathias
+
+Permission is hereby granted, free of charge, to any person obtaining a copy
+of this software and associated documentation files (the "Software"), to deal
+in the Software without restriction, including without limitation the rights
+to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+copies of the Software, and to permit persons to whom the Software is
+furnished to do so, subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in
+all copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+THE SOFTWARE.
+*/
+package edu.usu.graphics;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL32.*;
+
+/**
+ * A set of textured quads that stays on the GPU from frame to frame, for things like a tile map
+ * where most of the sprites look the same as they did last frame.  Each quad owns a slot in
+ * persistent vertex buffers; changing a quad only marks its slot, and before drawing just the
+ * marked slots are uploaded with glBufferSubData.  The index buffer orders the quads by depth and
+ * then texture and is only rebuilt when a quad is added, removed, or changes depth or texture.
+ * The quads at each depth are a layer of their own, queued at that depth, so sprites and text in
+ * between the mesh's layers are drawn in the right order.
+ *
+ * Vertices are stored already in draw coordinates, with the same layout as batched sprites, so a
+ * mesh is drawn with the sprite shader.  Queue it each frame with Graphics2D.draw(TileMesh).
+ */
+public class TileMesh {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int POSITION_FLOATS = 4 * 3;
+    private static final int COORD_FLOATS = 4 * 2;
+    private static final int COLOR_FLOATS = 4 * 3;
+    // Sort key layout below the depth: texture rank, then slot
+    private static final int SLOT_BITS = 24;
+    private static final int MAX_TEXTURES = 1 << (32 - SLOT_BITS);
+
+    private int capacity;
+    private FloatBuffer positions;
+    private FloatBuffer coords;
+    private FloatBuffer colors;
+    private float[] slotZ;
+    private Texture[] slotTexture;
+    private final BitSet live = new BitSet();
+    private final BitSet dirty = new BitSet();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private int nextSlot = 0;
+    private boolean orderChanged = false;
+
+    private int vaoId;
+    private int vboPositions;
+    private int vboCoords;
+    private int vboColors;
+    private int vboIndices;
+    private boolean buffersResized = true;
+
+    // Quads in draw order, as packed depth, texture rank and slot keys, and the index buffer built from them
+    private long[] sortKeys = new long[0];
+    private int[] indices = new int[0];
+    private int indexCount;
+    private boolean indicesChanged = false;
+    // Textures in the order they were first seen by the last sort, which is their rank in the keys
+    private Texture[] textures = new Texture[8];
+    private int textureCount;
+
+    // Runs of indices sharing a texture and depth, in draw order, and the first run of each layer
+    private final List<Texture> runTextures = new ArrayList<>();
+    private final List<int[]> runs = new ArrayList<>();
+    private float[] layerZ = new float[4];
+    private int[] layerFirstRun = new int[5];
+    private int layerCount;
+
+    private int bytesUploaded;
+
+    public TileMesh() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Claims a slot for a new quad.  It draws nothing until it is set.
+     */
+    public int add() {
+        int slot;
+        if (!freeSlots.isEmpty()) {
+            slot = freeSlots.pop();
+        } else {
+            if (nextSlot == capacity) {
+                allocate(capacity * 2);
+            }
+            slot = nextSlot++;
+        }
+        live.set(slot);
+        slotTexture[slot] = null;
+        orderChanged = true;
+        return slot;
+    }
+
+    public void remove(int slot) {
+        if (live.get(slot)) {
+            live.clear(slot);
+            dirty.clear(slot);
+            slotTexture[slot] = null;
+            freeSlots.push(slot);
+            orderChanged = true;
+        }
+    }
+
+    /**
+     * Changes what the slot's quad shows and where
+     * @param destination Where the quad goes, in draw coordinates
+     * @param subImage Part of the region, in the region's own pixels, or null for all of it
+     */
+    public void set(int slot, Rectangle destination, TextureRegion region, Rectangle subImage, Color color) {
+        Texture texture = region.getTexture();
+        if (slotTexture[slot] != texture || slotZ[slot] != destination.z) {
+            orderChanged = true;
+        }
+        slotTexture[slot] = texture;
+        slotZ[slot] = destination.z;
+
+        float right = destination.left + destination.width;
+        float bottom = destination.top + destination.height;
+        int p = slot * POSITION_FLOATS;
+        positions.put(p, destination.left).put(p + 1, destination.top).put(p + 2, destination.z);
+        positions.put(p + 3, right).put(p + 4, destination.top).put(p + 5, destination.z);
+        positions.put(p + 6, right).put(p + 7, bottom).put(p + 8, destination.z);
+        positions.put(p + 9, destination.left).put(p + 10, bottom).put(p + 11, destination.z);
+
+        Rectangle source = region.toTexture(subImage);
+        float u1 = source.left / texture.getWidth();
+        float v1 = source.top / texture.getHeight();
+        float u2 = (source.left + source.width) / texture.getWidth();
+        float v2 = (source.top + source.height) / texture.getHeight();
+        int c = slot * COORD_FLOATS;
+        coords.put(c, u1).put(c + 1, v1);
+        coords.put(c + 2, u2).put(c + 3, v1);
+        coords.put(c + 4, u2).put(c + 5, v2);
+        coords.put(c + 6, u1).put(c + 7, v2);
+
+        int k = slot * COLOR_FLOATS;
+        for (int corner = 0; corner < 4; corner++) {
+            colors.put(k + corner * 3, color.r).put(k + corner * 3 + 1, color.g).put(k + corner * 3 + 2, color.b);
+        }
+
+        dirty.set(slot);
+    }
+
+    /**
+     * Number of different depths the quads are at.  Each one is queued and drawn as its own layer.
+     */
+    int getLayerCount() {
+        if (orderChanged) {
+            sortQuads();
+        }
+        return layerCount;
+    }
+
+    /**
+     * Depth of the layer, from back to front
+     */
+    float getLayerZ(int layer) {
+        return layerZ[layer];
+    }
+
+    /**
+     * Bytes sent to the GPU while drawing the last frame the mesh was queued in
+     */
+    public int getBytesUploaded() {
+        return bytesUploaded;
+    }
+
+    public void cleanup() {
+        deleteBuffers();
+        MemoryUtil.memFree(positions);
+        MemoryUtil.memFree(coords);
+        MemoryUtil.memFree(colors);
+    }
+
+    /**
+     * Called once when the mesh is queued for a frame, before any of its layers are drawn
+     */
+    void startFrame() {
+        bytesUploaded = 0;
+    }
+
+    /**
+     * Uploads whatever changed since the last draw, then draws the quads in one layer.  Whichever
+     * layer is drawn first in a frame does the upload.  Expects the sprite shader to be bound with
+     * its projection set.
+     */
+    void draw(int layer) {
+        if (vaoId == 0) {
+            createBuffers();
+        }
+        if (buffersResized) {
+            // New buffers start out empty, so every slot in use has to go up
+            dirty.or(live);
+            buffersResized = false;
+        }
+        upload();
+        if (orderChanged) {
+            sortQuads();
+        }
+
+        // The index buffer belongs to the vertex array, so it is bound before the indices go up
+        glBindVertexArray(vaoId);
+        if (indicesChanged) {
+            uploadIndices();
+            indicesChanged = false;
+        }
+        for (int run = layerFirstRun[layer]; run < layerFirstRun[layer + 1]; run++) {
+            runTextures.get(run).bind();
+            int[] range = runs.get(run);
+            glDrawElements(GL_TRIANGLES, range[1], GL_UNSIGNED_INT, (long) range[0] * Integer.BYTES);
+        }
+        glBindTexture(GL_TEXTURE_2D, 0);
+        glBindVertexArray(0);
+    }
+
+    /**
+     * Sends each run of consecutive dirty slots up with one call per vertex buffer
+     */
+    private void upload() {
+        for (int start = dirty.nextSetBit(0); start >= 0; start = dirty.nextSetBit(start)) {
+            int end = dirty.nextClearBit(start);
+            bytesUploaded += uploadRange(vboPositions, positions, start * POSITION_FLOATS, end * POSITION_FLOATS);
+            bytesUploaded += uploadRange(vboCoords, coords, start * COORD_FLOATS, end * COORD_FLOATS);
+            bytesUploaded += uploadRange(vboColors, colors, start * COLOR_FLOATS, end * COLOR_FLOATS);
+            start = end;
+        }
+        dirty.clear();
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    private static int uploadRange(int vboId, FloatBuffer data, int from, int to) {
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        data.limit(to).position(from);
+        glBufferSubData(GL_ARRAY_BUFFER, (long) from * Float.BYTES, data);
+        data.clear();
+        return (to - from) * Float.BYTES;
+    }
+
+    /**
+     * Orders the quads by depth and then texture, and works out the runs and layers to draw them in.
+     * The quads are sorted as packed long keys, so nothing is boxed.  The depth bits order as unsigned,
+     * so the keys have their sign bit flipped to sort them as signed longs.
+     */
+    private void sortQuads() {
+        if (sortKeys.length < capacity) {
+            sortKeys = new long[capacity];
+        }
+        textureCount = 0;
+        int count = 0;
+        for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+            if (slotTexture[slot] != null) {
+                long key = (long) RenderKeyBuffer.sortableBits(slotZ[slot]) << 32
+                        | (long) rankOf(slotTexture[slot]) << SLOT_BITS
+                        | slot;
+                sortKeys[count++] = key ^ Long.MIN_VALUE;
+            }
+        }
+        Arrays.sort(sortKeys, 0, count);
+
+        if (indices.length < count * 6) {
+            indices = new int[count * 6];
+        }
+        indexCount = count * 6;
+        runTextures.clear();
+        runs.clear();
+        layerCount = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (sortKeys[i] & ((1 << SLOT_BITS) - 1));
+            int vertex = slot * 4;
+            int index = i * 6;
+            indices[index] = vertex;
+            indices[index + 1] = vertex + 1;
+            indices[index + 2] = vertex + 2;
+            indices[index + 3] = vertex;
+            indices[index + 4] = vertex + 2;
+            indices[index + 5] = vertex + 3;
+
+            boolean newLayer = layerCount == 0 || layerZ[layerCount - 1] != slotZ[slot];
+            if (newLayer) {
+                if (layerCount == layerZ.length) {
+                    layerZ = Arrays.copyOf(layerZ, layerCount * 2);
+                    layerFirstRun = Arrays.copyOf(layerFirstRun, layerCount * 2 + 1);
+                }
+                layerZ[layerCount] = slotZ[slot];
+                layerFirstRun[layerCount] = runs.size();
+                layerCount++;
+            }
+            Texture texture = slotTexture[slot];
+            if (newLayer || runTextures.get(runTextures.size() - 1) != texture) {
+                runTextures.add(texture);
+                runs.add(new int[] { index, 0 });
+            }
+            runs.get(runs.size() - 1)[1] += 6;
+        }
+        layerFirstRun[layerCount] = runs.size();
+
+        orderChanged = false;
+        indicesChanged = true;
+    }
+
+    /**
+     * Where the texture comes in the order of this sort's textures.  Past MAX_TEXTURES they share the
+     * last rank, which only costs extra texture binds.
+     */
+    private int rankOf(Texture texture) {
+        for (int i = 0; i < textureCount; i++) {
+            if (textures[i] == texture) {
+                return i;
+            }
+        }
+        if (textureCount == MAX_TEXTURES) {
+            return MAX_TEXTURES - 1;
+        }
+        if (textureCount == textures.length) {
+            textures = Arrays.copyOf(textures, textureCount * 2);
+        }
+        textures[textureCount] = texture;
+        return textureCount++;
+    }
+
+    /**
+     * Must be called with the mesh's vertex array bound
+     */
+    private void uploadIndices() {
+        IntBuffer buffer = MemoryUtil.memAllocInt(Math.max(1, indexCount));
+        buffer.put(indices, 0, indexCount).flip();
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, buffer, GL_DYNAMIC_DRAW);
+        bytesUploaded += indexCount * Integer.BYTES;
+        MemoryUtil.memFree(buffer);
+    }
+
+    /**
+     * Grows the CPU copies, keeping what is in them, and drops the GPU buffers to be made again at the new size
+     */
+    private void allocate(int newCapacity) {
+        if (newCapacity > 1 << SLOT_BITS) {
+            throw new IllegalStateException("A tile mesh can't hold more than " + (1 << SLOT_BITS) + " quads");
+        }
+        positions = grow(positions, newCapacity * POSITION_FLOATS);
+        coords = grow(coords, newCapacity * COORD_FLOATS);
+        colors = grow(colors, newCapacity * COLOR_FLOATS);
+
+        float[] z = new float[newCapacity];
+        Texture[] textures = new Texture[newCapacity];
+        if (slotZ != null) {
+            System.arraycopy(slotZ, 0, z, 0, capacity);
+            System.arraycopy(slotTexture, 0, textures, 0, capacity);
+        }
+        slotZ = z;
+        slotTexture = textures;
+        capacity = newCapacity;
+
+        deleteBuffers();
+        buffersResized = true;
+    }
+
+    private static FloatBuffer grow(FloatBuffer old, int size) {
+        FloatBuffer grown = MemoryUtil.memCallocFloat(size);
+        if (old != null) {
+            grown.put(old.clear());
+            grown.clear();
+            MemoryUtil.memFree(old);
+        }
+        return grown;
+    }
+
+    private void createBuffers() {
+        vaoId = glGenVertexArrays();
+        glBindVertexArray(vaoId);
+
+        vboPositions = createArrayBuffer(0, 3, capacity * POSITION_FLOATS);
+        vboCoords = createArrayBuffer(1, 2, capacity * COORD_FLOATS);
+        vboColors = createArrayBuffer(2, 3, capacity * COLOR_FLOATS);
+
+        vboIndices = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vboIndices);
+
+        glBindVertexArray(0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        // The new index buffer is empty
+        indicesChanged = true;
+    }
+
+    private static int createArrayBuffer(int attribute, int size, int floats) {
+        int vboId = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, (long) floats * Float.BYTES, GL_DYNAMIC_DRAW);
+        glEnableVertexAttribArray(attribute);
+        glVertexAttribPointer(attribute, size, GL_FLOAT, false, 0, 0);
+        return vboId;
+    }
+
+    private void deleteBuffers() {
+        if (vaoId != 0) {
+            glDeleteBuffers(vboPositions);
+            glDeleteBuffers(vboCoords);
+            glDeleteBuffers(vboColors);
+            glDeleteBuffers(vboIndices);
+            glDeleteVertexArrays(vaoId);
+            vaoId = 0;
+        }
+    }
+}